@@ -0,0 +1,94 @@
+package pacman.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import pacman.controllers.examples.po.mcts.prediction.fast.GhostPredictionsFast;
+import pacman.game.Game;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static pacman.game.Constants.GHOST;
+import static pacman.game.Constants.MOVE;
+
+/**
+ * The belief kernels of GhostPredictionsFast against each other on every maze: update() and the danger sum
+ * calculate(double[]) with the sparse push kernel, the dense pull kernel in scalar loops and with the Vector API,
+ * and the automatic choice between them. The belief is set up as in PredictionBenchmark, the larger {@code spread}
+ * the more nodes it covers. Setup fails if the kernels do not agree exactly on the belief it builds.
+ * <p>
+ * VECTOR needs a JDK 16 or later build and the jdk.incubator.vector module, which BenchmarkRunner adds; its setup
+ * fails without them rather than measure DENSE under its name.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BeliefKernelBenchmark {
+
+    @Param({"0", "1", "2", "3"})
+    public int maze;
+
+    @Param({"0", "20", "60"})
+    public int spread;
+
+    @Param({"SPARSE", "DENSE", "VECTOR", "AUTO"})
+    public GhostPredictionsFast.Kernel kernel;
+
+    private GhostPredictionsFast predictions;
+    private GhostPredictionsFast reused;
+    private double[] sums;
+
+    @Setup
+    public void setUp() {
+        if (kernel == GhostPredictionsFast.Kernel.VECTOR && !GhostPredictionsFast.isVectorAvailable()) {
+            throw new IllegalStateException("The Vector API kernel is not available: it needs a JDK 16 or later build"
+                    + " and --add-modules jdk.incubator.vector");
+        }
+        Game game = new Game(BenchmarkGames.SEED, maze);
+        predictions = spread(game, kernel);
+        reused = predictions.copy();
+        sums = new double[game.getNumberOfNodes()];
+
+        double[] sparse = new double[sums.length];
+        double[] other = new double[sums.length];
+        spread(game, GhostPredictionsFast.Kernel.SPARSE).calculate(sparse);
+        for (GhostPredictionsFast.Kernel each : GhostPredictionsFast.Kernel.values()) {
+            spread(game, each).calculate(other);
+            if (!Arrays.equals(sparse, other)) {
+                throw new IllegalStateException("The sparse and " + each + " kernels disagree on maze " + maze);
+            }
+        }
+    }
+
+    private GhostPredictionsFast spread(Game game, GhostPredictionsFast.Kernel kernel) {
+        Random rnd = new Random(BenchmarkGames.SEED);
+        int[] ghostNodes = BenchmarkGames.randomNodes(game, GHOST.values().length, rnd);
+        MOVE[] ghostMoves = BenchmarkGames.randomHeadings(game, ghostNodes, rnd);
+
+        GhostPredictionsFast predictions = new GhostPredictionsFast(game.getCurrentMaze());
+        predictions.setKernel(kernel);
+        for (GHOST ghost : GHOST.values()) {
+            predictions.observe(ghost, ghostNodes[ghost.ordinal()], ghostMoves[ghost.ordinal()]);
+        }
+        for (int i = 0; i < spread; i++) {
+            predictions.update();
+        }
+        return predictions;
+    }
+
+    @Benchmark
+    public GhostPredictionsFast copyFromAndUpdate() {
+        reused.copyFrom(predictions);
+        reused.update();
+        return reused;
+    }
+
+    @Benchmark
+    public double[] calculateAll() {
+        predictions.calculate(sums);
+        return sums;
+    }
+}
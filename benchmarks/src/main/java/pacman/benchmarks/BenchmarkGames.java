@@ -0,0 +1,92 @@
+package pacman.benchmarks;
+
+import pacman.game.Game;
+import pacman.game.internal.Maze;
+
+import java.util.EnumMap;
+import java.util.Random;
+
+import static pacman.game.Constants.GHOST;
+import static pacman.game.Constants.MOVE;
+
+/**
+ * Builds reproducible game states and inputs for the benchmarks. Every state is played forward from a fixed
+ * seed with random non-reversing moves so that ghosts have left the lair and some pills have been eaten.
+ */
+final class BenchmarkGames {
+
+    static final long SEED = 42;
+    static final int WARM_UP_TICKS = 200;
+
+    private BenchmarkGames() {
+    }
+
+    /**
+     * Creates a game on the given maze that has been played for a number of ticks.
+     *
+     * @param maze  The maze index, 0 to 3
+     * @param ticks The number of ticks to play
+     * @return The game
+     */
+    static Game midGame(int maze, int ticks) {
+        Random rnd = new Random(SEED);
+        Game game = new Game(SEED, maze);
+        EnumMap<GHOST, MOVE> ghostMoves = new EnumMap<GHOST, MOVE>(GHOST.class);
+        for (int i = 0; i < ticks && !game.gameOver(); i++) {
+            game.advanceGame(randomPacManMove(game, rnd), randomGhostMoves(game, rnd, ghostMoves));
+        }
+        return game;
+    }
+
+    static MOVE randomPacManMove(Game game, Random rnd) {
+        MOVE[] moves = game.getPossibleMoves(game.getPacmanCurrentNodeIndex(), game.getPacmanLastMoveMade());
+        return (moves.length == 0) ? MOVE.NEUTRAL : moves[rnd.nextInt(moves.length)];
+    }
+
+    static EnumMap<GHOST, MOVE> randomGhostMoves(Game game, Random rnd, EnumMap<GHOST, MOVE> moves) {
+        moves.clear();
+        for (GHOST ghost : GHOST.values()) {
+            MOVE[] possible = game.getPossibleMoves(game.getGhostCurrentNodeIndex(ghost), game.getGhostLastMoveMade(ghost));
+            moves.put(ghost, (possible == null || possible.length == 0) ? MOVE.NEUTRAL : possible[rnd.nextInt(possible.length)]);
+        }
+        return moves;
+    }
+
+    /**
+     * Picks random nodes of the current maze that have at least one neighbour (i.e., not the lair).
+     *
+     * @param game  The game whose maze is used
+     * @param count The number of nodes
+     * @param rnd   The random number generator
+     * @return The node indices
+     */
+    static int[] randomNodes(Game game, int count, Random rnd) {
+        Maze maze = game.getCurrentMaze();
+        int[] nodes = new int[count];
+        for (int i = 0; i < count; ) {
+            int node = rnd.nextInt(maze.graph.length);
+            if (maze.graph[node].numNeighbouringNodes > 0) {
+                nodes[i++] = node;
+            }
+        }
+        return nodes;
+    }
+
+    /**
+     * Picks, for each node, a direction that can be taken from it. Used as the last move made when querying
+     * the direction-aware path functions.
+     *
+     * @param game  The game whose maze is used
+     * @param nodes The nodes
+     * @param rnd   The random number generator
+     * @return The moves
+     */
+    static MOVE[] randomHeadings(Game game, int[] nodes, Random rnd) {
+        MOVE[] headings = new MOVE[nodes.length];
+        for (int i = 0; i < nodes.length; i++) {
+            MOVE[] moves = game.getPossibleMoves(nodes[i]);
+            headings[i] = moves[rnd.nextInt(moves.length)];
+        }
+        return headings;
+    }
+}
@@ -0,0 +1,39 @@
+package pacman.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.lang.module.ModuleFinder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Entry point of benchmarks.jar. Accepts the usual JMH command line and always adds the GC profiler, so that
+ * the allocation rate (gc.alloc.rate.norm, in bytes per operation) is reported next to every score. On a JDK that
+ * has the jdk.incubator.vector module it is added to the forked JVMs, for the VECTOR kernel of
+ * BeliefKernelBenchmark.
+ */
+public class BenchmarkRunner {
+
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .parent(commandLine)
+                .addProfiler(GCProfiler.class);
+        if (ModuleFinder.ofSystem().find(VECTOR_MODULE).isPresent()) {
+            // Setting the arguments here replaces those given on the command line, so they are kept
+            List<String> jvmArgs = new ArrayList<String>(commandLine.getJvmArgsAppend().orElse(Collections.<String>emptyList()));
+            jvmArgs.add("--add-modules=" + VECTOR_MODULE);
+            options.jvmArgsAppend(jvmArgs.toArray(new String[0]));
+        }
+        new Runner(options.build()).run();
+    }
+}
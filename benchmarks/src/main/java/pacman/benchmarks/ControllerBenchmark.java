@@ -0,0 +1,66 @@
+package pacman.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import pacman.controllers.Controller;
+import pacman.controllers.examples.po.mcts.MCTSPacMan;
+import pacman.game.Game;
+
+import java.util.EnumMap;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static pacman.game.Constants.DELAY;
+import static pacman.game.Constants.GHOST;
+import static pacman.game.Constants.MOVE;
+
+/**
+ * End-to-end decisions per second of the Pac-Man controllers. Each invocation asks the controller for a move
+ * with the usual DELAY budget, plays it against random ghosts and restarts from the same state when the game is
+ * over. Anytime controllers such as MCTSPacMan use the whole budget, so for them this is a check that they
+ * honour the deadline rather than a measure of speed.
+ * <p>
+ * Controllers are created by name since MiniMaxAlgorithm lives in the default package and cannot be imported.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ControllerBenchmark {
+
+    @Param({"0", "1", "2", "3"})
+    public int maze;
+
+    @Param({"pacman.controllers.examples.StarterPacMan", "pacman.controllers.examples.po.mcts.MCTSPacMan", "MiniMaxAlgorithm"})
+    public String controllerClass;
+
+    private Controller<MOVE> controller;
+    private boolean partiallyObservable;
+    private Game start;
+    private Game game;
+    private Random rnd;
+    private EnumMap<GHOST, MOVE> ghostMoves;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setUp() throws ReflectiveOperationException {
+        controller = (Controller<MOVE>) Class.forName(controllerClass).getDeclaredConstructor().newInstance();
+        partiallyObservable = controller instanceof MCTSPacMan;
+        start = BenchmarkGames.midGame(maze, BenchmarkGames.WARM_UP_TICKS);
+        game = start.copy();
+        rnd = new Random(BenchmarkGames.SEED);
+        ghostMoves = new EnumMap<GHOST, MOVE>(GHOST.class);
+    }
+
+    @Benchmark
+    public MOVE decision() {
+        if (game.gameOver()) {
+            game = start.copy();
+        }
+        Game view = game.copy(partiallyObservable ? GHOST.values().length + 1 : -1);
+        MOVE move = controller.getMove(view, System.currentTimeMillis() + DELAY);
+        game.advanceGame(move, BenchmarkGames.randomGhostMoves(game, rnd, ghostMoves));
+        return move;
+    }
+}
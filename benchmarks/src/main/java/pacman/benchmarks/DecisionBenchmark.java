@@ -0,0 +1,77 @@
+package pacman.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import pacman.controllers.Controller;
+import pacman.game.Game;
+
+import java.util.EnumMap;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static pacman.game.Constants.DELAY;
+import static pacman.game.Constants.GHOST;
+import static pacman.game.Constants.MOVE;
+
+/**
+ * The harness of the benchmarks that time one decision of an anytime controller per invocation, with the usual
+ * DELAY budget. The primary score, decisions per second, is fixed by the budget; what counts is the work the
+ * controller gets done within it, which each benchmark adds to its own @AuxCounters state after every decision
+ * and JMH reports per second.
+ * <p>
+ * A subclass creates its controller in a setup method and hands it to start. Its decisions are then either all on
+ * the same position, to compare settings on equal terms, or on successive ticks of a game played on against
+ * random ghosts, like ControllerBenchmark, for controllers that carry something over from one tick to the next.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public abstract class DecisionBenchmark {
+
+    private Controller<MOVE> controller;
+    private boolean partiallyObservable;
+    private boolean playOn;
+    private Game start;
+    private Game game;
+    private Random rnd;
+    private EnumMap<GHOST, MOVE> ghostMoves;
+
+    /**
+     * Sets up the decisions of a controller, starting from a game on the given maze that has been played for
+     * BenchmarkGames.WARM_UP_TICKS ticks.
+     *
+     * @param maze                The maze index, 0 to 3
+     * @param controller          The controller
+     * @param partiallyObservable Whether the controller gets Ms Pac-Man's view of the game rather than all of it
+     * @param playOn              Whether each move is played, so that the next decision is on the next tick
+     */
+    protected void start(int maze, Controller<MOVE> controller, boolean partiallyObservable, boolean playOn) {
+        this.controller = controller;
+        this.partiallyObservable = partiallyObservable;
+        this.playOn = playOn;
+        start = BenchmarkGames.midGame(maze, BenchmarkGames.WARM_UP_TICKS);
+        game = start.copy();
+        rnd = new Random(BenchmarkGames.SEED);
+        ghostMoves = new EnumMap<GHOST, MOVE>(GHOST.class);
+    }
+
+    /**
+     * Asks the controller for a move and, if playing on, plays it; a game that is over starts again from the
+     * same state.
+     *
+     * @return The move
+     */
+    protected MOVE decide() {
+        if (game.gameOver()) {
+            game = start.copy();
+        }
+        Game view = game.copy(partiallyObservable ? GHOST.values().length + 1 : -1);
+        MOVE move = controller.getMove(view, System.currentTimeMillis() + DELAY);
+        if (playOn) {
+            game.advanceGame(move, BenchmarkGames.randomGhostMoves(game, rnd, ghostMoves));
+        }
+        return move;
+    }
+}
@@ -0,0 +1,68 @@
+package pacman.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import pacman.game.Game;
+import pacman.game.info.GameInfo;
+import pacman.game.internal.Ghost;
+import pacman.game.internal.PacMan;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static pacman.game.Constants.GHOST;
+import static pacman.game.Constants.MOVE;
+
+/**
+ * Cost of turning a GameInfo into a forwardable game, as ISMCTSPacMan does on every iteration: into a new game
+ * with getGameFromInfo(info), against refilling a pooled game with getGameFromInfo(info, target). The info is
+ * drawn once, from Ms Pac-Man's view of a mid-game state, with the ghosts at random nodes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DeterminisationBenchmark {
+
+    @Param({"0", "1", "2", "3"})
+    public int maze;
+
+    private Game observed;
+    private GameInfo info;
+    private Game pooled;
+
+    @Setup
+    public void setUp() {
+        Game game = BenchmarkGames.midGame(maze, BenchmarkGames.WARM_UP_TICKS);
+        observed = game.copy(GHOST.values().length + 1);
+        Random seeds = new Random(BenchmarkGames.SEED);
+        int[] ghostNodes = BenchmarkGames.randomNodes(game, GHOST.values().length, seeds);
+        MOVE[] ghostMoves = BenchmarkGames.randomHeadings(game, ghostNodes, seeds);
+
+        info = observed.getBlankGameInfo();
+        for (int i = 0; i < game.getNumberOfPills(); i++) {
+            info.setPillAtIndex(i, game.isPillStillAvailable(i));
+        }
+        for (int i = 0; i < game.getNumberOfPowerPills(); i++) {
+            info.setPowerPillAtIndex(i, game.isPowerPillStillAvailable(i));
+        }
+        info.setPacman(new PacMan(game.getPacmanCurrentNodeIndex(), game.getPacmanLastMoveMade(),
+                game.getPacmanNumberOfLivesRemaining(), false));
+        for (GHOST ghost : GHOST.values()) {
+            info.setGhostIndex(ghost, new Ghost(ghost, ghostNodes[ghost.ordinal()], 0, 0, ghostMoves[ghost.ordinal()]));
+        }
+        pooled = observed.getGameFromInfo(info, null);
+    }
+
+    @Benchmark
+    public Game fresh() {
+        // The new game takes over the info's pills and agents, but is not advanced, so the info stays as it was
+        return observed.getGameFromInfo(info);
+    }
+
+    @Benchmark
+    public Game pooled() {
+        return observed.getGameFromInfo(info, pooled);
+    }
+}
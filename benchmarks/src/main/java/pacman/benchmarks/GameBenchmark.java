@@ -0,0 +1,73 @@
+package pacman.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import pacman.game.Game;
+
+import java.util.EnumMap;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static pacman.game.Constants.GHOST;
+import static pacman.game.Constants.MOVE;
+
+/**
+ * Cost of the forward model: copying a game and advancing it by one tick.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GameBenchmark {
+
+    private static final int MOVES = 1024;
+
+    @Param({"0", "1", "2", "3"})
+    public int maze;
+
+    private Game start;
+    private Game game;
+    private MOVE[] pacManMoves;
+    private EnumMap<GHOST, MOVE>[] ghostMoves;
+    private int tick;
+
+    @Setup
+    public void setUp() {
+        start = BenchmarkGames.midGame(maze, BenchmarkGames.WARM_UP_TICKS);
+        game = start.copy();
+
+        // Moves are replayed in a loop; illegal ones are corrected by the engine just like a controller's would be
+        Random rnd = new Random(BenchmarkGames.SEED);
+        MOVE[] all = MOVE.values();
+        pacManMoves = new MOVE[MOVES];
+        ghostMoves = newGhostMoves(MOVES);
+        for (int i = 0; i < MOVES; i++) {
+            pacManMoves[i] = all[rnd.nextInt(all.length)];
+            ghostMoves[i] = new EnumMap<GHOST, MOVE>(GHOST.class);
+            for (GHOST ghost : GHOST.values()) {
+                ghostMoves[i].put(ghost, all[rnd.nextInt(all.length)]);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static EnumMap<GHOST, MOVE>[] newGhostMoves(int length) {
+        return (EnumMap<GHOST, MOVE>[]) new EnumMap<?, ?>[length];
+    }
+
+    @Benchmark
+    public Game copy() {
+        return start.copy();
+    }
+
+    @Benchmark
+    public Game advanceGame() {
+        if (game.gameOver()) {
+            game = start.copy();
+        }
+        int index = tick++ & (MOVES - 1);
+        game.advanceGame(pacManMoves[index], ghostMoves[index]);
+        return game;
+    }
+}
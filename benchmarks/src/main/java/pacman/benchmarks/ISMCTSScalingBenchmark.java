@@ -0,0 +1,49 @@
+package pacman.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import pacman.controllers.examples.po.ismcts.ISMCTSPacMan;
+
+import static pacman.game.Constants.MOVE;
+
+/**
+ * ISMCTSPacMan iterations per second against the number of threads and of determinisations, with every decision
+ * on the same position. Every iteration is a full playout on the engine, so the counts compare with GameBenchmark
+ * rather than with MCTSScalingBenchmark.
+ */
+public class ISMCTSScalingBenchmark extends DecisionBenchmark {
+
+    @Param({"0", "2"})
+    public int maze;
+
+    @Param({"1", "2", "4", "8", "16"})
+    public int threads;
+
+    @Param({"16", "64", "256"})
+    public int determinisations;
+
+    private ISMCTSPacMan controller;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+        public long iterations;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            iterations = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        controller = new ISMCTSPacMan(determinisations, 60, threads);
+        start(maze, controller, true, false);
+    }
+
+    @Benchmark
+    public MOVE decision(Counters counters) {
+        MOVE move = decide();
+        counters.iterations += controller.getLastIterations();
+        return move;
+    }
+}
@@ -0,0 +1,132 @@
+package pacman.benchmarks;
+
+import com.google.common.collect.Lists;
+import com.google.common.primitives.Ints;
+import org.openjdk.jmh.annotations.*;
+import pacman.game.Game;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static pacman.game.Constants.GHOST;
+import static pacman.game.Constants.MOVE;
+
+/**
+ * Leaf evaluations per second of MiniMaxAlgorithm.heuristicVal against the evaluation it replaced, which is kept
+ * here as legacyHeuristicVal. Both evaluate the same set of positions, reached by short random walks from a
+ * mid-game state as the leaves of a search would be.
+ * <p>
+ * heuristicVal is package-private in the default package, so it is called through a method handle.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class LeafEvaluationBenchmark {
+
+    private static final int POSITIONS = 256;
+    private static final int WALK_LENGTH = 8;
+
+    @Param({"0", "1", "2", "3"})
+    public int maze;
+
+    private MethodHandle heuristicVal;
+    private Game[] positions;
+    private int next;
+
+    @Setup
+    public void setUp() throws ReflectiveOperationException {
+        Method method = Class.forName("MiniMaxAlgorithm").getDeclaredMethod("heuristicVal", Game.class);
+        method.setAccessible(true);
+        heuristicVal = MethodHandles.lookup().unreflect(method);
+
+        Game start = BenchmarkGames.midGame(maze, BenchmarkGames.WARM_UP_TICKS);
+        Random rnd = new Random(BenchmarkGames.SEED);
+        EnumMap<GHOST, MOVE> ghostMoves = new EnumMap<GHOST, MOVE>(GHOST.class);
+        positions = new Game[POSITIONS];
+        for (int i = 0; i < POSITIONS; i++) {
+            Game game = start.copy();
+            for (int j = 0; j < WALK_LENGTH; j++) {
+                game.updatePacMan(BenchmarkGames.randomPacManMove(game, rnd));
+                game.updateGhostsWithoutReverse(BenchmarkGames.randomGhostMoves(game, rnd, ghostMoves));
+            }
+            positions[i] = game;
+        }
+    }
+
+    @Benchmark
+    public int current() throws Throwable {
+        return (int) heuristicVal.invokeExact(nextPosition());
+    }
+
+    @Benchmark
+    public int legacy() {
+        return legacyHeuristicVal(nextPosition());
+    }
+
+    private Game nextPosition() {
+        next = (next + 1) & (POSITIONS - 1);
+        return positions[next];
+    }
+
+    // The evaluation as it was before it was made allocation-free
+    static int legacyHeuristicVal(Game game) {
+        if (game.wasPacManEaten()) {
+            return Integer.MIN_VALUE;
+        }
+
+        int totalPills = game.getNumberOfActivePills() + game.getNumberOfActivePowerPills();
+        int score = game.getScore();
+
+        int distanceToBlinky = distanceToGhost(game, GHOST.BLINKY);
+        int distanceToInky = distanceToGhost(game, GHOST.INKY);
+        int distanceToPinky = distanceToGhost(game, GHOST.PINKY);
+        int distanceToSue = distanceToGhost(game, GHOST.SUE);
+        Map<GHOST, Integer> ghostsToDistance = new HashMap<>();
+        ghostsToDistance.put(GHOST.BLINKY, distanceToBlinky);
+        ghostsToDistance.put(GHOST.INKY, distanceToInky);
+        ghostsToDistance.put(GHOST.PINKY, distanceToPinky);
+        ghostsToDistance.put(GHOST.SUE, distanceToSue);
+
+        int distanceToNearestGhost = Collections.min(Lists.newArrayList(distanceToBlinky, distanceToInky,
+                distanceToPinky, distanceToSue));
+        GHOST nearestGhost = null;
+        for (Map.Entry<GHOST, Integer> ghostDistance : ghostsToDistance.entrySet()) {
+            if (ghostDistance.getValue() == distanceToNearestGhost) {
+                nearestGhost = ghostDistance.getKey();
+            }
+        }
+
+        int weightedGhostScore = -500 * (20 - distanceToNearestGhost);
+        if (distanceToNearestGhost >= 20 || game.isGhostEdible(nearestGhost)) {
+            weightedGhostScore = 0;
+        }
+
+        int weightedEatingGhostScore = 0;
+        if (game.isGhostEdible(nearestGhost) && distanceToNearestGhost <= 40) {
+            weightedEatingGhostScore = 50 * (40 - distanceToNearestGhost);
+        }
+
+        List<Integer> activePillIndices = new ArrayList<>();
+        activePillIndices.addAll(Ints.asList(game.getActivePillsIndices()));
+        activePillIndices.addAll(Ints.asList(game.getActivePowerPillsIndices()));
+
+        List<Integer> distancesToPills = new ArrayList<>();
+        for (int pillIndice : activePillIndices) {
+            distancesToPills.add(game.getShortestPathDistance(game.getPacmanCurrentNodeIndex(), pillIndice));
+        }
+        int distanceToNearestPill = 0;
+        if (!distancesToPills.isEmpty()) {
+            distanceToNearestPill = Collections.min(distancesToPills);
+        }
+
+        return -1 * totalPills + -1 * distanceToNearestPill + 100 * score + weightedGhostScore +
+                weightedEatingGhostScore;
+    }
+
+    private static int distanceToGhost(Game game, GHOST ghost) {
+        return game.getShortestPathDistance(game.getPacmanCurrentNodeIndex(), game.getGhostCurrentNodeIndex(ghost));
+    }
+}
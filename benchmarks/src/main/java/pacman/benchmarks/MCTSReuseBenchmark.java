@@ -0,0 +1,50 @@
+package pacman.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import pacman.controllers.examples.po.mcts.MCTSPacMan;
+
+import static pacman.game.Constants.MOVE;
+
+/**
+ * Effective iterations per decision of MCTSPacMan with and without reusing its tree between ticks, over a game
+ * played on. The counters give the iterations run and the visits inherited from the previous tick, so that
+ * (iterations + reusedVisits) / decisions is the effective number of iterations behind each decision.
+ */
+public class MCTSReuseBenchmark extends DecisionBenchmark {
+
+    @Param({"0", "1", "2", "3"})
+    public int maze;
+
+    @Param({"true", "false"})
+    public boolean treeReuse;
+
+    private MCTSPacMan controller;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+        public long iterations;
+        public long reusedVisits;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            iterations = 0;
+            reusedVisits = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        controller = new MCTSPacMan();
+        controller.setTreeReuse(treeReuse);
+        start(maze, controller, true, true);
+    }
+
+    @Benchmark
+    public MOVE decision(Counters counters) {
+        MOVE move = decide();
+        counters.iterations += controller.getLastIterations();
+        counters.reusedVisits += controller.getLastReusedVisits();
+        return move;
+    }
+}
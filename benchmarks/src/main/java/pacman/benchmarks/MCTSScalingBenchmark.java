@@ -0,0 +1,49 @@
+package pacman.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import pacman.controllers.examples.po.mcts.MCTSPacMan;
+
+import static pacman.game.Constants.MOVE;
+
+/**
+ * MCTSPacMan iterations per second against the number of threads, in both parallel modes. Every decision is on
+ * the same position with tree reuse off, so that each starts from an empty tree.
+ */
+public class MCTSScalingBenchmark extends DecisionBenchmark {
+
+    @Param({"0", "2"})
+    public int maze;
+
+    @Param({"1", "2", "4", "8", "16"})
+    public int threads;
+
+    @Param({"ROOT", "TREE"})
+    public MCTSPacMan.Parallelism parallelism;
+
+    private MCTSPacMan controller;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+        public long iterations;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            iterations = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        controller = new MCTSPacMan(100, 50, threads, parallelism);
+        controller.setTreeReuse(false);
+        start(maze, controller, true, false);
+    }
+
+    @Benchmark
+    public MOVE decision(Counters counters) {
+        MOVE move = decide();
+        counters.iterations += controller.getLastIterations();
+        return move;
+    }
+}
@@ -0,0 +1,57 @@
+package pacman.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import pacman.controllers.Controller;
+import pacman.game.Game;
+import pacman.game.util.TranspositionTable;
+
+import java.util.concurrent.TimeUnit;
+
+import static pacman.game.Constants.MOVE;
+
+/**
+ * Time for MiniMaxAlgorithm to search a fixed depth with different numbers of threads, which gives the speed-up
+ * of the parallel search. The transposition table is cleared before every search so that each one starts cold.
+ * <p>
+ * The controller is created by name since MiniMaxAlgorithm lives in the default package and cannot be imported.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MiniMaxScalingBenchmark {
+
+    @Param({"0", "2"})
+    public int maze;
+
+    @Param({"1", "2", "4", "8", "16"})
+    public int threads;
+
+    @Param({"6"})
+    public int depth;
+
+    private Controller<MOVE> controller;
+    private TranspositionTable transpositionTable;
+    private Game start;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setUp() throws ReflectiveOperationException {
+        Class<?> type = Class.forName("MiniMaxAlgorithm");
+        controller = (Controller<MOVE>) type.getDeclaredConstructor(int.class, int.class).newInstance(threads, depth);
+        transpositionTable = (TranspositionTable) type.getMethod("getTranspositionTable").invoke(controller);
+        start = BenchmarkGames.midGame(maze, BenchmarkGames.WARM_UP_TICKS);
+    }
+
+    @Setup(Level.Invocation)
+    public void clearTable() {
+        transpositionTable.clear();
+    }
+
+    @Benchmark
+    public MOVE search() {
+        return controller.getMove(start.copy(), -1);
+    }
+}
@@ -0,0 +1,54 @@
+package pacman.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import pacman.game.Game;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static pacman.game.Constants.GHOST;
+
+/**
+ * Cost of the line-of-sight test used by every query on a partially observable copy of the game.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ObservabilityBenchmark {
+
+    private static final int NODES = 1024;
+
+    @Param({"0", "1", "2", "3"})
+    public int maze;
+
+    private Game pacManView;
+    private Game ghostView;
+    private int[] nodes;
+    private int node;
+
+    @Setup
+    public void setUp() {
+        Game game = BenchmarkGames.midGame(maze, BenchmarkGames.WARM_UP_TICKS);
+        pacManView = game.copy(GHOST.values().length + 1);
+        ghostView = game.copy(GHOST.BLINKY);
+        nodes = BenchmarkGames.randomNodes(game, NODES, new Random(BenchmarkGames.SEED));
+    }
+
+    @Benchmark
+    public boolean pacManObservable() {
+        return pacManView.isNodeObservable(nodes[node++ & (NODES - 1)]);
+    }
+
+    @Benchmark
+    public boolean ghostObservable() {
+        return ghostView.isNodeObservable(nodes[node++ & (NODES - 1)]);
+    }
+
+    @Benchmark
+    public int[] pacManVisiblePills() {
+        return pacManView.getPillIndices();
+    }
+}
@@ -0,0 +1,108 @@
+package pacman.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import pacman.controllers.examples.po.mcts.prediction.GhostLocation;
+import pacman.controllers.examples.po.mcts.prediction.Predictions;
+import pacman.controllers.examples.po.mcts.prediction.fast.GhostPredictionsFast;
+import pacman.controllers.examples.po.mcts.prediction.particle.GhostParticleFilter;
+import pacman.game.Game;
+import pacman.game.internal.Maze;
+import pacman.game.internal.Node;
+
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import static pacman.game.Constants.GHOST;
+import static pacman.game.Constants.MOVE;
+
+/**
+ * Speed and accuracy of tracking the ghosts with the particle filter, against the GhostPredictionsFast grid
+ * ({@code particles} = 0). The ghosts make random non-reversing moves, the model the trackers assume, while
+ * Ms Pac-Man stands still in a mid-game state. Each invocation is one tick: the ghosts move, the belief is
+ * updated, and then told what Ms Pac-Man sees, as MCTSPacMan does, with every ghost observed in sight and
+ * every believed location in sight but empty ruled out.
+ * <p>
+ * The counters give the ticks and the probability the belief put on the ghosts' true nodes, summed over the
+ * ghosts, per second: trueMass / ticks is the mean probability of the truth, the higher the more accurate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParticleFilterBenchmark {
+
+    @Param({"0", "1", "2", "3"})
+    public int maze;
+
+    @Param({"0", "64", "256", "1024"})
+    public int particles;
+
+    private Game game;
+    private Maze graph;
+    private Predictions belief;
+    private SplittableRandom rnd;
+    private int[] ghostNodes;
+    private MOVE[] ghostMoves;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+        public long ticks;
+        public double trueMass;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            ticks = 0;
+            trueMass = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        game = BenchmarkGames.midGame(maze, BenchmarkGames.WARM_UP_TICKS).copy(GHOST.values().length + 1);
+        graph = game.getCurrentMaze();
+        Random seeds = new Random(BenchmarkGames.SEED);
+        ghostNodes = BenchmarkGames.randomNodes(game, GHOST.values().length, seeds);
+        ghostMoves = BenchmarkGames.randomHeadings(game, ghostNodes, seeds);
+        rnd = new SplittableRandom(BenchmarkGames.SEED);
+
+        belief = (particles == 0) ? new GhostPredictionsFast(graph)
+                : new GhostParticleFilter(graph, particles, new SplittableRandom(BenchmarkGames.SEED));
+        for (GHOST ghost : GHOST.values()) {
+            belief.observe(ghost, ghostNodes[ghost.ordinal()], ghostMoves[ghost.ordinal()]);
+        }
+    }
+
+    @Benchmark
+    public Predictions tick(Counters counters) {
+        belief.update();
+        for (GHOST ghost : GHOST.values()) {
+            int g = ghost.ordinal();
+            Node node = graph.graph[ghostNodes[g]];
+            MOVE[] possible = node.allPossibleMoves.get(ghostMoves[g]);
+            ghostMoves[g] = possible[rnd.nextInt(possible.length)];
+            ghostNodes[g] = node.neighbourhood.get(ghostMoves[g]);
+
+            if (game.isNodeObservable(ghostNodes[g])) {
+                belief.observe(ghost, ghostNodes[g], ghostMoves[g]);
+            } else {
+                for (GhostLocation location : belief.getGhostLocations(ghost)) {
+                    if (game.isNodeObservable(location.getIndex())) {
+                        belief.observeNotPresent(ghost, location.getIndex());
+                    }
+                }
+            }
+
+            for (GhostLocation location : belief.getGhostLocations(ghost)) {
+                if (location.getIndex() == ghostNodes[g]) {
+                    counters.trueMass += location.getProbability();
+                }
+            }
+        }
+        counters.ticks++;
+        return belief;
+    }
+}
@@ -0,0 +1,85 @@
+package pacman.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import pacman.game.Game;
+import pacman.game.internal.Maze;
+import pacman.game.internal.PathsCache;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static pacman.game.Constants.MOVE;
+
+/**
+ * Cost of the distance and path queries: the pre-computed distance table, the direction-aware distance and
+ * path of the PathsCache and the A* search it is built from.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PathBenchmark {
+
+    private static final int PAIRS = 1024;
+
+    @Param({"0", "1", "2", "3"})
+    public int maze;
+
+    private Game game;
+    private PathsCache cache;
+    private Maze currentMaze;
+    private int[] from;
+    private int[] to;
+    private MOVE[] headings;
+    private int pair;
+
+    @Setup
+    public void setUp() {
+        game = new Game(BenchmarkGames.SEED, maze);
+        cache = Game.caches[maze];
+        currentMaze = game.getCurrentMaze();
+
+        Random rnd = new Random(BenchmarkGames.SEED);
+        from = BenchmarkGames.randomNodes(game, PAIRS, rnd);
+        to = BenchmarkGames.randomNodes(game, PAIRS, rnd);
+        headings = BenchmarkGames.randomHeadings(game, from, rnd);
+    }
+
+    private int next() {
+        return pair++ & (PAIRS - 1);
+    }
+
+    @Benchmark
+    public int shortestPathDistance() {
+        int i = next();
+        return game.getShortestPathDistance(from[i], to[i]);
+    }
+
+    @Benchmark
+    public int shortestPathDistanceWithLastMove() {
+        int i = next();
+        return game.getShortestPathDistance(from[i], to[i], headings[i]);
+    }
+
+    @Benchmark
+    public int[] pathFromA2B() {
+        int i = next();
+        return cache.getPathFromA2B(from[i], to[i]);
+    }
+
+    @Benchmark
+    public int[] pathFromA2BWithLastMove() {
+        int i = next();
+        return cache.getPathFromA2B(from[i], to[i], headings[i]);
+    }
+
+    @Benchmark
+    public int[] aStar() {
+        int i = next();
+        int[] path = currentMaze.astar.computePathsAStar(from[i], to[i], headings[i], game);
+        currentMaze.astar.resetGraph();
+        return path;
+    }
+}
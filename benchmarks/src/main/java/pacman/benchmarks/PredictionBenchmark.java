@@ -0,0 +1,94 @@
+package pacman.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import pacman.controllers.examples.po.mcts.prediction.Predictions;
+import pacman.controllers.examples.po.mcts.prediction.fast.GhostPredictionsCompact;
+import pacman.controllers.examples.po.mcts.prediction.fast.GhostPredictionsFast;
+import pacman.game.Game;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static pacman.game.Constants.GHOST;
+import static pacman.game.Constants.MOVE;
+
+/**
+ * Cost of the ghost belief model used by MCTSPacMan. Every ghost is observed at a random node and the belief is
+ * then propagated {@code spread} times, so the benchmarks cover both a fresh and a diffuse belief. update()
+ * changes the belief in place, so it is measured on a copy and the cost of copy() should be subtracted.
+ * copyFromAndUpdate() is how MCTSPacMan builds its lookahead, into a reused instance. {@code beliefs} compares
+ * GhostPredictionsFast with the float and byte storage of GhostPredictionsCompact.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PredictionBenchmark {
+
+    @Param({"0", "1", "2", "3"})
+    public int maze;
+
+    @Param({"0", "20", "60"})
+    public int spread;
+
+    @Param({"GRID", "COMPACT"})
+    public String beliefs;
+
+    private Predictions predictions;
+    private Predictions reused;
+    private double[] sums;
+    private int[] nodes;
+    private int node;
+
+    @Setup
+    public void setUp() {
+        Game game = new Game(BenchmarkGames.SEED, maze);
+        Random rnd = new Random(BenchmarkGames.SEED);
+        int[] ghostNodes = BenchmarkGames.randomNodes(game, GHOST.values().length, rnd);
+        MOVE[] ghostMoves = BenchmarkGames.randomHeadings(game, ghostNodes, rnd);
+
+        predictions = beliefs.equals("COMPACT") ? new GhostPredictionsCompact(game.getCurrentMaze())
+                : new GhostPredictionsFast(game.getCurrentMaze());
+        for (GHOST ghost : GHOST.values()) {
+            predictions.observe(ghost, ghostNodes[ghost.ordinal()], ghostMoves[ghost.ordinal()]);
+        }
+        for (int i = 0; i < spread; i++) {
+            predictions.update();
+        }
+        nodes = BenchmarkGames.randomNodes(game, 1024, rnd);
+        reused = predictions.copy();
+        sums = new double[game.getNumberOfNodes()];
+    }
+
+    @Benchmark
+    public Predictions copy() {
+        return predictions.copy();
+    }
+
+    @Benchmark
+    public Predictions copyAndUpdate() {
+        Predictions next = predictions.copy();
+        next.update();
+        return next;
+    }
+
+    @Benchmark
+    public Predictions copyFromAndUpdate() {
+        reused.copyFrom(predictions);
+        reused.update();
+        return reused;
+    }
+
+    @Benchmark
+    public double[] calculateAll() {
+        predictions.calculate(sums);
+        return sums;
+    }
+
+    @Benchmark
+    public double calculate() {
+        return predictions.calculate(nodes[node++ & 1023]);
+    }
+}
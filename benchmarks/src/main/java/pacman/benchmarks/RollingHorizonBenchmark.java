@@ -0,0 +1,75 @@
+package pacman.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import pacman.controllers.Controller;
+import pacman.controllers.examples.po.mcts.MCTSPacMan;
+
+import java.lang.reflect.Method;
+
+import static pacman.game.Constants.MOVE;
+
+/**
+ * RollingHorizonAlgorithm play-outs per second against MCTSPacMan iterations per second, over the number of
+ * threads, with every decision on the same position. An RHEA evaluation plays the real engine out for up to its
+ * horizon, where an MCTS iteration is a corridor-level rollout of its own model, so the searches counter measures
+ * throughput, not the worth of a search. RHEA sees the whole game; MCTSPacMan gets Ms Pac-Man's view, as in play.
+ * <p>
+ * RollingHorizonAlgorithm is created by name since it lives in the default package and cannot be imported.
+ */
+public class RollingHorizonBenchmark extends DecisionBenchmark {
+
+    @Param({"0", "2"})
+    public int maze;
+
+    @Param({"1", "2", "4", "8", "16"})
+    public int threads;
+
+    @Param({"RHEA", "MCTS"})
+    public String planner;
+
+    private Controller<MOVE> controller;
+    private Method lastEvaluations;
+    private Method lastGenerations;
+    private MCTSPacMan mcts;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+        public long searches;
+        public long generations;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            searches = 0;
+            generations = 0;
+        }
+    }
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setUp() throws ReflectiveOperationException {
+        if (planner.equals("RHEA")) {
+            Class<?> type = Class.forName("RollingHorizonAlgorithm");
+            controller = (Controller<MOVE>) type.getDeclaredConstructor(int.class).newInstance(threads);
+            lastEvaluations = type.getMethod("getLastEvaluations");
+            lastGenerations = type.getMethod("getLastGenerations");
+        } else {
+            mcts = new MCTSPacMan(100, 50, threads, MCTSPacMan.Parallelism.TREE);
+            mcts.setTreeReuse(false);
+            controller = mcts;
+        }
+        start(maze, controller, mcts != null, false);
+    }
+
+    @Benchmark
+    public MOVE decision(Counters counters) throws ReflectiveOperationException {
+        MOVE move = decide();
+        if (mcts != null) {
+            counters.searches += mcts.getLastIterations();
+        } else {
+            counters.searches += (Integer) lastEvaluations.invoke(controller);
+            counters.generations += (Integer) lastGenerations.invoke(controller);
+        }
+        return move;
+    }
+}
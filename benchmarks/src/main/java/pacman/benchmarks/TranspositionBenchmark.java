@@ -0,0 +1,56 @@
+package pacman.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import pacman.controllers.examples.po.mcts.MCTSPacMan;
+
+import static pacman.game.Constants.MOVE;
+
+/**
+ * MCTSPacMan searching a tree against a DAG that merges transpositions, over a game played on with tree reuse off,
+ * so that both start every tick from scratch. Besides the iterations, the counters give the nodes each search
+ * ended its tick with and, for the DAG, the transpositions merged: the states a tree would have stored again,
+ * each with a subtree of its own. A tree counts the children it has allocated whether expanded or not, and a DAG
+ * only the states it has linked, so the tree's count runs ahead by the unexpanded children at its fringe.
+ */
+public class TranspositionBenchmark extends DecisionBenchmark {
+
+    @Param({"0", "1", "2", "3"})
+    public int maze;
+
+    @Param({"false", "true"})
+    public boolean transpositions;
+
+    private MCTSPacMan controller;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+        public long iterations;
+        public long nodes;
+        public long transpositions;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            iterations = 0;
+            nodes = 0;
+            transpositions = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        controller = new MCTSPacMan();
+        controller.setTreeReuse(false);
+        controller.setTranspositions(transpositions);
+        start(maze, controller, true, true);
+    }
+
+    @Benchmark
+    public MOVE decision(Counters counters) {
+        MOVE move = decide();
+        counters.iterations += controller.getLastIterations();
+        counters.nodes += controller.getLastSize();
+        counters.transpositions += controller.getLastTranspositions();
+        return move;
+    }
+}
@@ -0,0 +1,417 @@
+import pacman.controllers.PacmanController;
+import pacman.game.Constants.GHOST;
+import pacman.game.Constants.MOVE;
+import pacman.game.Game;
+import pacman.game.GhostMoveEnumerator;
+import pacman.game.util.Stats;
+
+import static pacman.game.Constants.PILL;
+
+/**
+ * Ms Pac-Man controller that searches like MiniMaxAlgorithm but treats the ghosts' plies as chance nodes: the
+ * value of a ghost ply is the expected value of its joint moves, weighted by a GhostModel, instead of the worst
+ * one. Against ghosts that do not play adversarially, such as RandomGhosts, this is less pessimistic.
+ * <p>
+ * The search is an iteratively deepened *-minimax search. Positions are evaluated with MiniMaxAlgorithm.heuristicVal,
+ * which is bounded in every subtree: the score only grows, by at most MAX_SCORE_PER_MOVE = max(PILL, 1) per move of
+ * Ms Pac-Man, the pills only decrease, and the ghost and distance terms are bounded (see lowerBound and upperBound).
+ * Star1 uses these bounds to cut a chance node off once its remaining joint moves can no longer bring its value into
+ * the window, and narrows the window of every joint move accordingly. Star2 first probes every joint move by
+ * searching only Ms Pac-Man's first move after it, which gives a lower bound on each; these tighten the bounds and
+ * cut chance nodes whose value is already certain to reach beta. A probe that turns out exact is not searched again.
+ * <p>
+ * Joint moves are searched most probable first. With a top-k limit only the k most probable joint moves of each
+ * chance node are searched and their probabilities renormalised, which trades accuracy for depth.
+ */
+public class ExpectimaxAlgorithm extends PacmanController
+{
+
+    private static final int EXPECTIMAX_DEPTH = 4;
+    // Deepest search attempted when there is time to spare, in plies
+    private static final int MAX_DEPTH = 24;
+    // Time kept back from the deadline to unwind the search and hand the move over
+    private static final long SAFETY_MARGIN_MS = 3;
+    // The clock is read once every this many nodes (must be a power of two)
+    private static final int NODES_PER_TIME_CHECK = 64;
+    private static final GHOST[] GHOSTS = GHOST.values();
+    private static final MOVE[] MOVES = MOVE.values();
+    // Four ghosts with at most four moves each
+    private static final int MAX_COMBINATIONS = 256;
+
+    // Bounds of the terms of heuristicVal other than the score and the pills: the nearest ghost term lies between
+    // -500 * 21 and 0, the edible ghost term between 0 and 50 * 41 (shortest path distances are at least -1), and
+    // the distance to the nearest pill between -1 and the number of nodes
+    private static final int GHOST_TERMS_MIN = -500 * 21;
+    private static final int GHOST_TERMS_MAX = 50 * 41;
+    // The most the score grows with one move of Ms Pac-Man: a pill, or a power pill which scores 1
+    private static final int MAX_SCORE_PER_MOVE = Math.max(PILL, 1);
+
+    private final GhostModel ghostModel;
+    private final int topK;
+    private final int fixedDepth;
+
+    private MOVE previousBestMove;
+    private long nodesVisited;
+    private long chanceNodes;
+    private long star1Cutoffs;
+    private long star2Cutoffs;
+    private int reachedDepth;
+    private final Stats depthStats = new Stats("Expectimax depth");
+
+    private long deadline;
+    private boolean aborted;
+
+    // Scratch space for the chance nodes, one row per ply
+    private final GhostMoveEnumerator[] enumerators = new GhostMoveEnumerator[MAX_DEPTH + 1];
+    private final int[][] combinations = new int[MAX_DEPTH + 1][MAX_COMBINATIONS];
+    private final double[][] probabilities = new double[MAX_DEPTH + 1][MAX_COMBINATIONS];
+    private final double[][] probes = new double[MAX_DEPTH + 1][MAX_COMBINATIONS];
+    private final boolean[][] exactProbes = new boolean[MAX_DEPTH + 1][MAX_COMBINATIONS];
+    private final Game[][] successors = new Game[MAX_DEPTH + 1][MAX_COMBINATIONS];
+    // Probability of each move of each ghost, by move ordinal
+    private final double[][] moveProbabilities = new double[GHOSTS.length][MOVES.length];
+    private final double[] ghostProbabilities = new double[MOVES.length];
+
+    public ExpectimaxAlgorithm()
+    {
+        this(new UniformGhostModel());
+    }
+
+    public ExpectimaxAlgorithm(GhostModel ghostModel)
+    {
+        this(ghostModel, 0);
+    }
+
+    public ExpectimaxAlgorithm(GhostModel ghostModel, int topK)
+    {
+        this(ghostModel, topK, EXPECTIMAX_DEPTH);
+    }
+
+    /**
+     * Creates the controller.
+     *
+     * @param ghostModel The model of the opposing ghosts
+     * @param topK       The number of most probable joint moves searched at each chance node, or 0 for all
+     * @param depth      The depth, in plies, to search when a move has no deadline: an even number of at least 2,
+     *                   as every iteration searches a move of Ms Pac-Man and one of the ghosts; deeper than MAX_DEPTH
+     *                   is searched to MAX_DEPTH
+     */
+    public ExpectimaxAlgorithm(GhostModel ghostModel, int topK, int depth)
+    {
+        if (topK < 0) {
+            throw new IllegalArgumentException("topK must not be negative, not " + topK);
+        }
+        if (depth < 2 || depth % 2 != 0) {
+            throw new IllegalArgumentException("The depth must be an even number of at least 2, not " + depth);
+        }
+        this.ghostModel = ghostModel;
+        this.topK = topK;
+        this.fixedDepth = Math.min(depth, MAX_DEPTH);
+        for (int i = 0; i <= MAX_DEPTH; i++) {
+            enumerators[i] = new GhostMoveEnumerator();
+        }
+    }
+
+    public MOVE getMove(Game game, long timeDue)
+    {
+        ghostModel.update(game);
+        aborted = false;
+        nodesVisited = 0;
+        deadline = (timeDue == -1) ? Long.MAX_VALUE : timeDue - SAFETY_MARGIN_MS;
+
+        int maxDepth = (timeDue == -1) ? fixedDepth : MAX_DEPTH;
+        MOVE bestMove = null;
+        reachedDepth = 0;
+
+        for (int depth = 2; depth <= maxDepth; depth += 2) {
+            MOVE move = searchRoot(game, depth, (bestMove == null) ? previousBestMove : bestMove);
+            if (move == null) {
+                break;
+            }
+            bestMove = move;
+            reachedDepth = depth;
+
+            if (System.currentTimeMillis() >= deadline) {
+                break;
+            }
+        }
+
+        if (bestMove == null) {
+            bestMove = MiniMaxAlgorithm.orderPacManMoves(game, previousBestMove)[0];
+        }
+
+        depthStats.add(reachedDepth);
+        previousBestMove = bestMove;
+        return bestMove;
+    }
+
+    /**
+     * Gets the number of positions visited on the most recent tick over all iterations.
+     *
+     * @return The number of nodes
+     */
+    public long getNodesVisited()
+    {
+        return nodesVisited;
+    }
+
+    public int getReachedDepth()
+    {
+        return reachedDepth;
+    }
+
+    public Stats getDepthStats()
+    {
+        return depthStats;
+    }
+
+    public GhostModel getGhostModel()
+    {
+        return ghostModel;
+    }
+
+    /**
+     * @return The number of chance nodes searched so far, on all ticks
+     */
+    public long getChanceNodes()
+    {
+        return chanceNodes;
+    }
+
+    /**
+     * @return The number of chance nodes cut off by Star1 so far
+     */
+    public long getStar1Cutoffs()
+    {
+        return star1Cutoffs;
+    }
+
+    /**
+     * @return The number of chance nodes cut off by Star2 probing so far
+     */
+    public long getStar2Cutoffs()
+    {
+        return star2Cutoffs;
+    }
+
+    // Ties go to the move searched first, which is the best move of the previous iteration
+    private MOVE searchRoot(Game game, int depth, MOVE first)
+    {
+        nodesVisited++;
+        MOVE bestMove = null;
+        double bestValue = Double.NEGATIVE_INFINITY;
+
+        for (MOVE move : MiniMaxAlgorithm.orderPacManMoves(game, first)) {
+            double value = chanceValue(MiniMaxAlgorithm.stateAfterPacMove(move, game), depth - 1, 1, bestValue,
+                    Double.POSITIVE_INFINITY);
+            if (aborted) {
+                return null;
+            }
+            if (bestMove == null || value > bestValue) {
+                bestValue = value;
+                bestMove = move;
+            }
+        }
+        return bestMove;
+    }
+
+    /*
+     * Fail-soft alpha-beta at Ms Pac-Man's plies. If the value of her first move is already known exactly from a
+     * Star2 probe it is passed in as firstValue and not searched again; otherwise firstValue is NaN.
+     */
+    private double maxValue(Game game, int depth, int ply, double alpha, double beta, double firstValue)
+    {
+        if (timeUp()) {
+            return alpha;
+        }
+        if (depth == 0 || MiniMaxAlgorithm.isEndGameState(game)) {
+            return MiniMaxAlgorithm.heuristicVal(game);
+        }
+
+        double best = Double.NEGATIVE_INFINITY;
+        MOVE[] moves = MiniMaxAlgorithm.orderPacManMoves(game, null);
+        for (int i = 0; i < moves.length; i++) {
+            double value;
+            if (i == 0 && !Double.isNaN(firstValue)) {
+                value = firstValue;
+            } else {
+                value = chanceValue(MiniMaxAlgorithm.stateAfterPacMove(moves[i], game), depth - 1, ply + 1,
+                        Math.max(alpha, best), beta);
+            }
+            if (aborted) {
+                return alpha;
+            }
+            if (value > best) {
+                best = value;
+                if (best >= beta) {
+                    break;
+                }
+            }
+        }
+        return best;
+    }
+
+    // The value of Ms Pac-Man's first move only, a lower bound on the value of the position
+    private double probeValue(Game game, int depth, int ply, double alpha, double beta)
+    {
+        if (depth == 0 || MiniMaxAlgorithm.isEndGameState(game)) {
+            return MiniMaxAlgorithm.heuristicVal(game);
+        }
+        MOVE first = MiniMaxAlgorithm.orderPacManMoves(game, null)[0];
+        return chanceValue(MiniMaxAlgorithm.stateAfterPacMove(first, game), depth - 1, ply + 1, alpha, beta);
+    }
+
+    private double chanceValue(Game game, int depth, int ply, double alpha, double beta)
+    {
+        if (timeUp()) {
+            return alpha;
+        }
+        if (depth == 0 || MiniMaxAlgorithm.isEndGameState(game)) {
+            return MiniMaxAlgorithm.heuristicVal(game);
+        }
+        chanceNodes++;
+
+        double lower = lowerBound(game);
+        double upper = upperBound(game, depth);
+        if (lower >= beta) {
+            return lower;
+        }
+        if (upper <= alpha) {
+            return upper;
+        }
+
+        int count = prepareCombinations(game, ply);
+        int[] codes = combinations[ply];
+        double[] p = probabilities[ply];
+        double[] w = probes[ply];
+        boolean[] exact = exactProbes[ply];
+        Game[] next = successors[ply];
+        try {
+            // Star2: probe every joint move for a lower bound, and stop once the bounds alone reach beta. lowerSum is
+            // the expected value with the joint moves not probed yet at the lower bound
+            double lowerSum = lower;
+            for (int i = 0; i < count; i++) {
+                next[i] = MiniMaxAlgorithm.gameStateAfterGhosts(game, codes[i]);
+                double needed = (beta - (lowerSum - p[i] * lower)) / p[i];
+                double value = probeValue(next[i], depth - 1, ply + 1, lower, needed);
+                if (aborted) {
+                    return alpha;
+                }
+                exact[i] = value > lower && value < needed;
+                w[i] = Math.max(value, lower);
+                lowerSum += p[i] * (w[i] - lower);
+                if (lowerSum >= beta) {
+                    star2Cutoffs++;
+                    return lowerSum;
+                }
+            }
+
+            // Star1: search every joint move with the window that can still change the outcome
+            double sum = 0;
+            double restMass = 1;
+            double restLower = lowerSum;
+            for (int i = 0; i < count; i++) {
+                restMass -= p[i];
+                restLower -= p[i] * w[i];
+                double childAlpha = (alpha - sum - restMass * upper) / p[i];
+                double childBeta = (beta - sum - restLower) / p[i];
+                double value = maxValue(next[i], depth - 1, ply + 1, Math.max(childAlpha, lower),
+                        Math.min(childBeta, upper), exact[i] ? w[i] : Double.NaN);
+                if (aborted) {
+                    return alpha;
+                }
+                if (value <= childAlpha) {
+                    star1Cutoffs++;
+                    return sum + p[i] * value + restMass * upper;
+                }
+                if (value >= childBeta) {
+                    star1Cutoffs++;
+                    return sum + p[i] * value + restLower;
+                }
+                sum += p[i] * value;
+            }
+            return sum;
+        } finally {
+            for (int i = 0; i < count; i++) {
+                next[i] = null;
+            }
+        }
+    }
+
+    /*
+     * Fills the row of the ply with the joint moves of the ghosts and their probabilities, most probable first,
+     * keeping the topK most probable if set. Returns the number of joint moves.
+     */
+    private int prepareCombinations(Game game, int ply)
+    {
+        GhostMoveEnumerator moves = enumerators[ply].reset(game);
+        for (GHOST ghost : GHOSTS) {
+            double[] byMove = moveProbabilities[ghost.ordinal()];
+            int count = moves.getMoveCount(ghost);
+            if (count == 1) {
+                byMove[moves.getMove(ghost, 0).ordinal()] = 1;
+                continue;
+            }
+            ghostModel.probabilities(game, ghost, moves, ghostProbabilities);
+            for (int i = 0; i < count; i++) {
+                byMove[moves.getMove(ghost, i).ordinal()] = ghostProbabilities[i];
+            }
+        }
+
+        int[] codes = combinations[ply];
+        double[] p = probabilities[ply];
+        int size = moves.size();
+        for (int i = 0; i < size; i++) {
+            int code = moves.get(i);
+            double probability = 1;
+            for (GHOST ghost : GHOSTS) {
+                probability *= moveProbabilities[ghost.ordinal()][GhostMoveEnumerator.moveOf(code, ghost).ordinal()];
+            }
+            // insertion sort by descending probability, stable so that ties keep the enumeration order
+            int j = i - 1;
+            while (j >= 0 && p[j] < probability) {
+                codes[j + 1] = codes[j];
+                p[j + 1] = p[j];
+                j--;
+            }
+            codes[j + 1] = code;
+            p[j + 1] = probability;
+        }
+
+        int count = (topK > 0) ? Math.min(topK, size) : size;
+        // joint moves the model rules out are not searched
+        while (p[count - 1] == 0) {
+            count--;
+        }
+        double total = 0;
+        for (int i = 0; i < count; i++) {
+            total += p[i];
+        }
+        for (int i = 0; i < count; i++) {
+            p[i] /= total;
+        }
+        return count;
+    }
+
+    // No position below this one evaluates lower: the score does not drop and the pills do not come back
+    private static double lowerBound(Game game)
+    {
+        int pills = game.getNumberOfActivePills() + game.getNumberOfActivePowerPills();
+        return 100.0 * game.getScore() - pills - game.getNumberOfNodes() + GHOST_TERMS_MIN;
+    }
+
+    // No position within depth plies below this one evaluates higher
+    private static double upperBound(Game game, int depth)
+    {
+        int pacManMoves = (depth + 1) / 2;
+        return 100.0 * (game.getScore() + MAX_SCORE_PER_MOVE * pacManMoves) + 1 + GHOST_TERMS_MAX;
+    }
+
+    private boolean timeUp()
+    {
+        if ((++nodesVisited & (NODES_PER_TIME_CHECK - 1)) == 0 && System.currentTimeMillis() >= deadline) {
+            aborted = true;
+        }
+        return aborted;
+    }
+}
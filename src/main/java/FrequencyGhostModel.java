@@ -0,0 +1,104 @@
+import pacman.game.Constants.GHOST;
+import pacman.game.Constants.MOVE;
+import pacman.game.Game;
+import pacman.game.GhostMoveEnumerator;
+
+/**
+ * Ghost model learnt from the moves the ghosts make during the game. At every decision the ghost's moves are
+ * ranked by the distance to Ms Pac-Man they lead to, nearest first, and the model counts which rank was taken,
+ * separately for each ghost, number of moves and whether the ghost was edible. The probability of a move is the
+ * frequency of its rank, starting from a uniform prior.
+ * <p>
+ * A decision is only counted when the ghost is found one step further in the chosen direction on the next tick,
+ * so that reversals and ghosts being eaten are not mistaken for choices.
+ */
+public class FrequencyGhostModel implements GhostModel
+{
+    private static final GHOST[] GHOSTS = GHOST.values();
+    private static final int MAX_MOVES = 4;
+    // Pseudo-count of every rank before anything has been seen
+    private static final double PRIOR = 1;
+
+    // counts[ghost][edible][number of moves - 2][rank]
+    private final double[][][][] counts = new double[GHOSTS.length][2][MAX_MOVES - 1][MAX_MOVES];
+    private final GhostMoveEnumerator moves = new GhostMoveEnumerator();
+    private final int[] distances = new int[MAX_MOVES];
+    private final int[] ranks = new int[MAX_MOVES];
+    private Game previous;
+    private long observations;
+
+    public void probabilities(Game game, GHOST ghost, GhostMoveEnumerator moves, double[] probabilities)
+    {
+        int count = Math.min(moves.getMoveCount(ghost), MAX_MOVES);
+        double[] frequencies = counts[ghost.ordinal()][game.isGhostEdible(ghost) ? 1 : 0][count - 2];
+        rank(game, ghost, moves, count);
+
+        double total = 0;
+        for (int i = 0; i < count; i++) {
+            probabilities[i] = PRIOR + frequencies[ranks[i]];
+            total += probabilities[i];
+        }
+        for (int i = 0; i < count; i++) {
+            probabilities[i] /= total;
+        }
+    }
+
+    public void update(Game game)
+    {
+        if (previous != null && previous.getMazeIndex() == game.getMazeIndex()
+                && previous.getTotalTime() + 1 == game.getTotalTime()) {
+            observe(previous, game);
+        }
+        previous = game.copy();
+    }
+
+    private void observe(Game before, Game after)
+    {
+        moves.reset(before);
+        for (GHOST ghost : GHOSTS) {
+            int count = moves.getMoveCount(ghost);
+            if (count < 2 || count > MAX_MOVES) {
+                continue;
+            }
+            MOVE taken = after.getGhostLastMoveMade(ghost);
+            if (after.getGhostCurrentNodeIndex(ghost) != before.getNeighbour(before.getGhostCurrentNodeIndex(ghost), taken)) {
+                continue;
+            }
+            rank(before, ghost, moves, count);
+            for (int i = 0; i < count; i++) {
+                if (moves.getMove(ghost, i) == taken) {
+                    counts[ghost.ordinal()][before.isGhostEdible(ghost) ? 1 : 0][count - 2][ranks[i]]++;
+                    observations++;
+                }
+            }
+        }
+    }
+
+    // Ranks the moves by the distance to Ms Pac-Man they lead to, nearest first, ties in the order of the moves
+    private void rank(Game game, GHOST ghost, GhostMoveEnumerator moves, int count)
+    {
+        int node = game.getGhostCurrentNodeIndex(ghost);
+        int pacManNode = game.getPacmanCurrentNodeIndex();
+        for (int i = 0; i < count; i++) {
+            int neighbour = game.getNeighbour(node, moves.getMove(ghost, i));
+            distances[i] = (neighbour == -1) ? Integer.MAX_VALUE : game.getShortestPathDistance(neighbour, pacManNode);
+        }
+        for (int i = 0; i < count; i++) {
+            int rank = 0;
+            for (int j = 0; j < count; j++) {
+                if (distances[j] < distances[i] || (distances[j] == distances[i] && j < i)) {
+                    rank++;
+                }
+            }
+            ranks[i] = rank;
+        }
+    }
+
+    /**
+     * @return The number of ghost decisions learnt from so far
+     */
+    public long getObservations()
+    {
+        return observations;
+    }
+}
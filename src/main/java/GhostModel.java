@@ -0,0 +1,29 @@
+import pacman.game.Constants.GHOST;
+import pacman.game.Game;
+import pacman.game.GhostMoveEnumerator;
+
+/**
+ * Predicts how the opposing ghosts choose their moves, for searches that treat the ghosts' plies as chance nodes
+ * rather than as an adversary.
+ */
+public interface GhostModel
+{
+    /**
+     * Gives the probability of each of a ghost's moves.
+     *
+     * @param game          The game state in which the ghost moves
+     * @param ghost         The ghost
+     * @param moves         The moves to choose from, reset to the game state; only called when the ghost has more
+     *                      than one
+     * @param probabilities Filled with the probability of each move, in the order of the enumerator, summing to 1
+     */
+    void probabilities(Game game, GHOST ghost, GhostMoveEnumerator moves, double[] probabilities);
+
+    /**
+     * Called with the game state at the start of every tick, so that models can learn from the moves the ghosts
+     * actually made.
+     *
+     * @param game The current game state
+     */
+    void update(Game game);
+}
@@ -1,11 +1,22 @@
 
 import pacman.Executor;
 import pacman.controllers.examples.RandomGhosts;
+import pacman.game.util.MemoryStats;
+import pacman.game.util.TimingStats;
 
 public class Main
 {
     public static void main(String[] args) {
         Executor executor = new Executor(false, true);
-        executor.runGameTimed(new MiniMaxAlgorithm(), new RandomGhosts(), true);
+        MiniMaxAlgorithm miniMax = new MiniMaxAlgorithm();
+        executor.runGameTimed(miniMax, new RandomGhosts(), true);
+        System.out.println(miniMax.getDepthStats());
+        System.out.println(miniMax.getTranspositionTable());
+        for (TimingStats timings : executor.getTimingStats()) {
+            System.out.println(timings);
+        }
+        for (MemoryStats memory : executor.getMemoryStats()) {
+            System.out.println(memory);
+        }
     }
 }
@@ -1,376 +1,1034 @@
-
-import com.google.common.base.Optional;
-import com.google.common.collect.Lists;
-import com.google.common.collect.Sets;
-import com.google.common.primitives.Ints;
-
 import pacman.controllers.PacmanController;
 import pacman.game.Constants.GHOST;
 import pacman.game.Constants.MOVE;
 import pacman.game.Game;
+import pacman.game.GhostMoveEnumerator;
+import pacman.game.util.AllocationTracker;
+import pacman.game.util.Stats;
+import pacman.game.util.TranspositionTable;
 
-import javax.annotation.Nullable;
 import java.util.*;
-
-import static com.google.common.base.Preconditions.checkNotNull;
-
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static pacman.game.util.TranspositionTable.*;
+
+/**
+ * Ms Pac-Man controller that searches ahead, alternating between Ms Pac-Man and all four ghosts moving together,
+ * and evaluates the positions at the horizon with heuristicVal.
+ * <p>
+ * The search is a depth-first alpha-beta search that evaluates positions on the fly, so only the games along the
+ * current path are kept alive. When the move has a deadline the search is iteratively deepened, one move of each
+ * side at a time, until the deadline is close; the move of the deepest completed iteration is played and an
+ * unfinished iteration is abandoned. The clock is only read every few nodes. Without a deadline the search goes
+ * straight to MINIMAX_DEPTH.
+ * <p>
+ * Moves are ordered so that cut-offs come early: the principal variation of the previous iteration is searched
+ * first (at the first iteration, the move chosen on the previous tick), Ms Pac-Man otherwise prefers moves away
+ * from the nearest ghost and towards pills, and each ghost prefers moves towards Ms Pac-Man (away from her while
+ * edible). Ties at the root are broken in the fixed order of PAC_MAN_MOVES whatever order the moves are searched
+ * in, so the decision at each depth is exactly the one an exhaustive minimax search of that depth would make.
+ * <p>
+ * Positions are stored in a transposition table keyed by Game.getStateHash(), so that positions reached along
+ * several paths - Ms Pac-Man moving into a wall continues in her current direction, and different ghost moves
+ * often lead to the same positions - are searched once. Only an entry searched to the same depth cuts the search
+ * off: a deeper one would answer for a position reached with less depth to go by a deeper search, and the decision
+ * would no longer be that of a search of the iteration's depth. The table also supplies the best move of positions
+ * searched by earlier iterations and ticks, to any depth, to the move ordering.
+ * <p>
+ * The ghosts' joint moves come from a GhostMoveEnumerator, so only ghosts at a decision point branch and the
+ * combinations are applied as packed ints without building maps.
+ * <p>
+ * Ghost moves are applied without the random global reversal of Game.updateGhosts, which would make the tree
+ * differ between searches, but with the forced reversal when a power pill has just been eaten.
+ * <p>
+ * With more than one thread the search runs on a ForkJoinPool of its own using Young Brothers Wait: at nodes with
+ * at least MIN_SPLIT_DEPTH plies to go the first child is searched alone and the rest are shared out among the
+ * threads, each searching on its own copies of the game and tightening a bound shared through the split point. A
+ * cut-off cancels the remaining work below that node, and the deadline stops every thread; the transposition table
+ * is shared. The root keeps the same tie-break, so apart from the order in which the table fills up the decision
+ * is the same as with one thread. What the pool's threads allocate, and the ponder thread's, is charged to the
+ * controller's MemoryStats through getHelperAllocatedBytes.
+ * <p>
+ * With pondering on (see setPondering) the search goes on in the background between ticks on the position
+ * expected next, and the next tick picks up from there when the expectation was right.
+ */
 public class MiniMaxAlgorithm extends PacmanController
 {
 
     private static final int MINIMAX_DEPTH = 4;
+    // Deepest search attempted when there is time to spare, in plies
+    private static final int MAX_DEPTH = 24;
+    // Time kept back from the deadline to unwind the search and hand the move over
+    private static final long SAFETY_MARGIN_MS = 3;
+    // The clock is read once every this many nodes (must be a power of two)
+    private static final int NODES_PER_TIME_CHECK = 64;
+    // Remaining depth from which the younger brothers of a node may be searched in parallel
+    private static final int MIN_SPLIT_DEPTH = 3;
+    private static final MOVE[] PAC_MAN_MOVES = {MOVE.UP, MOVE.RIGHT, MOVE.DOWN, MOVE.LEFT};
+    private static final MOVE[] MOVES = MOVE.values();
+    private static final GHOST[] GHOSTS = GHOST.values();
+    // Distances beyond this make no difference to the move ordering
+    private static final int ORDERING_HORIZON = 40;
+
+    // Entries of 16 bytes, so 16 MB
+    private static final int TRANSPOSITION_TABLE_SIZE = 1 << 20;
+    // Distinguishes positions with the ghosts to move from the same positions with Ms Pac-Man to move
+    private static final long GHOSTS_TO_MOVE = 0x6A09E667F3BCC908L;
+    // Pondering stops after this long even if the next position never arrives, e.g. when the game is over
+    private static final long PONDER_LIMIT_MS = 1000;
+
+    private final TranspositionTable transpositionTable = new TranspositionTable(TRANSPOSITION_TABLE_SIZE);
+    private final int threads;
+    private final int fixedDepth;
+    private ForkJoinPool pool;
+    // The pool's workers and the ponder thread, whose allocation the controller is charged with
+    private final AllocationTracker helperAllocation = new AllocationTracker();
+
+    private MOVE previousBestMove;
+    private long nodesVisited;
+    private int reachedDepth;
+    private final Stats depthStats = new Stats("MiniMax depth");
+
+    // Shared by all searchers of the current tick
+    private long deadline;
+    private volatile boolean aborted;
+    private final AtomicLong helperNodes = new AtomicLong();
+    // The searchers of finished helper tasks, per thread, so that splits do not allocate. A thread that waits for
+    // a split below it may run other helper tasks meanwhile, so it needs one searcher per task it is in at once.
+    private final ThreadLocal<ArrayDeque<Searcher>> idleSearchers = new ThreadLocal<ArrayDeque<Searcher>>()
+    {
+        @Override
+        protected ArrayDeque<Searcher> initialValue()
+        {
+            return new ArrayDeque<Searcher>();
+        }
+    };
+
+    // The principal variation of the last completed iteration, in the format of Searcher.pvTable
+    private final int[] previousPv = new int[MAX_DEPTH + 1];
+    private int previousPvLength;
+    // Depth of the last completed iteration of the most recent search, pondering included
+    private int iterationDepth;
+
+    private boolean pondering;
+    private Thread ponderThread;
+    private long ponderKey;
+    private long ponderHits;
+    private long ponderMisses;
+    private final Stats ponderDepthStats = new Stats("MiniMax ponder depth");
+
+    public MiniMaxAlgorithm()
+    {
+        this(1);
+    }
 
-    public MOVE getMove(Game game, long timeDue)
+    public MiniMaxAlgorithm(int threads)
     {
-        Tree miniMaxTree = createMiniMaxTree(game, MINIMAX_DEPTH, true);
-        return bestMoveFromTree(miniMaxTree);
+        this(threads, MINIMAX_DEPTH);
     }
-    private Tree createMiniMaxTree(Game game, int depth, boolean isPacMan)
+
+    /**
+     * Creates the controller.
+     *
+     * @param threads The number of threads to search with; with 1 the search runs on the calling thread only
+     * @param depth   The depth, in plies, to search when a move has no deadline: an even number of at least 2, as
+     *                every iteration searches a move of Ms Pac-Man and one of the ghosts; deeper than MAX_DEPTH is
+     *                searched to MAX_DEPTH
+     */
+    public MiniMaxAlgorithm(int threads, int depth)
     {
+        if (threads < 1) {
+            throw new IllegalArgumentException("At least one thread is needed, not " + threads);
+        }
+        if (depth < 2 || depth % 2 != 0) {
+            throw new IllegalArgumentException("The depth must be an even number of at least 2, not " + depth);
+        }
+        this.threads = threads;
+        this.fixedDepth = Math.min(depth, MAX_DEPTH);
+    }
 
-        if (depth == 0 || isEndGameState(game)) {
-            return new Leaf(heuristicVal(game));
+    public MOVE getMove(Game game, long timeDue)
+    {
+        boolean ponderHit = stopPondering(game);
+        aborted = false;
+        helperNodes.set(0);
+        // After a ponder hit the table and the principal variation already belong to this position
+        if (!ponderHit) {
+            previousPvLength = 0;
+            transpositionTable.newSearch();
         }
+        deadline = (timeDue == -1) ? Long.MAX_VALUE : timeDue - SAFETY_MARGIN_MS;
 
-        if (isPacMan) {
+        Searcher searcher = new Searcher(null);
+        MOVE bestMove = iterate(game, (timeDue == -1) ? fixedDepth : MAX_DEPTH, searcher);
+        reachedDepth = iterationDepth;
 
-            Map<MOVE, Tree> branches = new HashMap<>();
-            Game leftGame = stateAfterPacMove(MOVE.LEFT, game);
-            branches.put(MOVE.LEFT, createMiniMaxTree(leftGame, depth - 1, false));
-            Game rightGame = stateAfterPacMove(MOVE.RIGHT, game);
-            branches.put(MOVE.RIGHT, createMiniMaxTree(rightGame, depth - 1, false));
-            Game upGame = stateAfterPacMove(MOVE.UP, game);
-            branches.put(MOVE.UP, createMiniMaxTree(upGame, depth - 1, false));
-            Game downGame = stateAfterPacMove(MOVE.DOWN, game);
-            branches.put(MOVE.DOWN, createMiniMaxTree(downGame, depth - 1, false));
+        // Not even the shallowest search finished: fall back on the ordering heuristic
+        if (bestMove == null) {
+            bestMove = orderPacManMoves(game, previousBestMove)[0];
+        }
 
-            return new PacNode(branches);
-        } else {
+        nodesVisited = searcher.nodes + helperNodes.get();
+        depthStats.add(reachedDepth);
+        previousBestMove = bestMove;
 
-            Set<MOVE> possibleBlinkyMoves = getPossibleGhostMoves(game, GHOST.BLINKY);
-            Set<MOVE> possibleInkyMoves = getPossibleGhostMoves(game, GHOST.INKY);
-            Set<MOVE> possiblePinkyMoves = getPossibleGhostMoves(game, GHOST.PINKY);
-            Set<MOVE> possibleSueMoves = getPossibleGhostMoves(game, GHOST.SUE);
+        if (pondering && timeDue != -1 && !game.gameOver()) {
+            startPondering(game, bestMove);
+        }
+        return bestMove;
+    }
 
-            Set<Map<GHOST, MOVE>> possibleGhostCombinations = calculateGhostCombinations(possibleBlinkyMoves,
-                    possibleInkyMoves,
-                    possiblePinkyMoves,
-                    possibleSueMoves);
+    /*
+     * Deepens the search from the position until maxDepth or the deadline, keeping the principal variation of
+     * every completed iteration. Returns the move of the deepest completed iteration, or null if there is none.
+     */
+    private MOVE iterate(Game game, int maxDepth, Searcher searcher)
+    {
+        MOVE bestMove = null;
+        iterationDepth = 0;
 
-            Set<Tree> ghostBranches = new HashSet<>();
-            for (Map<GHOST, MOVE> possibleGhostMoves : possibleGhostCombinations) {
-                Game gameStateAfterGhosts = gameStateAfterGhosts(game, possibleGhostMoves);
-                ghostBranches.add(createMiniMaxTree(gameStateAfterGhosts, depth - 1, true));
+        for (int depth = 2; depth <= maxDepth; depth += 2) {
+            MOVE move = (threads == 1) ? searcher.searchRoot(game, depth) : pool().invoke(new RootTask(searcher, game, depth));
+            if (move == null) {
+                break;
             }
+            bestMove = move;
+            iterationDepth = depth;
 
-            return new GhostNode(ghostBranches);
+            System.arraycopy(searcher.pvTable[0], 0, previousPv, 0, searcher.pvLength[0]);
+            previousPvLength = searcher.pvLength[0];
+
+            if (System.currentTimeMillis() >= deadline) {
+                break;
+            }
         }
+        return bestMove;
     }
 
-
-    private boolean isEndGameState(Game game)
+    /**
+     * Turns pondering on or off. While pondering, the controller spends the time between answering and the next
+     * tick searching the position it expects next - its own move followed by the ghosts' replies of its principal
+     * variation - on a background thread, filling the transposition table. If that position does arrive the
+     * search continues from there; otherwise the table entries are merely older. Pondering only happens when
+     * moves have a deadline, and stops after PONDER_LIMIT_MS. What pondering allocates is charged to the next
+     * decision in the controller's MemoryStats.
+     *
+     * @param pondering Whether to ponder
+     */
+    public void setPondering(boolean pondering)
     {
-        return (game.getNumberOfActivePills() == 0 && game.getNumberOfActivePowerPills() == 0) ||
-                game.wasPacManEaten() ||
-                game.gameOver();
+        this.pondering = pondering;
     }
 
-    private int heuristicVal(Game game)
+    public boolean isPondering()
     {
-        if (game.wasPacManEaten()) {
+        return pondering;
+    }
 
-            return Integer.MIN_VALUE;
-        }
+    public long getPonderHits()
+    {
+        return ponderHits;
+    }
 
-        int totalPills = game.getNumberOfActivePills() + game.getNumberOfActivePowerPills();
-        int score = game.getScore();
+    public long getPonderMisses()
+    {
+        return ponderMisses;
+    }
 
+    /**
+     * Gets the fraction of ticks on which the position pondered on was the one that arrived.
+     *
+     * @return The hit rate, or 0 if nothing has been pondered
+     */
+    public double getPonderHitRate()
+    {
+        long ponders = ponderHits + ponderMisses;
+        return (ponders == 0) ? 0 : (double) ponderHits / ponders;
+    }
 
-        int distanceToBlinky = shortestPathDistanceToGhost(game, GHOST.BLINKY);
-        int distanceToInky = shortestPathDistanceToGhost(game, GHOST.INKY);
-        int distanceToPinky = shortestPathDistanceToGhost(game, GHOST.PINKY);
-        int distanceToSue = shortestPathDistanceToGhost(game, GHOST.SUE);
-        Map<GHOST, Integer> ghostsToDistance = new HashMap<>();
-        ghostsToDistance.put(GHOST.BLINKY, distanceToBlinky);
-        ghostsToDistance.put(GHOST.INKY, distanceToInky);
-        ghostsToDistance.put(GHOST.PINKY, distanceToPinky);
-        ghostsToDistance.put(GHOST.SUE, distanceToSue);
+    /**
+     * Gets the depth pondering reached before each tick.
+     *
+     * @return The depth statistics
+     */
+    public Stats getPonderDepthStats()
+    {
+        return ponderDepthStats;
+    }
 
-        int distanceToNearestGhost = Collections.min(Lists.newArrayList(distanceToBlinky, distanceToInky,
-                distanceToPinky, distanceToSue));
-        GHOST nearestGhost = null;
+    private void startPondering(Game game, MOVE move)
+    {
+        final Game expected = expectedNextState(game, move);
+        ponderKey = expected.getStateHash();
+        transpositionTable.newSearch();
+        deadline = System.currentTimeMillis() + PONDER_LIMIT_MS;
 
-        for (Map.Entry<GHOST, Integer> ghostDistance : ghostsToDistance.entrySet()) {
-            if (ghostDistance.getValue() == distanceToNearestGhost) {
-                nearestGhost = ghostDistance.getKey();
+        ponderThread = new Thread(new Runnable()
+        {
+            public void run()
+            {
+                try {
+                    iterate(expected, MAX_DEPTH, new Searcher(null));
+                } finally {
+                    helperAllocation.finished();
+                }
             }
-        }
-
+        }, "MiniMax ponder");
+        ponderThread.setDaemon(true);
+        helperAllocation.register(ponderThread);
+        ponderThread.start();
+    }
 
-        int weightedGhostScore = -500 * (20 - distanceToNearestGhost);
-        if (distanceToNearestGhost >= 20 || game.isGhostEdible(nearestGhost)) {
-            weightedGhostScore = 0;
+    // Stops pondering, if it is going on, and tells whether it was on the given position
+    private boolean stopPondering(Game game)
+    {
+        if (ponderThread == null) {
+            return false;
         }
-
-        int weightedEatingGhostScore = 0;
-        if (game.isGhostEdible(nearestGhost) && distanceToNearestGhost <= 40) {
-            weightedEatingGhostScore = 50 * (40 - distanceToNearestGhost);
+        aborted = true;
+        try {
+            ponderThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
+        ponderThread = null;
+        ponderDepthStats.add(iterationDepth);
 
+        if (game.getStateHash() == ponderKey) {
+            ponderHits++;
+            return true;
+        }
+        ponderMisses++;
+        return false;
+    }
 
-        List<Integer> activePillIndices = new ArrayList<>();
-        activePillIndices.addAll(Ints.asList(game.getActivePillsIndices()));
-        activePillIndices.addAll(Ints.asList(game.getActivePowerPillsIndices()));
-
-        List<Integer> distancesToPills = new ArrayList<>();
-        for (int pillIndice : activePillIndices) {
-            distancesToPills.add(game.getShortestPathDistance(game.getPacmanCurrentNodeIndex(), pillIndice));
+    // The position after Ms Pac-Man's move and the ghosts' replies of the principal variation, or the replies
+    // the move ordering expects if the search did not get that far
+    private Game expectedNextState(Game game, MOVE move)
+    {
+        int ghostMoves;
+        if (previousPvLength >= 2 && previousPv[0] == move.ordinal()) {
+            ghostMoves = previousPv[1];
+        } else {
+            Game afterMove = stateAfterPacMove(move, game);
+            GhostMoveEnumerator combinations = new GhostMoveEnumerator().reset(afterMove);
+            int[] keys = new int[MOVES.length];
+            for (GHOST ghost : GHOSTS) {
+                orderGhostMoves(afterMove, ghost, null, combinations, keys);
+            }
+            ghostMoves = combinations.get(0);
         }
-        int distanceToNearestPill = 0;
-        if (!distancesToPills.isEmpty()) {
 
-            distanceToNearestPill = Collections.min(distancesToPills);
+        EnumMap<GHOST, MOVE> replies = new EnumMap<>(GHOST.class);
+        for (GHOST ghost : GHOSTS) {
+            replies.put(ghost, GhostMoveEnumerator.moveOf(ghostMoves, ghost));
         }
+        Game expected = game.copy();
+        expected.advanceGameWithPowerPillReverseOnly(move, replies);
+        return expected;
+    }
 
-        return -1 * totalPills + -1 * distanceToNearestPill + 100 * score + weightedGhostScore +
-                weightedEatingGhostScore;
+    /**
+     * Gets the number of positions, interior and leaf, visited on the most recent tick over all iterations and
+     * threads.
+     *
+     * @return The number of nodes
+     */
+    public long getNodesVisited()
+    {
+        return nodesVisited;
     }
 
-    private int shortestPathDistanceToGhost(Game game, GHOST ghost)
+    /**
+     * Gets the depth, in plies, of the deepest search completed on the most recent tick.
+     *
+     * @return The depth, or 0 if not even the first iteration completed in time
+     */
+    public int getReachedDepth()
     {
-        return game.getShortestPathDistance(game.getPacmanCurrentNodeIndex(), game.getGhostCurrentNodeIndex(ghost));
+        return reachedDepth;
     }
 
-    private Game stateAfterPacMove(MOVE pacMove, Game curGame)
+    /**
+     * Gets the depth reached on every tick so far.
+     *
+     * @return The depth statistics
+     */
+    public Stats getDepthStats()
     {
-        Game copyOfGame = curGame.copy();
-        copyOfGame.updatePacMan(pacMove);
-        return copyOfGame;
+        return depthStats;
     }
 
-    private Set<Map<GHOST, MOVE>> calculateGhostCombinations(Set<MOVE> possibleBlinkyMoves,
-                                                             Set<MOVE> possibleInkyMoves,
-                                                             Set<MOVE> possiblePinkyMoves,
-                                                             Set<MOVE> possibleSueMoves)
+    /**
+     * Gets the transposition table, whose statistics cover all searches so far.
+     *
+     * @return The table
+     */
+    public TranspositionTable getTranspositionTable()
     {
-        Set<Map<GHOST, MOVE>> result = new HashSet<>();
+        return transpositionTable;
+    }
 
-        for (MOVE blinkyMove : possibleBlinkyMoves) {
-            for (MOVE inkyMove : possibleInkyMoves) {
-                for (MOVE pinkyMove : possiblePinkyMoves) {
-                    for (MOVE sueMove : possibleSueMoves) {
+    public int getThreads()
+    {
+        return threads;
+    }
 
-                        Map<GHOST, MOVE> possibleMoveSet = new HashMap<>();
-                        possibleMoveSet.put(GHOST.BLINKY, blinkyMove);
-                        possibleMoveSet.put(GHOST.INKY, inkyMove);
-                        possibleMoveSet.put(GHOST.PINKY, pinkyMove);
-                        possibleMoveSet.put(GHOST.SUE, sueMove);
+    @Override
+    protected long getHelperAllocatedBytes()
+    {
+        return helperAllocation.getAllocatedBytes();
+    }
 
-                        result.add(possibleMoveSet);
-                    }
-                }
-            }
+    private ForkJoinPool pool()
+    {
+        if (pool == null) {
+            pool = new ForkJoinPool(threads, helperAllocation.workerThreadFactory(), null, false);
         }
-
-        return result;
+        return pool;
     }
 
-
-    private Game gameStateAfterGhosts(Game game, Map<GHOST, MOVE> ghostMoves)
+    /*
+     * One thread's view of the search: its node count, its principal variation table and the split point it is
+     * working under, if any. The sequential search uses a single searcher; in parallel mode every task runs on one
+     * of its own, taken from its thread's idle searchers, and they share the transposition table, the deadline and
+     * the split points.
+     */
+    private final class Searcher
     {
-        Game copyOfGame = game.copy();
-
-        EnumMap<GHOST, MOVE> enumMap = new EnumMap<>(GHOST.class);
+        // Triangular principal variation table: pvTable[ply] holds the best line found from that ply on. Entries
+        // are Ms Pac-Man's move ordinal at even plies and the ghosts' moves packed by GhostMoveEnumerator at odd plies.
+        final int[][] pvTable = new int[MAX_DEPTH + 1][MAX_DEPTH + 1];
+        final int[] pvLength = new int[MAX_DEPTH + 1];
+        // One enumerator of the ghosts' joint moves per ply, created when first needed
+        final GhostMoveEnumerator[] enumerators = new GhostMoveEnumerator[MAX_DEPTH + 1];
+        final int[] keys = new int[MOVES.length];
+        SplitPoint split;
+        long nodes;
+        boolean stopped;
+
+        Searcher(SplitPoint split)
+        {
+            this.split = split;
+        }
 
-        for (Map.Entry<GHOST, MOVE> ghostMove : ghostMoves.entrySet()) {
-            enumMap.put(ghostMove.getKey(), ghostMove.getValue());
+        // Readies a searcher of an earlier split to help at another, keeping its tables and enumerators
+        Searcher reset(SplitPoint split)
+        {
+            this.split = split;
+            nodes = 0;
+            stopped = false;
+            return this;
         }
-        copyOfGame.updateGhosts(enumMap);
 
-        return copyOfGame;
-    }
-    private Set<MOVE> getPossibleGhostMoves(Game game, GHOST ghost)
-    {
-        Set<MOVE> result = Sets.newHashSet(game.getPossibleMoves(game.getGhostCurrentNodeIndex(ghost),
-                game.getGhostLastMoveMade(ghost)));
+        MOVE searchRoot(Game game, int depth)
+        {
+            nodes++;
+            pvLength[0] = 0;
+            MOVE first = (previousPvLength > 0) ? MOVES[previousPv[0]] : previousBestMove;
+            MOVE[] moves = orderPacManMoves(game, first);
+
+            MOVE bestMove = null;
+            long bestValue = Long.MIN_VALUE;
+
+            for (int i = 0; i < moves.length; i++) {
+                MOVE move = moves[i];
+                if (bestMove != null && canSplit(depth, moves.length - i)) {
+                    SplitPoint split = new SplitPoint(this.split, game, true, true, depth, 0, Long.MIN_VALUE,
+                            Long.MAX_VALUE, codesOf(moves, i));
+                    split.seed(bestValue, bestMove.ordinal(), pvTable[0], pvLength[0]);
+                    if (!runSplit(split)) {
+                        return null;
+                    }
+                    copyPv(split, 0);
+                    return MOVES[split.bestEntry];
+                }
+
+                Game next = stateAfterPacMove(move, game);
+                boolean followPv = previousPvLength > 0 && move == first;
+                long value;
+                boolean better;
+
+                if (bestMove == null) {
+                    value = minValue(next, depth - 1, 1, Long.MIN_VALUE, Long.MAX_VALUE, followPv);
+                    better = true;
+                } else if (rankOf(move) < rankOf(bestMove)) {
+                    // this move comes first in the fixed order, so it also wins a tie
+                    value = minValue(next, depth - 1, 1, bestValue - 1, Long.MAX_VALUE, followPv);
+                    better = value >= bestValue;
+                } else {
+                    value = minValue(next, depth - 1, 1, bestValue, Long.MAX_VALUE, followPv);
+                    better = value > bestValue;
+                }
+                if (stopped) {
+                    return null;
+                }
 
-        if (result.isEmpty()) {
+                if (better) {
+                    bestValue = value;
+                    bestMove = move;
+                    updatePv(0, move.ordinal());
+                }
+            }
 
-            return Sets.newHashSet(MOVE.NEUTRAL);
+            return bestMove;
         }
-        return result;
-    }
 
-    private MOVE bestMoveFromTree(Tree miniMaxTree)
-    {
-        return bestMoveFromTreeHelper(miniMaxTree, true).move;
-    }
+        long maxValue(Game game, int depth, int ply, long alpha, long beta, boolean followPv)
+        {
+            pvLength[ply] = ply;
+            if (timeUp()) {
+                return alpha;
+            }
 
-    private MoveNumber bestMoveFromTreeHelper(Tree miniMaxTree, boolean maximizingPlayer)
-    {
-        if (miniMaxTree.isLeaf()) {
-            // There is no possible move for just a leaf so just leave as null
-            return new MoveNumber(null, miniMaxTree.getHeuristic());
-        } else if (maximizingPlayer) {
-            // This should be a PacNode. Retrieve the children and moves and find the one with the largest heuristic val
-            Optional<MoveNumber> moveNumberOptional = Optional.absent();
+            long key = game.getStateHash();
+            long entry = transpositionTable.probe(key);
+            if (entry != 0 && depth(entry) == depth) {
+                int value = value(entry);
+                int bound = bound(entry);
+                if (bound == EXACT || (bound == LOWER_BOUND && value >= beta) || (bound == UPPER_BOUND && value <= alpha)) {
+                    return value;
+                }
+            }
+            if (depth == 0 || isEndGameState(game)) {
+                int value = heuristicVal(game);
+                transpositionTable.store(key, depth, EXACT, value, NO_MOVE);
+                return value;
+            }
 
-            for (Map.Entry<MOVE, Tree> entry : miniMaxTree.getChildrenAndMoves().entrySet()) {
-                MoveNumber moveNumber = bestMoveFromTreeHelper(entry.getValue(), false);
-                moveNumber.setMove(entry.getKey());
+            // The previous iteration's principal variation comes first, then the best move stored for this position
+            MOVE first = followPv && ply < previousPvLength ? MOVES[previousPv[ply]] : null;
+            boolean onPv = first != null;
+            if (first == null && entry != 0 && move(entry) != NO_MOVE) {
+                first = MOVES[move(entry)];
+            }
 
-                if (!moveNumberOptional.isPresent()) {
-                    moveNumberOptional = Optional.of(moveNumber);
-                } else if (moveNumber.hValue > moveNumberOptional.get().hValue) {
-                    moveNumberOptional = Optional.of(moveNumber);
+            long alphaOriginal = alpha;
+            int bestMove = NO_MOVE;
+            MOVE[] moves = orderPacManMoves(game, first);
+            for (int i = 0; i < moves.length; i++) {
+                MOVE move = moves[i];
+                if (i > 0 && canSplit(depth, moves.length - i)) {
+                    SplitPoint split = new SplitPoint(this.split, game, true, false, depth, ply, alpha, beta,
+                            codesOf(moves, i));
+                    split.seed(alpha, bestMove, pvTable[ply], pvLength[ply]);
+                    if (!runSplit(split)) {
+                        return alpha;
+                    }
+                    alpha = split.bound.get();
+                    bestMove = split.bestEntry;
+                    copyPv(split, ply);
+                    break;
+                }
+
+                long value = minValue(stateAfterPacMove(move, game), depth - 1, ply + 1, alpha, beta, onPv && move == first);
+                if (stopped) {
+                    return alpha;
+                }
+                if (value > alpha) {
+                    alpha = value;
+                    bestMove = move.ordinal();
+                    updatePv(ply, bestMove);
+                    if (alpha >= beta) {
+                        break;
+                    }
                 }
             }
-            return moveNumberOptional.get();
-        } else {
 
-            Optional<MoveNumber> moveNumberOptional = Optional.absent();
+            int bound = (alpha <= alphaOriginal) ? UPPER_BOUND : (alpha >= beta) ? LOWER_BOUND : EXACT;
+            store(key, depth, bound, alpha, bestMove);
+            return alpha;
+        }
 
-            for (Tree tree : miniMaxTree.getChildren()) {
-                MoveNumber moveNumber = bestMoveFromTreeHelper(tree, true);
+        long minValue(Game game, int depth, int ply, long alpha, long beta, boolean followPv)
+        {
+            pvLength[ply] = ply;
+            if (timeUp()) {
+                return beta;
+            }
 
-                if (!moveNumberOptional.isPresent()) {
-                    moveNumberOptional = Optional.of(moveNumber);
-                } else if (moveNumber.hValue < moveNumberOptional.get().hValue) {
-                    moveNumberOptional = Optional.of(moveNumber);
+            long key = game.getStateHash() ^ GHOSTS_TO_MOVE;
+            long entry = transpositionTable.probe(key);
+            if (entry != 0 && depth(entry) == depth) {
+                int value = value(entry);
+                int bound = bound(entry);
+                if (bound == EXACT || (bound == LOWER_BOUND && value >= beta) || (bound == UPPER_BOUND && value <= alpha)) {
+                    return value;
                 }
             }
-            return moveNumberOptional.get();
-        }
-    }
+            if (depth == 0 || isEndGameState(game)) {
+                int value = heuristicVal(game);
+                transpositionTable.store(key, depth, EXACT, value, NO_MOVE);
+                return value;
+            }
 
-    interface Tree
-    {
-        boolean isLeaf();
-        int getHeuristic();
-        Map<MOVE, Tree> getChildrenAndMoves();
-        Set<Tree> getChildren();
+            int pvCode = followPv && ply < previousPvLength ? previousPv[ply] : NO_MOVE;
+            int firstCode = (pvCode == NO_MOVE && entry != 0) ? move(entry) : pvCode;
+            GhostMoveEnumerator combinations = enumerator(ply).reset(game);
+            for (GHOST ghost : GHOSTS) {
+                orderGhostMoves(game, ghost, (firstCode == NO_MOVE) ? null : GhostMoveEnumerator.moveOf(firstCode, ghost),
+                        combinations, keys);
+            }
+            // With the principal variation's move first for every ghost, its combination is the first one searched
+            int size = combinations.size();
+
+            long betaOriginal = beta;
+            int bestCode = NO_MOVE;
+            for (int i = 0; i < size; i++) {
+                if (i > 0 && canSplit(depth, size - i)) {
+                    SplitPoint split = new SplitPoint(this.split, game, false, false, depth, ply, alpha, beta,
+                            remaining(combinations, i));
+                    split.seed(beta, bestCode, pvTable[ply], pvLength[ply]);
+                    if (!runSplit(split)) {
+                        return beta;
+                    }
+                    beta = split.bound.get();
+                    bestCode = split.bestEntry;
+                    copyPv(split, ply);
+                    break;
+                }
 
-    }
+                int code = combinations.get(i);
+                long value = maxValue(gameStateAfterGhosts(game, code), depth - 1, ply + 1,
+                        alpha, beta, i == 0 && code == pvCode);
+                if (stopped) {
+                    return beta;
+                }
+                if (value < beta) {
+                    beta = value;
+                    bestCode = code;
+                    updatePv(ply, bestCode);
+                    if (alpha >= beta) {
+                        break;
+                    }
+                }
+            }
 
-    private static class PacNode implements Tree
-    {
-        private Map<MOVE, Tree> branches;
+            int bound = (beta >= betaOriginal) ? LOWER_BOUND : (alpha >= beta) ? UPPER_BOUND : EXACT;
+            store(key, depth, bound, beta, bestCode);
+            return beta;
+        }
 
-        PacNode(Map<MOVE, Tree> branches)
+        // Searches one of the younger brothers of a split point and reports the result to it
+        void searchChild(SplitPoint split, int code)
         {
-            this.branches = checkNotNull(branches);
+            long value;
+            if (split.pacManToMove) {
+                Game next = stateAfterPacMove(MOVES[code], split.game);
+                // at the root every move that might tie the best so far needs an exact value, see searchRoot
+                long alpha = split.root ? split.bound.get() - 1 : split.bound.get();
+                value = minValue(next, split.depth - 1, split.ply + 1, alpha, split.beta, false);
+            } else {
+                value = maxValue(gameStateAfterGhosts(split.game, code), split.depth - 1, split.ply + 1,
+                        split.alpha, split.bound.get(), false);
+            }
+            if (!stopped) {
+                split.update(value, code, pvTable[split.ply + 1], pvLength[split.ply + 1]);
+            }
         }
 
-        @Override
-        public boolean isLeaf()
+        /*
+         * Searches the remaining children of a node in parallel, with this thread taking part, and waits for them.
+         * Returns false if the search was stopped meanwhile, by the deadline or by a cut-off above this node.
+         */
+        boolean runSplit(SplitPoint split)
         {
-            return false;
+            int helpers = Math.min(threads, split.children.length);
+            HelperTask[] tasks = new HelperTask[helpers];
+            for (int i = 0; i < helpers; i++) {
+                tasks[i] = new HelperTask(split);
+            }
+            ForkJoinTask.invokeAll(tasks);
+
+            if (aborted || (this.split != null && this.split.isCancelled())) {
+                stopped = true;
+            }
+            return !stopped;
         }
 
-        @Override
-        public int getHeuristic()
+        GhostMoveEnumerator enumerator(int ply)
         {
-            throw new RuntimeException();
+            if (enumerators[ply] == null) {
+                enumerators[ply] = new GhostMoveEnumerator();
+            }
+            return enumerators[ply];
         }
 
-        @Override
-        public Map<MOVE, Tree> getChildrenAndMoves()
+        void copyPv(SplitPoint split, int ply)
         {
-            return branches;
+            synchronized (split) {
+                System.arraycopy(split.pv, ply, pvTable[ply], ply, split.pvLength - ply);
+                pvLength[ply] = Math.max(split.pvLength, ply);
+            }
         }
 
-        @Override
-        public Set<Tree> getChildren()
+        // Counts the node and every NODES_PER_TIME_CHECK nodes checks the clock and the split points above
+        boolean timeUp()
+        {
+            if ((++nodes & (NODES_PER_TIME_CHECK - 1)) == 0) {
+                if (System.currentTimeMillis() >= deadline) {
+                    aborted = true;
+                }
+                if (aborted || (split != null && split.isCancelled())) {
+                    stopped = true;
+                }
+            }
+            return stopped;
+        }
+
+        void updatePv(int ply, int entry)
         {
-            throw new RuntimeException();
+            pvTable[ply][ply] = entry;
+            int length = Math.max(pvLength[ply + 1], ply + 1);
+            for (int i = ply + 1; i < length; i++) {
+                pvTable[ply][i] = pvTable[ply + 1][i];
+            }
+            pvLength[ply] = length;
         }
     }
-    private static class GhostNode implements Tree
+
+    /*
+     * A node whose younger brothers are being searched in parallel (Young Brothers Wait: the eldest is always
+     * searched first on its own). Helpers claim children one at a time, so each child starts with the tightest
+     * bound found so far. The bound is alpha at Ms Pac-Man's nodes and beta at the ghosts'; the other side of the
+     * window is fixed. A cut-off cancels the remaining children and, through the parent links, any splits below.
+     */
+    private static final class SplitPoint
     {
+        final SplitPoint parent;
+        final Game game;
+        final boolean pacManToMove;
+        final boolean root;
+        final int depth;
+        final int ply;
+        final long alpha;
+        final long beta;
+        final int[] children;
+        final AtomicInteger next = new AtomicInteger();
+        final AtomicLong bound = new AtomicLong();
+        volatile boolean cutoff;
+
+        // Guarded by this
+        int bestEntry = NO_MOVE;
+        final int[] pv = new int[MAX_DEPTH + 1];
+        int pvLength;
+
+        SplitPoint(SplitPoint parent, Game game, boolean pacManToMove, boolean root, int depth, int ply, long alpha,
+                   long beta, int[] children)
+        {
+            this.parent = parent;
+            this.game = game;
+            this.pacManToMove = pacManToMove;
+            this.root = root;
+            this.depth = depth;
+            this.ply = ply;
+            this.alpha = alpha;
+            this.beta = beta;
+            this.children = children;
+        }
 
-        private Set<Tree> ghostBranches;
+        // Starts from the result of the children the owner has searched already
+        synchronized void seed(long value, int entry, int[] ownerPv, int ownerPvLength)
+        {
+            bound.set(value);
+            bestEntry = entry;
+            pvLength = ply;
+            if (entry != NO_MOVE) {
+                System.arraycopy(ownerPv, ply, pv, ply, ownerPvLength - ply);
+                pvLength = ownerPvLength;
+            }
+        }
 
-        GhostNode(Set<Tree> ghostBranches)
+        synchronized void update(long value, int entry, int[] childPv, int childPvLength)
         {
-            this.ghostBranches = checkNotNull(ghostBranches);
+            long current = bound.get();
+            boolean better;
+            if (root) {
+                better = value > current || (value == current && rankOf(MOVES[entry]) < rankOf(MOVES[bestEntry]));
+            } else {
+                better = pacManToMove ? value > current : value < current;
+            }
+            if (!better) {
+                return;
+            }
+
+            bound.set(value);
+            bestEntry = entry;
+            pv[ply] = entry;
+            int length = Math.max(childPvLength, ply + 1);
+            System.arraycopy(childPv, ply + 1, pv, ply + 1, length - ply - 1);
+            pvLength = length;
+
+            if (!root && (pacManToMove ? value >= beta : value <= alpha)) {
+                cutoff = true;
+            }
         }
 
-        @Override
-        public boolean isLeaf()
+        boolean isCancelled()
         {
+            for (SplitPoint split = this; split != null; split = split.parent) {
+                if (split.cutoff) {
+                    return true;
+                }
+            }
             return false;
         }
+    }
 
-        @Override
-        public int getHeuristic()
+    private final class HelperTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+        private final SplitPoint split;
+
+        HelperTask(SplitPoint split)
         {
-            throw new RuntimeException();
+            this.split = split;
         }
 
         @Override
-        public Map<MOVE, Tree> getChildrenAndMoves()
+        protected void compute()
         {
-            throw new RuntimeException();
+            ArrayDeque<Searcher> idle = idleSearchers.get();
+            Searcher searcher = idle.isEmpty() ? new Searcher(split) : idle.pop().reset(split);
+            while (!searcher.stopped && !split.isCancelled()) {
+                int i = split.next.getAndIncrement();
+                if (i >= split.children.length) {
+                    break;
+                }
+                searcher.searchChild(split, split.children[i]);
+            }
+            helperNodes.addAndGet(searcher.nodes);
+            idle.push(searcher);
+        }
+    }
+
+    private final class RootTask extends RecursiveTask<MOVE>
+    {
+        private static final long serialVersionUID = 1L;
+        private final Searcher searcher;
+        private final Game game;
+        private final int depth;
+
+        RootTask(Searcher searcher, Game game, int depth)
+        {
+            this.searcher = searcher;
+            this.game = game;
+            this.depth = depth;
         }
 
         @Override
-        public Set<Tree> getChildren()
+        protected MOVE compute()
         {
-            return ghostBranches;
+            return searcher.searchRoot(game, depth);
         }
     }
 
+    private boolean canSplit(int depth, int remaining)
+    {
+        return threads > 1 && depth >= MIN_SPLIT_DEPTH && remaining > 1;
+    }
 
-    private static class Leaf implements Tree
+    // Values outside the range of heuristicVal are window bounds, which are not worth storing
+    private void store(long key, int depth, int bound, long value, int move)
     {
+        if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+            transpositionTable.store(key, depth, bound, (int) value, move);
+        }
+    }
 
-        int heuristic;
+    private static int[] codesOf(MOVE[] moves, int from)
+    {
+        int[] codes = new int[moves.length - from];
+        for (int i = from; i < moves.length; i++) {
+            codes[i - from] = moves[i].ordinal();
+        }
+        return codes;
+    }
 
-        Leaf(int heuristic)
-        {
-            this.heuristic = checkNotNull(heuristic);
+    private static int[] remaining(GhostMoveEnumerator combinations, int from)
+    {
+        int[] codes = new int[combinations.size() - from];
+        for (int i = from; i < combinations.size(); i++) {
+            codes[i - from] = combinations.get(i);
         }
+        return codes;
+    }
 
-        @Override
-        public boolean isLeaf()
-        {
-            return true;
+    static boolean isEndGameState(Game game)
+    {
+        return (game.getNumberOfActivePills() == 0 && game.getNumberOfActivePowerPills() == 0) ||
+                game.wasPacManEaten() ||
+                game.gameOver();
+    }
+
+    /*
+     * Evaluates a position without allocating. Among ghosts equally near, the last in GHOST order counts as the
+     * nearest; the evaluation used to take whichever a HashMap keyed by GHOST listed last, which depends on the
+     * identity hash codes of the constants and so could differ between runs.
+     */
+    static int heuristicVal(Game game)
+    {
+        if (game.wasPacManEaten()) {
+
+            return Integer.MIN_VALUE;
         }
 
-        @Override
-        public int getHeuristic()
-        {
-            return heuristic;
+        int totalPills = game.getNumberOfActivePills() + game.getNumberOfActivePowerPills();
+        int score = game.getScore();
+
+        int distanceToNearestGhost = Integer.MAX_VALUE;
+        GHOST nearestGhost = null;
+        for (GHOST ghost : GHOSTS) {
+            int distance = shortestPathDistanceToGhost(game, ghost);
+            if (distance <= distanceToNearestGhost) {
+                distanceToNearestGhost = distance;
+                nearestGhost = ghost;
+            }
         }
 
-        @Override
-        public Map<MOVE, Tree> getChildrenAndMoves()
-        {
-            throw new RuntimeException();
+
+        int weightedGhostScore = -500 * (20 - distanceToNearestGhost);
+        if (distanceToNearestGhost >= 20 || game.isGhostEdible(nearestGhost)) {
+            weightedGhostScore = 0;
         }
 
-        @Override
-        public Set<Tree> getChildren()
-        {
-            throw new RuntimeException();
+        int weightedEatingGhostScore = 0;
+        if (game.isGhostEdible(nearestGhost) && distanceToNearestGhost <= 40) {
+            weightedEatingGhostScore = 50 * (40 - distanceToNearestGhost);
+        }
+
+
+        int distanceToNearestPill = game.getShortestPathDistanceToNearestActivePill(game.getPacmanCurrentNodeIndex());
+        if (distanceToNearestPill == -1) {
+
+            distanceToNearestPill = 0;
+        }
+
+        return -1 * totalPills + -1 * distanceToNearestPill + 100 * score + weightedGhostScore +
+                weightedEatingGhostScore;
+    }
+
+    private static int shortestPathDistanceToGhost(Game game, GHOST ghost)
+    {
+        return game.getShortestPathDistance(game.getPacmanCurrentNodeIndex(), game.getGhostCurrentNodeIndex(ghost));
+    }
+
+    /*
+     * Orders Ms Pac-Man's moves: the given move first, then moves that lead away from the nearest ghost that is not
+     * edible and onto a pill, and moves into a wall last as the engine turns them into one of the others.
+     */
+    static MOVE[] orderPacManMoves(Game game, MOVE first)
+    {
+        int pacManNode = game.getPacmanCurrentNodeIndex();
+        MOVE[] moves = PAC_MAN_MOVES.clone();
+        int[] keys = new int[moves.length];
+
+        for (int i = 0; i < moves.length; i++) {
+            int neighbour = game.getNeighbour(pacManNode, moves[i]);
+            if (moves[i] == first) {
+                keys[i] = Integer.MAX_VALUE;
+            } else if (neighbour == -1) {
+                keys[i] = Integer.MIN_VALUE;
+            } else {
+                keys[i] = 2 * nearestDangerousGhostDistance(game, neighbour) + (hasPill(game, neighbour) ? 1 : 0);
+            }
         }
+        sortDescending(moves, keys);
+        return moves;
     }
 
-    private static class MoveNumber
+    /*
+     * Orders a ghost's moves in the enumerator: the given move first, then by how close they take it to Ms Pac-Man,
+     * or how far while it is edible.
+     */
+    private void orderGhostMoves(Game game, GHOST ghost, MOVE first, GhostMoveEnumerator combinations, int[] keys)
     {
+        int count = combinations.getMoveCount(ghost);
+        if (count == 1) {
+            return;
+        }
 
-        MOVE move;
+        int ghostNode = game.getGhostCurrentNodeIndex(ghost);
+        int pacManNode = game.getPacmanCurrentNodeIndex();
+        boolean edible = game.isGhostEdible(ghost);
 
-        int hValue;
+        for (int i = 0; i < count; i++) {
+            MOVE move = combinations.getMove(ghost, i);
+            int neighbour = game.getNeighbour(ghostNode, move);
+            int distance = (neighbour == -1) ? ORDERING_HORIZON : game.getShortestPathDistance(neighbour, pacManNode);
+            keys[i] = (move == first) ? Integer.MAX_VALUE : (edible ? distance : -distance);
+        }
+        combinations.orderMoves(ghost, keys);
+    }
 
-        MoveNumber(@Nullable MOVE move, int hValue)
-        {
-            this.move = move;
-            this.hValue = checkNotNull(hValue);
+    private static int nearestDangerousGhostDistance(Game game, int node)
+    {
+        int nearest = ORDERING_HORIZON;
+        for (GHOST ghost : GHOSTS) {
+            if (game.getGhostLairTime(ghost) == 0 && !game.isGhostEdible(ghost)) {
+                nearest = Math.min(nearest, game.getShortestPathDistance(node, game.getGhostCurrentNodeIndex(ghost)));
+            }
         }
+        return nearest;
+    }
 
-        public void setMove(MOVE move)
-        {
-            this.move = checkNotNull(move);
+    private static boolean hasPill(Game game, int node)
+    {
+        int pillIndex = game.getPillIndex(node);
+        if (pillIndex != -1) {
+            return game.isPillStillAvailable(pillIndex);
+        }
+        int powerPillIndex = game.getPowerPillIndex(node);
+        return powerPillIndex != -1 && game.isPowerPillStillAvailable(powerPillIndex);
+    }
+
+    // Insertion sort, stable so that equal keys keep the fixed order of the moves
+    private static void sortDescending(MOVE[] moves, int[] keys)
+    {
+        for (int i = 1; i < moves.length; i++) {
+            MOVE move = moves[i];
+            int key = keys[i];
+            int j = i - 1;
+            while (j >= 0 && keys[j] < key) {
+                moves[j + 1] = moves[j];
+                keys[j + 1] = keys[j];
+                j--;
+            }
+            moves[j + 1] = move;
+            keys[j + 1] = key;
         }
     }
-}
\ No newline at end of file
+
+    private static int rankOf(MOVE move)
+    {
+        for (int i = 0; i < PAC_MAN_MOVES.length; i++) {
+            if (PAC_MAN_MOVES[i] == move) {
+                return i;
+            }
+        }
+        return PAC_MAN_MOVES.length;
+    }
+
+    static Game stateAfterPacMove(MOVE pacMove, Game curGame)
+    {
+        Game copyOfGame = curGame.copy();
+        copyOfGame.updatePacMan(pacMove);
+        return copyOfGame;
+    }
+
+    static Game gameStateAfterGhosts(Game game, int ghostMoves)
+    {
+        Game copyOfGame = game.copy();
+        if (copyOfGame.wasPowerPillEaten()) {
+            copyOfGame.updateGhostsWithForcedReverse(ghostMoves);
+        } else {
+            copyOfGame.updateGhostsWithoutReverse(ghostMoves);
+        }
+        return copyOfGame;
+    }
+}
@@ -0,0 +1,416 @@
+import pacman.controllers.PacmanController;
+import pacman.game.Constants.GHOST;
+import pacman.game.Constants.MOVE;
+import pacman.game.Game;
+import pacman.game.util.Stats;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Ms Pac-Man controller that plans with a rolling horizon evolutionary algorithm. An individual is a fixed-length
+ * sequence of moves, one for each junction Ms Pac-Man comes to; between junctions she keeps going. Its first move
+ * may also be taken at once in a corridor, if it turns her back. An individual is evaluated by playing it out on
+ * a copy of the game against ghosts that move at random without reversing, for at most the horizon, and scoring
+ * the position reached with MiniMaxAlgorithm.heuristicVal; a death scores below every position, the later the
+ * better.
+ * <p>
+ * Each generation keeps the best individual and breeds the rest by tournament selection, uniform crossover and
+ * the mutation of one move. The first move of the best individual found is played. If it used up the first move
+ * of the sequence, the sequence is shifted by one and a random move appended, and the next tick's population
+ * starts from it and mutants of it, so the plan carries over from tick to tick; otherwise it carries over as it
+ * is.
+ * <p>
+ * The evaluations of a generation are shared out among the threads of a ForkJoinPool, each playing out on a game
+ * of its own that Game.copyInto refills. A play-out reads the clock every tick and stops at the deadline, which is
+ * then met whatever the horizon; the individuals left unevaluated take no part in the decision. Without a
+ * deadline a fixed number of generations is run.
+ */
+public class RollingHorizonAlgorithm extends PacmanController
+{
+
+    private static final int POPULATION_SIZE = 16;
+    // Moves per individual: junctions planned ahead
+    private static final int GENOME_LENGTH = 8;
+    // Longest play-out, in ticks
+    private static final int HORIZON = 80;
+    private static final int TOURNAMENT_SIZE = 2;
+    // Generations run when a move has no deadline
+    private static final int FIXED_GENERATIONS = 20;
+    // Time kept back from the deadline to hand the move over
+    private static final long SAFETY_MARGIN_MS = 3;
+    private static final MOVE[] PAC_MAN_MOVES = {MOVE.UP, MOVE.RIGHT, MOVE.DOWN, MOVE.LEFT};
+    private static final GHOST[] GHOSTS = GHOST.values();
+    // Fitness of a play-out stopped by the deadline
+    private static final long ABORTED = Long.MIN_VALUE;
+    // Fitness of a death at the first tick; later deaths score one more per tick
+    private static final long DEATH = Integer.MIN_VALUE;
+
+    private final int threads;
+    private final int populationSize;
+    private final int genomeLength;
+    private final int horizon;
+    // Source of the evaluators' and the breeding's random number generators
+    private final SplittableRandom seeds = new SplittableRandom();
+    private final SplittableRandom random = seeds.split();
+    private Evaluator[] evaluators;
+    private ForkJoinPool pool;
+
+    private byte[][] population;
+    private byte[][] offspring;
+    private long[] fitness;
+    // The best individual of the last tick, shifted on to this one, or null to start afresh
+    private byte[] plan;
+    private int planLevel = -1;
+    private int planLives = -1;
+    private long deadline;
+
+    private int lastEvaluations;
+    private int lastGenerations;
+    private final Stats generationStats = new Stats("RHEA generations");
+
+    public RollingHorizonAlgorithm()
+    {
+        this(1);
+    }
+
+    public RollingHorizonAlgorithm(int threads)
+    {
+        this(threads, POPULATION_SIZE, GENOME_LENGTH, HORIZON);
+    }
+
+    /**
+     * Creates the controller.
+     *
+     * @param threads        The number of threads to evaluate with; with 1 on the calling thread only
+     * @param populationSize The number of individuals, at least 2
+     * @param genomeLength   The number of junctions an individual plans for
+     * @param horizon        The longest play-out, in ticks
+     */
+    public RollingHorizonAlgorithm(int threads, int populationSize, int genomeLength, int horizon)
+    {
+        if (threads < 1) {
+            throw new IllegalArgumentException("At least one thread is needed, not " + threads);
+        }
+        if (populationSize < 2 || genomeLength < 1 || horizon < 1) {
+            throw new IllegalArgumentException("Population " + populationSize + ", genome " + genomeLength
+                    + " and horizon " + horizon + " are too small");
+        }
+        this.threads = threads;
+        this.populationSize = populationSize;
+        this.genomeLength = genomeLength;
+        this.horizon = horizon;
+        population = new byte[populationSize][genomeLength];
+        offspring = new byte[populationSize][genomeLength];
+        fitness = new long[populationSize];
+    }
+
+    public MOVE getMove(Game game, long timeDue)
+    {
+        deadline = (timeDue == -1) ? Long.MAX_VALUE : timeDue - SAFETY_MARGIN_MS;
+        if (evaluators == null) {
+            evaluators = new Evaluator[threads];
+            for (int i = 0; i < threads; i++) {
+                evaluators[i] = new Evaluator(seeds.split());
+            }
+        }
+        for (Evaluator evaluator : evaluators) {
+            evaluator.evaluations = 0;
+        }
+
+        // A death or a new level makes the plan of the last tick meaningless
+        if (game.getCurrentLevel() != planLevel || game.getPacmanNumberOfLivesRemaining() != planLives) {
+            plan = null;
+        }
+        seed();
+
+        int best = -1;
+        lastGenerations = 0;
+        while (true) {
+            boolean complete = evaluate(game);
+            best = fittest();
+            if (!complete || System.currentTimeMillis() >= deadline
+                    || (timeDue == -1 && lastGenerations == FIXED_GENERATIONS)) {
+                break;
+            }
+            lastGenerations++;
+            breed(best);
+        }
+        generationStats.add(lastGenerations);
+        lastEvaluations = 0;
+        for (Evaluator evaluator : evaluators) {
+            lastEvaluations += evaluator.evaluations;
+        }
+
+        // Nothing was evaluated in time: follow the last plan, or a random one
+        byte[] chosen = (best == -1) ? population[0] : population[best];
+        Evaluator decoder = evaluators[0];
+        decoder.gene = 0;
+        MOVE move = decoder.next(game, chosen, true);
+
+        plan = chosen.clone();
+        if (decoder.gene > 0) {
+            System.arraycopy(plan, 1, plan, 0, genomeLength - 1);
+            plan[genomeLength - 1] = randomGene(random);
+        }
+        planLevel = game.getCurrentLevel();
+        planLives = game.getPacmanNumberOfLivesRemaining();
+        return move;
+    }
+
+    // The first population: the plan carried over and mutants of it, the rest at random
+    private void seed()
+    {
+        for (int i = 0; i < populationSize; i++) {
+            byte[] individual = population[i];
+            if (plan != null && i < populationSize / 2) {
+                System.arraycopy(plan, 0, individual, 0, genomeLength);
+                if (i > 0) {
+                    mutate(individual, random);
+                }
+            } else {
+                for (int g = 0; g < genomeLength; g++) {
+                    individual[g] = randomGene(random);
+                }
+            }
+            fitness[i] = ABORTED;
+        }
+    }
+
+    /*
+     * Evaluates the individuals that have no fitness yet, on the calling thread alone if there is just one.
+     * Returns whether all of them were evaluated before the deadline.
+     */
+    private boolean evaluate(Game game)
+    {
+        AtomicInteger next = new AtomicInteger();
+        if (threads == 1) {
+            evaluators[0].run(game, next);
+        } else {
+            if (pool == null) {
+                pool = new ForkJoinPool(threads);
+            }
+            List<Callable<Void>> tasks = new ArrayList<>(threads);
+            for (Evaluator evaluator : evaluators) {
+                tasks.add(evaluator.task(game, next));
+            }
+            try {
+                for (Future<Void> result : pool.invokeAll(tasks)) {
+                    result.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("RHEA evaluator failed", e.getCause());
+            }
+        }
+
+        for (long value : fitness) {
+            if (value == ABORTED) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // The index of the fittest evaluated individual, the first among equals, or -1 if none has been evaluated
+    private int fittest()
+    {
+        int best = -1;
+        for (int i = 0; i < populationSize; i++) {
+            if (fitness[i] != ABORTED && (best == -1 || fitness[i] > fitness[best])) {
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    /*
+     * Replaces the population by the next generation: the best individual, which keeps its fitness, and children
+     * of tournament winners, to be evaluated.
+     */
+    private void breed(int best)
+    {
+        System.arraycopy(population[best], 0, offspring[0], 0, genomeLength);
+        long eliteFitness = fitness[best];
+        for (int i = 1; i < populationSize; i++) {
+            byte[] mother = population[tournament()];
+            byte[] father = population[tournament()];
+            for (int g = 0; g < genomeLength; g++) {
+                offspring[i][g] = random.nextBoolean() ? mother[g] : father[g];
+            }
+            mutate(offspring[i], random);
+        }
+
+        byte[][] swap = population;
+        population = offspring;
+        offspring = swap;
+        fitness[0] = eliteFitness;
+        for (int i = 1; i < populationSize; i++) {
+            fitness[i] = ABORTED;
+        }
+    }
+
+    private int tournament()
+    {
+        int winner = random.nextInt(populationSize);
+        for (int k = 1; k < TOURNAMENT_SIZE; k++) {
+            int other = random.nextInt(populationSize);
+            if (fitness[other] > fitness[winner]) {
+                winner = other;
+            }
+        }
+        return winner;
+    }
+
+    // Replaces one move by another
+    private void mutate(byte[] individual, SplittableRandom random)
+    {
+        int g = random.nextInt(genomeLength);
+        individual[g] = (byte) ((individual[g] + 1 + random.nextInt(PAC_MAN_MOVES.length - 1)) % PAC_MAN_MOVES.length);
+    }
+
+    private static byte randomGene(SplittableRandom random)
+    {
+        return (byte) random.nextInt(PAC_MAN_MOVES.length);
+    }
+
+    /**
+     * @return The number of play-outs completed on the last tick, over all threads
+     */
+    public int getLastEvaluations()
+    {
+        return lastEvaluations;
+    }
+
+    /**
+     * @return The number of generations bred on the last tick
+     */
+    public int getLastGenerations()
+    {
+        return lastGenerations;
+    }
+
+    public Stats getGenerationStats()
+    {
+        return generationStats;
+    }
+
+    public int getThreads()
+    {
+        return threads;
+    }
+
+    /*
+     * Plays individuals out on a game of its own. The individuals to evaluate are handed out through a shared
+     * counter, so the threads stay busy until the generation is done or the deadline is reached.
+     */
+    private final class Evaluator
+    {
+        final SplittableRandom random;
+        final EnumMap<GHOST, MOVE> ghostMoves = new EnumMap<GHOST, MOVE>(GHOST.class);
+        Game game;
+        // The next move of the individual being played out
+        int gene;
+        int evaluations;
+
+        Evaluator(SplittableRandom random)
+        {
+            this.random = random;
+        }
+
+        void run(Game root, AtomicInteger next)
+        {
+            for (int i = next.getAndIncrement(); i < populationSize; i = next.getAndIncrement()) {
+                if (fitness[i] != ABORTED) {
+                    continue;
+                }
+                long value = evaluate(root, population[i]);
+                if (value == ABORTED) {
+                    return;
+                }
+                fitness[i] = value;
+                evaluations++;
+            }
+        }
+
+        Callable<Void> task(final Game root, final AtomicInteger next)
+        {
+            return new Callable<Void>()
+            {
+                @Override
+                public Void call()
+                {
+                    run(root, next);
+                    return null;
+                }
+            };
+        }
+
+        private long evaluate(Game root, byte[] individual)
+        {
+            game = root.copyInto(game);
+            int level = game.getCurrentLevel();
+            gene = 0;
+            for (int tick = 0; tick < horizon && !game.gameOver(); tick++) {
+                if (System.currentTimeMillis() >= deadline) {
+                    return ABORTED;
+                }
+                game.advanceGame(next(game, individual, tick == 0), ghostMoves());
+                if (game.wasPacManEaten()) {
+                    return DEATH + tick;
+                }
+                if (game.getCurrentLevel() != level) {
+                    break;
+                }
+            }
+            return MiniMaxAlgorithm.heuristicVal(game);
+        }
+
+        /*
+         * Ms Pac-Man's move at this tick of the individual's play-out. A junction uses up the next move, made good
+         * if it is not open; so does the first tick if the move turns her back. Otherwise she keeps going, and
+         * once the individual is used up she goes at random.
+         */
+        MOVE next(Game game, byte[] individual, boolean first)
+        {
+            int node = game.getPacmanCurrentNodeIndex();
+            MOVE[] ahead = game.getPossibleMoves(node, game.getPacmanLastMoveMade());
+            if (gene < individual.length) {
+                MOVE planned = PAC_MAN_MOVES[individual[gene]];
+                if (game.isJunction(node)) {
+                    gene++;
+                    MOVE[] open = first ? game.getPossibleMoves(node) : ahead;
+                    for (MOVE move : open) {
+                        if (move == planned) {
+                            return move;
+                        }
+                    }
+                    return open[planned.ordinal() % open.length];
+                }
+                if (first && planned == game.getPacmanLastMoveMade().opposite() && game.getNeighbour(node, planned) != -1) {
+                    gene++;
+                    return planned;
+                }
+            }
+            return (ahead.length == 1) ? ahead[0] : ahead[random.nextInt(ahead.length)];
+        }
+
+        // A random move for each ghost that does not reverse, which is all it can make between junctions
+        private EnumMap<GHOST, MOVE> ghostMoves()
+        {
+            for (GHOST ghost : GHOSTS) {
+                MOVE[] possible = game.getPossibleMoves(game.getGhostCurrentNodeIndex(ghost), game.getGhostLastMoveMade(ghost));
+                ghostMoves.put(ghost, (possible.length == 0) ? MOVE.NEUTRAL : possible[random.nextInt(possible.length)]);
+            }
+            return ghostMoves;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+import pacman.game.Constants.GHOST;
+import pacman.game.Constants.MOVE;
+import pacman.game.Game;
+import pacman.game.GhostMoveEnumerator;
+
+/**
+ * Ghost model of RandomGhosts: each ghost picks one of all the MOVE values uniformly at random, and the engine
+ * replaces a pick it cannot take (a wall, the reverse of its last move or NEUTRAL) with the ghost's last move. So
+ * at a junction where the ghost can carry on straight, carrying on is more likely than turning.
+ */
+public class UniformGhostModel implements GhostModel
+{
+    private static final MOVE[] MOVES = MOVE.values();
+
+    public void probabilities(Game game, GHOST ghost, GhostMoveEnumerator moves, double[] probabilities)
+    {
+        int count = moves.getMoveCount(ghost);
+        int node = game.getGhostCurrentNodeIndex(ghost);
+        MOVE lastMove = game.getGhostLastMoveMade(ghost);
+        boolean canContinue = game.getNeighbour(node, lastMove) != -1;
+
+        for (int i = 0; i < count; i++) {
+            probabilities[i] = 0;
+        }
+        for (MOVE pick : MOVES) {
+            MOVE taken = pick;
+            if (game.getNeighbour(node, pick) == -1 || pick == lastMove.opposite()) {
+                if (!canContinue) {
+                    // the engine picks one of the possible moves at random
+                    for (int i = 0; i < count; i++) {
+                        probabilities[i] += 1.0 / MOVES.length / count;
+                    }
+                    continue;
+                }
+                taken = lastMove;
+            }
+            for (int i = 0; i < count; i++) {
+                if (moves.getMove(ghost, i) == taken) {
+                    probabilities[i] += 1.0 / MOVES.length;
+                }
+            }
+        }
+    }
+
+    public void update(Game game)
+    {
+    }
+}
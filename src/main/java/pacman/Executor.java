@@ -12,7 +12,12 @@ import pacman.game.Game;
 import pacman.game.GameView;
 import pacman.game.comms.BasicMessenger;
 import pacman.game.comms.Messenger;
+import pacman.game.util.ExecutorMetrics;
+import pacman.game.util.MemoryStats;
 import pacman.game.util.Stats;
+import pacman.game.util.TimingStats;
+import pacman.game.util.jfr.ControllerDecisionEvent;
+import pacman.game.util.jfr.ExecutorTickEvent;
 
 import java.io.*;
 import java.util.ArrayList;
@@ -34,6 +39,17 @@ public class Executor {
 
 	protected Messenger messenger;
 
+	// Decision latencies of the most recent run, index 0 for Ms Pac-Man and 1 for the ghosts
+	protected TimingStats[] timingStats = new TimingStats[]{new TimingStats("PacMan"), new TimingStats("Ghosts")};
+	// Allocation and retained memory of the most recent run, indexed as above
+	protected MemoryStats[] memoryStats = new MemoryStats[]{new MemoryStats("PacMan"), new MemoryStats("Ghosts")};
+	// Whether a controller is failed once the retained heap goes over MEMORY_LIMIT
+	protected boolean enforceMemoryLimit;
+	// Live counters for monitoring over JMX, accumulated over all runs of this Executor
+	protected final ExecutorMetrics metrics = new ExecutorMetrics();
+	// Flight Recorder event for the tick in progress - null unless a recording is running
+	private ExecutorTickEvent tickEvent;
+
 	public Executor() {
 		this.pacmanPO = false;
 		this.ghostsMessage = false;
@@ -64,6 +80,11 @@ public class Executor {
 		Executor poExec = new Executor(true, true);
 		Executor nonPOCommExec = new Executor(false, true);
 
+		// live progress of the experiments below can be watched with JConsole under the "pacman" domain
+		exec.registerMetrics("exec");
+		poExec.registerMetrics("poExec");
+		nonPOCommExec.registerMetrics("nonPOCommExec");
+
 //        exec.runGameTimed(new POPacMan(), new StarterGhosts(), true);
 
 //        poExec.runGame(new MCTSPacMan(), new POGhosts(), true, 40);
@@ -77,14 +98,32 @@ public class Executor {
 		int ticks = 4000;
 
 		Stats[][] results = new Stats[8][2];
+		TimingStats[][] timings = new TimingStats[8][2];
+		MemoryStats[][] memory = new MemoryStats[8][2];
 		results[0] = poExec.runExperiment(new POPacMan(), new POGhosts(), n, "POP Vs POG", ticks);
+		timings[0] = poExec.getTimingStats();
+		memory[0] = poExec.getMemoryStats();
 		results[1] = exec.runExperiment(new StarterPacMan(), new POGhosts(), n, "COP Vs POG", ticks);
+		timings[1] = exec.getTimingStats();
+		memory[1] = exec.getMemoryStats();
 		results[2] = poExec.runExperiment(new POPacMan(), new StarterGhosts(), n, "POP Vs COG", ticks);
+		timings[2] = poExec.getTimingStats();
+		memory[2] = poExec.getMemoryStats();
 		results[3] = exec.runExperiment(new StarterPacMan(), new StarterGhosts(), n, "COP Vs COG", ticks);
+		timings[3] = exec.getTimingStats();
+		memory[3] = exec.getMemoryStats();
 		results[4] = nonPOCommExec.runExperiment(new StarterPacMan(), new POCommGhosts(50), n, "COP Vs POGC", ticks);
+		timings[4] = nonPOCommExec.getTimingStats();
+		memory[4] = nonPOCommExec.getMemoryStats();
 		results[5] = poExec.runExperiment(new POPacMan(), new POCommGhosts(50), n, "POP Vs POGC", ticks);
+		timings[5] = poExec.getTimingStats();
+		memory[5] = poExec.getMemoryStats();
 		results[7] = poExec.runExperiment(new MCTSPacMan(), new POCommGhosts(50), n, "MCTS Vs POGC", ticks);
+		timings[7] = poExec.getTimingStats();
+		memory[7] = poExec.getMemoryStats();
 		results[6] = poExec.runExperiment(new MCTSPacMan(), new StarterGhosts(), n, "MCTS  Vs COG", ticks);
+		timings[6] = poExec.getTimingStats();
+		memory[6] = poExec.getMemoryStats();
 //
 //
 ////
@@ -92,6 +131,10 @@ public class Executor {
 		for (int i = 0; i < results.length; i++) {
 			System.out.println("\t" + results[i][0]);
 			System.out.println("\t" + results[i][1]);
+			System.out.println("\t" + timings[i][0]);
+			System.out.println("\t" + timings[i][1]);
+			System.out.println("\t" + memory[i][0]);
+			System.out.println("\t" + memory[i][1]);
 		}
 
 //        File file = new File("results/thresholdCOP.csv");
@@ -214,6 +257,151 @@ public class Executor {
 		return replay;
 	}
 
+	/**
+	 * Gets the decision latency statistics of the most recent run: a histogram of the time each controller
+	 * spent in getMove, the number of moves returned after their deadline and, in the asynchronous modes, the
+	 * number of ticks on which the game was advanced with a stale move.
+	 *
+	 * @return TimingStats[] containing Ms Pac-Man's timings in index 0 and the ghosts' in position 1
+	 */
+	public TimingStats[] getTimingStats() {
+		return timingStats;
+	}
+
+	/**
+	 * Gets the memory statistics of the most recent run: the bytes each controller allocated per decision, its
+	 * allocation rate per game and the peak heap retained after garbage collection while it was playing.
+	 *
+	 * @return MemoryStats[] containing Ms Pac-Man's statistics in index 0 and the ghosts' in position 1
+	 */
+	public MemoryStats[] getMemoryStats() {
+		return memoryStats;
+	}
+
+	/**
+	 * Sets whether controllers are failed when the heap retained after garbage collection exceeds MEMORY_LIMIT.
+	 * A failed controller is no longer asked for moves, so the game continues as if it never replied in time.
+	 *
+	 * @param enforceMemoryLimit Whether to enforce the limit
+	 */
+	public void setMemoryLimitEnforced(boolean enforceMemoryLimit) {
+		this.enforceMemoryLimit = enforceMemoryLimit;
+	}
+
+	/**
+	 * Gets the live metrics of this Executor: games completed, tick rate, scores, the decision latencies of the
+	 * run in progress and heap usage.
+	 *
+	 * @return The metrics
+	 */
+	public ExecutorMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Publishes the live metrics as an MBean named pacman:type=Executor,name=&lt;name&gt; on the platform MBean
+	 * server, so that a long experiment can be watched with JConsole or any other JMX client.
+	 *
+	 * @param name The name to register the metrics under
+	 * @return Whether the MBean was registered
+	 */
+	public boolean registerMetrics(String name) {
+		return metrics.register(name) != null;
+	}
+
+	private void resetStats(String description) {
+		timingStats = new TimingStats[]{new TimingStats((description + " PacMan").trim()), new TimingStats((description + " Ghosts").trim())};
+		memoryStats = new MemoryStats[]{new MemoryStats((description + " PacMan").trim()), new MemoryStats((description + " Ghosts").trim())};
+		metrics.startRun(description, timingStats);
+	}
+
+	private void startGame() {
+		memoryStats[0].startGame();
+		memoryStats[1].startGame();
+	}
+
+	private void endGame(Game game) {
+		memoryStats[0].endGame();
+		memoryStats[1].endGame();
+		metrics.recordGame(game.getScore());
+	}
+
+	// Calls getMove directly on the executing thread and records how long it took and what it allocated
+	private <T> T getMeasuredMove(Controller<T> controller, int index, Game game, long timeDue) {
+		if (memoryStats[index].isLimitExceeded()) return null;
+		ControllerDecisionEvent event = new ControllerDecisionEvent();
+		event.begin();
+		long startBytes = MemoryStats.threadAllocatedBytes();
+		long start = System.nanoTime();
+		T move = controller.getMove(game, timeDue);
+		long elapsed = System.nanoTime() - start;
+		boolean missed = timeDue != -1 && System.currentTimeMillis() > timeDue;
+		timingStats[index].recordDecision(elapsed, missed);
+		memoryStats[index].recordDecision(MemoryStats.threadAllocatedBytes() - startBytes + controller.takeHelperAllocatedBytes());
+		if (event.shouldCommit()) {
+			event.controller = controller.getName();
+			event.deadlineMissed = missed;
+			event.commit();
+		}
+		return move;
+	}
+
+	// Used by the asynchronous modes: a controller that has not computed since the last update forces the old move
+	private <T> T getComputedMove(Controller<T> controller, int index) {
+		if (memoryStats[index].isLimitExceeded()) return null;
+		if (!controller.hasComputed()) {
+			timingStats[index].recordStaleTick();
+			if (tickEvent != null) {
+				if (index == 0) tickEvent.pacManStale = true;
+				else tickEvent.ghostsStale = true;
+			}
+		}
+		return controller.getMove();
+	}
+
+	// Starts the Flight Recorder event covering one iteration of a game loop, if a recording is running
+	private void beginTick() {
+		ExecutorTickEvent event = new ExecutorTickEvent();
+		if (!event.isEnabled()) return;
+		event.begin();
+		tickEvent = event;
+	}
+
+	// Called once the game has been advanced: samples the retained heap and commits the tick event
+	private void endTick(Game game) {
+		sampleRetainedMemory();
+		metrics.recordTick();
+		ExecutorTickEvent event = tickEvent;
+		if (event == null) return;
+		tickEvent = null;
+		event.tick = game.getTotalTime();
+		event.commit();
+	}
+
+	private void setControllerStats(Controller<MOVE> pacManController, Controller<EnumMap<GHOST, MOVE>> ghostController, boolean record) {
+		pacManController.setTimingStats(record ? timingStats[0] : null);
+		pacManController.setMemoryStats(record ? memoryStats[0] : null);
+		ghostController.setTimingStats(record ? timingStats[1] : null);
+		ghostController.setMemoryStats(record ? memoryStats[1] : null);
+	}
+
+	/*
+	 * Samples the heap retained after garbage collection once per tick. The heap is shared, so when it goes over
+	 * the limit the controller that allocated most in the current game is the one that gets failed.
+	 */
+	private void sampleRetainedMemory() {
+		long retained = MemoryStats.heapRetainedBytes();
+		memoryStats[0].recordRetained(retained);
+		memoryStats[1].recordRetained(retained);
+
+		if (enforceMemoryLimit && retained > MemoryStats.getMemoryLimitBytes()
+				&& !memoryStats[0].isLimitExceeded() && !memoryStats[1].isLimitExceeded()) {
+			MemoryStats culprit = (memoryStats[0].getGameAllocatedBytes() >= memoryStats[1].getGameAllocatedBytes()) ? memoryStats[0] : memoryStats[1];
+			culprit.setLimitExceeded();
+			System.out.println("Memory limit of " + MEMORY_LIMIT + "MB exceeded (" + retained / (1024 * 1024) + "MB retained): failing " + culprit.getDescription());
+		}
+	}
+
 	public void setMessenger(Messenger messenger) {
 		if (this.ghostsMessage) {
 			if (messenger != null) {
@@ -238,6 +426,7 @@ public class Executor {
 	public Stats[] runExperiment(Controller<MOVE> pacManController, Controller<EnumMap<GHOST, MOVE>> ghostController, int trials, String description, int tickLimit) {
 		Stats stats = new Stats(description);
 		Stats ticks = new Stats(description + " Ticks");
+		resetStats(description);
 		Random rnd = new Random(0);
 		Game game;
 
@@ -245,17 +434,22 @@ public class Executor {
 		for (int i = 0; i < trials; ) {
 			try {
 				game = (this.ghostsMessage) ? new Game(rnd.nextLong(), messenger.copy()) : new Game(rnd.nextLong());
+				startGame();
 
 				while (!game.gameOver()) {
 					if (tickLimit != -1 && tickLimit < game.getCurrentLevelTime()) break;
+					beginTick();
 					game.advanceGame(
-							pacManController.getMove(game.copy((pacmanPO) ? GHOST.values().length + 1 : -1), System.currentTimeMillis() + DELAY),
-							ghostController.getMove(game.copy(), System.currentTimeMillis() + DELAY));
+							getMeasuredMove(pacManController, 0, game.copy((pacmanPO) ? GHOST.values().length + 1 : -1), System.currentTimeMillis() + DELAY),
+							getMeasuredMove(ghostController, 1, game.copy(), System.currentTimeMillis() + DELAY));
+					endTick(game);
 				}
+				endGame(game);
 				stats.add(game.getScore());
 				ticks.add(game.getCurrentLevelTime());
 				i++;
-				System.out.println("Game finished: " + i + "   " + description);
+				System.out.println("Game finished: " + i + "   " + description + String.format("   PacMan %.1fMB/s, Ghosts %.1fMB/s, peak retained %dMB",
+						memoryStats[0].getLastAllocationRate(), memoryStats[1].getLastAllocationRate(), memoryStats[0].getPeakRetainedBytes() / (1024 * 1024)));
 			}catch (Exception e){
 				e.printStackTrace();
 			}
@@ -274,6 +468,7 @@ public class Executor {
 	public Stats[] runExperimentTicks(Controller<MOVE> pacManController, Controller<EnumMap<GHOST, MOVE>> ghostController, int trials, String description) {
 		Stats stats = new Stats(description);
 		Stats ticks = new Stats(description);
+		resetStats(description);
 
 		Random rnd = new Random(0);
 		Game game;
@@ -281,12 +476,16 @@ public class Executor {
 		Long startTime = System.currentTimeMillis();
 		for (int i = 0; i < trials; i++) {
 			game = (this.ghostsMessage) ? new Game(rnd.nextLong(), messenger.copy()) : new Game(rnd.nextLong());
+			startGame();
 
 			while (!game.gameOver()) {
+				beginTick();
 				game.advanceGame(
-						pacManController.getMove(game.copy((pacmanPO) ? GHOST.values().length + 1 : -1), System.currentTimeMillis() + DELAY),
-						ghostController.getMove(game.copy(), System.currentTimeMillis() + DELAY));
+						getMeasuredMove(pacManController, 0, game.copy((pacmanPO) ? GHOST.values().length + 1 : -1), System.currentTimeMillis() + DELAY),
+						getMeasuredMove(ghostController, 1, game.copy(), System.currentTimeMillis() + DELAY));
+				endTick(game);
 			}
+			endGame(game);
 			stats.add(game.getScore());
 			ticks.add(game.getTotalTime());
 		}
@@ -310,12 +509,17 @@ public class Executor {
 		Game game = (this.ghostsMessage) ? new Game(0, messenger.copy()) : new Game(0);
 
 		GameView gv = null;
+		resetStats("");
+		startGame();
 
 		if (visual)
 			gv = new GameView(game).showGame();
 
 		while (!game.gameOver()) {
-			game.advanceGame(pacManController.getMove(game.copy((pacmanPO) ? GHOST.values().length + 1 : -1), -1), ghostController.getMove(game.copy(), -1));
+			beginTick();
+			game.advanceGame(getMeasuredMove(pacManController, 0, game.copy((pacmanPO) ? GHOST.values().length + 1 : -1), -1),
+					getMeasuredMove(ghostController, 1, game.copy(), -1));
+			endTick(game);
 
 			try {
 				Thread.sleep(delay);
@@ -325,6 +529,7 @@ public class Executor {
 			if (visual)
 				gv.repaint();
 		}
+		endGame(game);
 	}
 
 	/**
@@ -346,10 +551,15 @@ public class Executor {
 		if (pacManController instanceof HumanController)
 			gv.getFrame().addKeyListener(((HumanController) pacManController).getKeyboardInput());
 
+		resetStats("");
+		setControllerStats(pacManController, ghostController, true);
+		startGame();
+
 		new Thread(pacManController).start();
 		new Thread(ghostController).start();
 
 		while (!game.gameOver()) {
+			beginTick();
 			pacManController.update(game.copy((pacmanPO) ? GHOST.values().length + 1 : -1), System.currentTimeMillis() + DELAY);
 			ghostController.update(game.copy(), System.currentTimeMillis() + DELAY);
 
@@ -359,14 +569,17 @@ public class Executor {
 				e.printStackTrace();
 			}
 
-			game.advanceGame(pacManController.getMove(), ghostController.getMove());
+			game.advanceGame(getComputedMove(pacManController, 0), getComputedMove(ghostController, 1));
+			endTick(game);
 
 			if (visual)
 				gv.repaint();
 		}
 
+		endGame(game);
 		pacManController.terminate();
 		ghostController.terminate();
+		setControllerStats(pacManController, ghostController, false);
 	}
 
 	/**
@@ -390,10 +603,15 @@ public class Executor {
 		if (pacManController instanceof HumanController)
 			gv.getFrame().addKeyListener(((HumanController) pacManController).getKeyboardInput());
 
+		resetStats("");
+		setControllerStats(pacManController, ghostController, true);
+		startGame();
+
 		new Thread(pacManController).start();
 		new Thread(ghostController).start();
 
 		while (!game.gameOver()) {
+			beginTick();
 			pacManController.update(game.copy((pacmanPO) ? GHOST.values().length + 1 : -1), System.currentTimeMillis() + DELAY);
 			ghostController.update(game.copy(), System.currentTimeMillis() + DELAY);
 
@@ -412,7 +630,8 @@ public class Executor {
 				if (fixedTime)
 					Thread.sleep(((DELAY / INTERVAL_WAIT) - waited) * INTERVAL_WAIT);
 
-				game.advanceGame(pacManController.getMove(), ghostController.getMove());
+				game.advanceGame(getComputedMove(pacManController, 0), getComputedMove(ghostController, 1));
+				endTick(game);
 			} catch (InterruptedException e) {
 				e.printStackTrace();
 			}
@@ -421,8 +640,10 @@ public class Executor {
 				gv.repaint();
 		}
 
+		endGame(game);
 		pacManController.terminate();
 		ghostController.terminate();
+		setControllerStats(pacManController, ghostController, false);
 		return game.getScore();
 	}
 
@@ -450,10 +671,15 @@ public class Executor {
 				gv.getFrame().addKeyListener(((HumanController) pacManController).getKeyboardInput());
 		}
 
+		resetStats("");
+		setControllerStats(pacManController, ghostController, true);
+		startGame();
+
 		new Thread(pacManController).start();
 		new Thread(ghostController).start();
 
 		while (!game.gameOver()) {
+			beginTick();
 			pacManController.update(game.copy((pacmanPO) ? GHOST.values().length + 1 : -1), System.currentTimeMillis() + DELAY);
 			ghostController.update(game.copy(), System.currentTimeMillis() + DELAY);
 
@@ -463,7 +689,8 @@ public class Executor {
 				e.printStackTrace();
 			}
 
-			game.advanceGame(pacManController.getMove(), ghostController.getMove());
+			game.advanceGame(getComputedMove(pacManController, 0), getComputedMove(ghostController, 1));
+			endTick(game);
 
 			if (visual)
 				gv.repaint();
@@ -472,8 +699,10 @@ public class Executor {
 		}
 		stats.add(game.getScore());
 
+		endGame(game);
 		pacManController.terminate();
 		ghostController.terminate();
+		setControllerStats(pacManController, ghostController, false);
 
 		saveToFile(replay.toString(), fileName, false);
 		return stats;
@@ -1,6 +1,9 @@
 package pacman.controllers;
 
 import pacman.game.Game;
+import pacman.game.util.MemoryStats;
+import pacman.game.util.TimingStats;
+import pacman.game.util.jfr.ControllerDecisionEvent;
 
 /**
  * This class is the superclass of your controller. In contains the code required to run the
@@ -17,6 +20,9 @@ public abstract class Controller<T> implements Runnable {
 	private Game game;
 	protected T lastMove;    //this is now protected. You can set this directly in your getMove() method to save an immediate response.
 	private String name = "Unknown Controller";
+	private volatile TimingStats timingStats;
+	private volatile MemoryStats memoryStats;
+	private long helperBytesTaken;
 
 	/**
 	 * Instantiates a new controller. The constructor initialises the class variables.
@@ -85,7 +91,26 @@ public abstract class Controller<T> implements Runnable {
 					new Thread() {
 						public void run() {
 							threadStillRunning = true;
-							lastMove = getMove(game, timeDue);
+							long due = timeDue;
+							ControllerDecisionEvent event = new ControllerDecisionEvent();
+							event.begin();
+							long startBytes = MemoryStats.threadAllocatedBytes();
+							long start = System.nanoTime();
+							lastMove = getMove(game, due);
+							long elapsed = System.nanoTime() - start;
+							boolean missed = System.currentTimeMillis() > due;
+							TimingStats stats = timingStats;
+							if (stats != null)
+								stats.recordDecision(elapsed, missed);
+							if (event.shouldCommit()) {
+								event.controller = getName();
+								event.deadlineMissed = missed;
+								event.commit();
+							}
+							long bytes = MemoryStats.threadAllocatedBytes() - startBytes + takeHelperAllocatedBytes();
+							MemoryStats memory = memoryStats;
+							if (memory != null)
+								memory.recordDecision(bytes);
 							hasComputed = true;
 							threadStillRunning = false;
 						}
@@ -128,6 +153,52 @@ public abstract class Controller<T> implements Runnable {
 		this.name = name;
 	}
 
+	/**
+	 * Sets the statistics that every move computed on the controller's own thread is recorded into. This is
+	 * used by the Executor in the asynchronous modes; pass null to stop recording.
+	 *
+	 * @param timingStats The statistics to record into
+	 */
+	public final void setTimingStats(TimingStats timingStats) {
+		this.timingStats = timingStats;
+	}
+
+	/**
+	 * Sets the statistics that the allocation of every move computed on the controller's own thread is recorded
+	 * into. This is used by the Executor in the asynchronous modes; pass null to stop recording.
+	 *
+	 * @param memoryStats The statistics to record into
+	 */
+	public final void setMemoryStats(MemoryStats memoryStats) {
+		this.memoryStats = memoryStats;
+	}
+
+	/**
+	 * Gets the bytes allocated so far by the threads that compute for the controller besides the one calling
+	 * getMove, such as the workers of a thread pool of its own or a thread that ponders between moves. A controller
+	 * that uses such threads overrides this, usually with an AllocationTracker, so that its MemoryStats count what
+	 * they allocate; by default there are none.
+	 *
+	 * @return The bytes allocated by the helper threads
+	 */
+	protected long getHelperAllocatedBytes() {
+		return 0;
+	}
+
+	/**
+	 * Gets the bytes the controller's helper threads have allocated since the last call. It is called after every
+	 * decision that is measured, so a decision is charged with what the helpers allocated since the previous one
+	 * ended, pondering included.
+	 *
+	 * @return The bytes allocated by the helper threads since the last call
+	 */
+	public final synchronized long takeHelperAllocatedBytes() {
+		long total = getHelperAllocatedBytes();
+		long bytes = total - helperBytesTaken;
+		helperBytesTaken = total;
+		return bytes;
+	}
+
 	/**
 	 *Gets the name of the controller
 	 * @return The name of the controller
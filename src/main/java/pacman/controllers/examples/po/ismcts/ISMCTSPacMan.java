@@ -0,0 +1,449 @@
+package pacman.controllers.examples.po.ismcts;
+
+import pacman.controllers.Controller;
+import pacman.controllers.examples.po.mcts.prediction.GhostLocation;
+import pacman.controllers.examples.po.mcts.prediction.particle.GhostParticleFilter;
+import pacman.game.Game;
+import pacman.game.info.GameInfo;
+import pacman.game.internal.Ghost;
+import pacman.game.internal.Maze;
+import pacman.game.internal.PacMan;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import static pacman.game.Constants.COMMON_LAIR_TIME;
+import static pacman.game.Constants.EXTRA_LIFE_SCORE;
+import static pacman.game.Constants.GHOST;
+import static pacman.game.Constants.MOVE;
+
+/**
+ * Information-set MCTS for the partially observable game. The ghosts are tracked with a GhostParticleFilter and
+ * the pills with what Ms Pac-Man has seen of them; each tick a number of determinisations, complete games that
+ * agree with what she knows, are drawn from these, and the search runs the real engine on them with advanceGame.
+ * <p>
+ * Every iteration plays one determinisation, taking them in turn, in a game of the worker's own that
+ * Game.getGameFromInfo(info, target) refills, so that no games are allocated once the search is under way. The
+ * tree is over Ms Pac-Man's choices alone, one level per junction she reaches, and is shared by all the
+ * determinisations: a move counts as available to a node each time it is legal in the determinisation played
+ * through the node, and UCB1 uses these counts in place of the parent's visits. Between junctions she keeps going
+ * the way she is headed, and after the tree she and the ghosts move at random, without reversing, until the depth
+ * limit, a death or the end of the level.
+ * <p>
+ * With more than one thread each worker grows a tree of its own over all the determinisations, and the move with
+ * the most visits over all the trees is made.
+ */
+public class ISMCTSPacMan extends Controller<MOVE> {
+    public static int DEATH_PENALTY = 1000;
+    // Rewards are measured in DEATH_PENALTY, so that the exploration term is on the scale of a death
+    private static final double EXPLORATION = Math.sqrt(2);
+    private static final MOVE[] MOVES = MOVE.values();
+
+    private int determinisations = 64;
+    private int maxDepth = 60;
+    private int threads = 1;
+    private int particles = 256;
+    // Source of the workers' and the tracker's random number generators
+    private final SplittableRandom seeds = new SplittableRandom();
+    private Worker[] workers;
+    private ForkJoinPool pool;
+
+    private Maze maze;
+    private int level = -1;
+    private int numberOfLives;
+    private GhostParticleFilter tracker;
+    // Pills believed to be left, by pill index: those not seen to be gone
+    private BitSet pills;
+    private BitSet powerPills;
+    // Per ghost: its edible time when last seen, and the total time it was seen at
+    private final int[] lastEdibleTime = new int[GHOST.values().length];
+    private final int[] lastSeen = new int[GHOST.values().length];
+
+    // The determinisations of this tick, refilled in place every tick
+    private GameInfo[] infos;
+    private int lastIterations;
+
+    public ISMCTSPacMan() {
+
+    }
+
+    /**
+     * @param determinisations The number of determinisations drawn per tick
+     * @param maxDepth         The number of ticks an iteration looks ahead
+     * @param threads          The number of threads to search with
+     */
+    public ISMCTSPacMan(int determinisations, int maxDepth, int threads) {
+        if (determinisations < 1) {
+            throw new IllegalArgumentException("At least one determinisation is needed, not " + determinisations);
+        }
+        if (threads < 1) {
+            throw new IllegalArgumentException("At least one thread is needed, not " + threads);
+        }
+        this.determinisations = determinisations;
+        this.maxDepth = maxDepth;
+        this.threads = threads;
+    }
+
+    @Override
+    public MOVE getMove(Game game, long timeDue) {
+        long timeStart = System.currentTimeMillis();
+        long endTime = (timeDue == -1) ? timeStart + 35 : timeDue - 5;
+
+        observe(game);
+        determinise(game);
+
+        if (workers == null) {
+            workers = new Worker[threads];
+            for (int i = 0; i < threads; i++) {
+                workers[i] = new Worker(seeds.split());
+            }
+        }
+        search(game, endTime);
+        return getMostVisitedMove(game);
+    }
+
+    /*
+     * Brings the beliefs about the ghosts and the pills up to date with what Ms Pac-Man sees this tick. They are
+     * started afresh in a new maze or level, and the ghosts are forgotten when she dies, as they go back to the lair.
+     */
+    private void observe(Game game) {
+        boolean died = numberOfLives != game.getPacmanNumberOfLivesRemaining();
+        numberOfLives = game.getPacmanNumberOfLivesRemaining();
+        if (maze != game.getCurrentMaze() || level != game.getCurrentLevel()) {
+            maze = game.getCurrentMaze();
+            level = game.getCurrentLevel();
+            tracker = new GhostParticleFilter(maze, particles, seeds.split());
+            pills = new BitSet(game.getNumberOfPills());
+            pills.set(0, game.getNumberOfPills());
+            powerPills = new BitSet(game.getNumberOfPowerPills());
+            powerPills.set(0, game.getNumberOfPowerPills());
+            infos = null;
+        } else if (died) {
+            tracker.reset();
+        } else {
+            tracker.update();
+        }
+
+        for (int i = 0; i < game.getNumberOfPills(); i++) {
+            Boolean available = game.isPillStillAvailable(i);
+            if (available != null) {
+                pills.set(i, available);
+            }
+        }
+        for (int i = 0; i < game.getNumberOfPowerPills(); i++) {
+            Boolean available = game.isPowerPillStillAvailable(i);
+            if (available != null) {
+                powerPills.set(i, available);
+            }
+        }
+
+        for (GHOST ghost : GHOST.values()) {
+            int ghostIndex = game.getGhostCurrentNodeIndex(ghost);
+            if (ghostIndex != -1) {
+                tracker.observe(ghost, ghostIndex, game.getGhostLastMoveMade(ghost));
+                lastEdibleTime[ghost.ordinal()] = game.getGhostEdibleTime(ghost);
+                lastSeen[ghost.ordinal()] = game.getTotalTime();
+            } else {
+                for (GhostLocation location : tracker.getGhostLocations(ghost)) {
+                    if (game.isNodeObservable(location.getIndex())) {
+                        tracker.observeNotPresent(ghost, location.getIndex());
+                    }
+                }
+            }
+        }
+    }
+
+    /*
+     * Draws this tick's determinisations into the pooled infos. Ms Pac-Man and the visible ghosts are as seen, the
+     * pills as believed, and each hidden ghost is at a particle of the tracker, with the edible time it had when
+     * last seen, run down since. A ghost the tracker knows nothing of is put in the lair.
+     */
+    private void determinise(Game game) {
+        if (infos == null) {
+            infos = new GameInfo[determinisations];
+            for (int d = 0; d < determinisations; d++) {
+                infos[d] = game.getBlankGameInfo();
+                infos[d].setPacman(new PacMan(0, MOVE.NEUTRAL, 0, false));
+                for (GHOST ghost : GHOST.values()) {
+                    infos[d].setGhostIndex(ghost, new Ghost(ghost, 0, 0, 0, MOVE.NEUTRAL));
+                }
+            }
+        }
+
+        for (GameInfo info : infos) {
+            info.getPills().clear();
+            info.getPills().or(pills);
+            info.getPowerPills().clear();
+            info.getPowerPills().or(powerPills);
+
+            PacMan pacman = info.getPacman();
+            pacman.currentNodeIndex = game.getPacmanCurrentNodeIndex();
+            pacman.lastMoveMade = game.getPacmanLastMoveMade();
+            pacman.numberOfLivesRemaining = game.getPacmanNumberOfLivesRemaining();
+            pacman.hasReceivedExtraLife = game.getScore() >= EXTRA_LIFE_SCORE;
+
+            for (GHOST ghost : GHOST.values()) {
+                Ghost data = info.getGhosts().get(ghost);
+                int ghostIndex = game.getGhostCurrentNodeIndex(ghost);
+                if (ghostIndex != -1) {
+                    data.currentNodeIndex = ghostIndex;
+                    data.lastMoveMade = game.getGhostLastMoveMade(ghost);
+                    data.edibleTime = game.getGhostEdibleTime(ghost);
+                    data.lairTime = game.getGhostLairTime(ghost);
+                    continue;
+                }
+                int particle = tracker.sample(ghost);
+                if (particle == -1) {
+                    data.currentNodeIndex = maze.lairNodeIndex;
+                    data.lastMoveMade = MOVE.NEUTRAL;
+                    data.edibleTime = 0;
+                    data.lairTime = COMMON_LAIR_TIME;
+                } else {
+                    data.currentNodeIndex = tracker.getNode(particle);
+                    data.lastMoveMade = tracker.getMove(particle);
+                    data.edibleTime = Math.max(0, lastEdibleTime[ghost.ordinal()] - (game.getTotalTime() - lastSeen[ghost.ordinal()]));
+                    data.lairTime = 0;
+                }
+            }
+        }
+    }
+
+    // Runs the workers until the end time, on this thread alone if there is just one
+    private void search(Game game, long endTime) {
+        if (threads == 1) {
+            workers[0].search(game, endTime);
+            lastIterations = workers[0].iterations;
+            return;
+        }
+
+        if (pool == null) {
+            pool = new ForkJoinPool(threads);
+        }
+        List<Callable<Void>> tasks = new ArrayList<>(threads);
+        for (Worker worker : workers) {
+            tasks.add(worker.task(game, endTime));
+        }
+        try {
+            for (Future<Void> result : pool.invokeAll(tasks)) {
+                result.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("ISMCTS worker failed", e.getCause());
+        }
+
+        lastIterations = 0;
+        for (Worker worker : workers) {
+            lastIterations += worker.iterations;
+        }
+    }
+
+    // The move with the most visits over the workers' trees, ties going to the higher total value
+    private MOVE getMostVisitedMove(Game game) {
+        long[] visits = new long[MOVES.length];
+        double[] values = new double[MOVES.length];
+        for (Worker worker : workers) {
+            for (TreeNode child : worker.root.children) {
+                if (child != null) {
+                    visits[child.move.ordinal()] += child.visits;
+                    values[child.move.ordinal()] += child.value;
+                }
+            }
+        }
+
+        int best = -1;
+        for (int i = 0; i < MOVES.length; i++) {
+            if (visits[i] > 0 && (best == -1 || visits[i] > visits[best] || (visits[i] == visits[best] && values[i] > values[best]))) {
+                best = i;
+            }
+        }
+        return (best == -1) ? game.getPacmanLastMoveMade() : MOVES[best];
+    }
+
+    public int getDeterminisations() {
+        return determinisations;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Sets the number of particles per ghost of the tracker; 256 by default. Takes effect in the next maze or level.
+     *
+     * @param particles The number of particles
+     */
+    public void setParticles(int particles) {
+        if (particles < 1) {
+            throw new IllegalArgumentException("At least one particle is needed, not " + particles);
+        }
+        this.particles = particles;
+    }
+
+    public int getParticles() {
+        return particles;
+    }
+
+    /**
+     * @return The number of iterations run on the last tick, over all threads
+     */
+    public int getLastIterations() {
+        return lastIterations;
+    }
+
+    /*
+     * A decision of Ms Pac-Man's: the move that leads to it and its statistics. available counts the iterations
+     * in which the move was legal at the parent, whether or not it was taken.
+     */
+    private static final class TreeNode {
+        final MOVE move;
+        final TreeNode[] children = new TreeNode[MOVES.length];
+        int visits;
+        int available;
+        double value;
+
+        TreeNode(MOVE move) {
+            this.move = move;
+        }
+    }
+
+    /*
+     * The state of one search thread: its random number generator, its tree, and the game it plays the
+     * determinisations in.
+     */
+    private final class Worker {
+        final SplittableRandom random;
+        final EnumMap<GHOST, MOVE> ghostMoves = new EnumMap<GHOST, MOVE>(GHOST.class);
+        final TreeNode[] path = new TreeNode[maxDepth + 1];
+        TreeNode root;
+        Game game;
+        int iterations;
+
+        Worker(SplittableRandom random) {
+            this.random = random;
+        }
+
+        void search(Game observed, long endTime) {
+            root = new TreeNode(null);
+            iterations = 0;
+            int next = random.nextInt(determinisations);
+            while (System.currentTimeMillis() < endTime) {
+                iterate(observed, infos[next]);
+                next = (next + 1 == determinisations) ? 0 : next + 1;
+                iterations++;
+            }
+        }
+
+        Callable<Void> task(final Game observed, final long endTime) {
+            return new Callable<Void>() {
+                @Override
+                public Void call() {
+                    search(observed, endTime);
+                    return null;
+                }
+            };
+        }
+
+        private void iterate(Game observed, GameInfo info) {
+            game = observed.getGameFromInfo(info, game);
+            int startScore = game.getScore();
+            int startLevel = game.getCurrentLevel();
+
+            TreeNode node = root;
+            path[0] = root;
+            int length = 1;
+            boolean inTree = true;
+            boolean died = false;
+            for (int tick = 0; tick < maxDepth && !game.gameOver(); tick++) {
+                int current = game.getPacmanCurrentNodeIndex();
+                MOVE[] options = (tick == 0) ? game.getPossibleMoves(current)
+                        : game.getPossibleMoves(current, game.getPacmanLastMoveMade());
+                MOVE move;
+                if (options.length == 1 && tick > 0) {
+                    move = options[0];
+                } else if (inTree) {
+                    TreeNode child = select(node, options);
+                    inTree = child.visits > 0;
+                    node = child;
+                    path[length++] = child;
+                    move = child.move;
+                } else {
+                    move = options[random.nextInt(options.length)];
+                }
+
+                game.advanceGame(move, ghostMoves());
+                if (game.wasPacManEaten()) {
+                    died = true;
+                    break;
+                }
+                if (game.getCurrentLevel() != startLevel) {
+                    break;
+                }
+            }
+
+            double reward = (game.getScore() - startScore - (died ? DEATH_PENALTY : 0)) / (double) DEATH_PENALTY;
+            for (int i = 0; i < length; i++) {
+                path[i].visits++;
+                path[i].value += reward;
+            }
+        }
+
+        // An untried move if there is one, drawn at random, or else the child with the highest UCB1
+        private TreeNode select(TreeNode node, MOVE[] options) {
+            int untried = 0;
+            for (MOVE option : options) {
+                TreeNode child = node.children[option.ordinal()];
+                if (child == null) {
+                    untried++;
+                } else {
+                    child.available++;
+                }
+            }
+
+            if (untried > 0) {
+                int pick = random.nextInt(untried);
+                for (MOVE option : options) {
+                    if (node.children[option.ordinal()] == null && pick-- == 0) {
+                        TreeNode child = new TreeNode(option);
+                        child.available = 1;
+                        node.children[option.ordinal()] = child;
+                        return child;
+                    }
+                }
+            }
+
+            TreeNode best = null;
+            double bestValue = Double.NEGATIVE_INFINITY;
+            for (MOVE option : options) {
+                TreeNode child = node.children[option.ordinal()];
+                double value = child.value / child.visits + EXPLORATION * Math.sqrt(Math.log(child.available) / child.visits);
+                if (value > bestValue) {
+                    bestValue = value;
+                    best = child;
+                }
+            }
+            return best;
+        }
+
+        // A random move for each ghost that does not reverse, which is all it can make between junctions
+        private EnumMap<GHOST, MOVE> ghostMoves() {
+            for (GHOST ghost : GHOST.values()) {
+                MOVE[] possible = game.getPossibleMoves(game.getGhostCurrentNodeIndex(ghost), game.getGhostLastMoveMade(ghost));
+                ghostMoves.put(ghost, (possible.length == 0) ? MOVE.NEUTRAL : possible[random.nextInt(possible.length)]);
+            }
+            return ghostMoves;
+        }
+    }
+}
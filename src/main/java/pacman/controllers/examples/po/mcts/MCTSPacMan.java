@@ -2,11 +2,19 @@ package pacman.controllers.examples.po.mcts;
 
 import pacman.controllers.Controller;
 import pacman.controllers.examples.po.mcts.prediction.GhostLocation;
+import pacman.controllers.examples.po.mcts.prediction.Predictions;
+import pacman.controllers.examples.po.mcts.prediction.fast.GhostPredictionsCompact;
 import pacman.controllers.examples.po.mcts.prediction.fast.GhostPredictionsFast;
+import pacman.controllers.examples.po.mcts.prediction.particle.GhostParticleFilter;
 import pacman.game.Game;
+import pacman.game.internal.CorridorTable;
 import pacman.game.internal.Maze;
 
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import static pacman.game.Constants.GHOST;
 import static pacman.game.Constants.MOVE;
@@ -16,21 +24,131 @@ import static pacman.game.Constants.MOVE;
  */
 public class MCTSPacMan extends Controller<MOVE> {
 
+    /**
+     * How the search is shared out when there is more than one thread.
+     */
+    public enum Parallelism {
+        /**
+         * Every worker searches a tree of its own; at the deadline the trees are merged by the visits of the moves
+         * at their roots.
+         */
+        ROOT,
+        /**
+         * All workers search one shared tree, with atomic statistics and virtual loss so that they spread out over
+         * the tree.
+         */
+        TREE
+    }
+
+    // Nodes per tree, shared out between the trees in root-parallel mode
+    private static final int TREE_CAPACITY = 1 << 18;
+    private static final int MIN_TREE_CAPACITY = 1 << 14;
+
+    /**
+     * How the controller stores its belief about the ghosts, one per tick of lookahead.
+     */
+    public enum Beliefs {
+        /**
+         * GhostPredictionsFast: double probabilities and MOVE references.
+         */
+        GRID {
+            @Override
+            Predictions create(Maze maze, int particles) {
+                return new GhostPredictionsFast(maze);
+            }
+        },
+        /**
+         * GhostPredictionsCompact: the same belief in floats and byte-coded moves, at a third of the memory.
+         */
+        COMPACT {
+            @Override
+            Predictions create(Maze maze, int particles) {
+                return new GhostPredictionsCompact(maze);
+            }
+        },
+        /**
+         * GhostParticleFilter: a fixed number of particles per ghost, set with setParticles.
+         */
+        PARTICLES {
+            @Override
+            Predictions create(Maze maze, int particles) {
+                return new GhostParticleFilter(maze, particles);
+            }
+        };
+
+        abstract Predictions create(Maze maze, int particles);
+    }
+
     private int maxDepth = 100;
     private int treeLimit = 50;
-    private Random random = new Random();
+    private int threads = 1;
+    private Parallelism parallelism = Parallelism.TREE;
+    private Beliefs beliefs = Beliefs.GRID;
+    private int particles = 256;
+    // Source of the workers' random number generators
+    private final SplittableRandom seeds = new SplittableRandom();
+    private Worker[] workers;
+    private ForkJoinPool pool;
     private Maze maze;
+    private CorridorTable corridors;
     public static int DEATH_PENALTY = 1000;
+    static final double DISCOUNT_FACTOR = 0.95;
     private int numberOfLives;
     private PillModel pillModel;
 
-    private List<GhostPredictionsFast> ghostPredictions = new ArrayList<>();
-
+    private List<Predictions> ghostPredictions = new ArrayList<>();
+    // Predictions dropped from the list, kept for reuse so that the list is rebuilt without allocating
+    private final ArrayDeque<Predictions> sparePredictions = new ArrayDeque<>();
+    // The ghost penalty of each node at each depth, DEATH_PENALTY-scaled, capped and discounted, taken from the
+    // predictions once per tick
+    private float[][] danger;
+    private double[] dangerSums;
+
+    // The trees of the previous tick, one per worker in root-parallel mode, kept so that the subtree of the move
+    // made can be searched on
+    private boolean treeReuse = true;
+    private SearchTree[] trees;
+    private int lastIterations;
+    private int lastReusedVisits;
+    private long reuseHits;
+    private long reuseMisses;
+
+    // The DAGs searched instead of the trees when transpositions are merged, one per worker
+    private boolean transpositions;
+    private SearchDag[] dags;
+    private int lastSize;
+    private int lastTranspositions;
+
+    /**
+     * @param maxDepth  The depth of the rollouts, which is also how far ahead the ghosts are predicted
+     * @param treeLimit The depth of the tree; less than maxDepth, as the nodes take their ghost penalties from the
+     *                  predictions at their depth
+     */
     public MCTSPacMan(int maxDepth, int treeLimit) {
+        if (treeLimit >= maxDepth) {
+            throw new IllegalArgumentException("The tree limit " + treeLimit + " must be less than the depth " + maxDepth);
+        }
         this.maxDepth = maxDepth;
         this.treeLimit = treeLimit;
     }
 
+    /**
+     * Creates a controller that searches on several threads.
+     *
+     * @param maxDepth    The depth of the rollouts
+     * @param treeLimit   The depth of the tree
+     * @param threads     The number of threads to search with
+     * @param parallelism How the threads share the search
+     */
+    public MCTSPacMan(int maxDepth, int treeLimit, int threads, Parallelism parallelism) {
+        this(maxDepth, treeLimit);
+        if (threads < 1) {
+            throw new IllegalArgumentException("At least one thread is needed, not " + threads);
+        }
+        this.threads = threads;
+        this.parallelism = parallelism;
+    }
+
     public MCTSPacMan() {
 
     }
@@ -42,6 +160,7 @@ public class MCTSPacMan extends Controller<MOVE> {
         boolean mapChanged = maze != game.getCurrentMaze();
         if(mapChanged){
             ghostPredictions.clear();
+            sparePredictions.clear();
             System.out.println("Next Maze");
         }
         maze = game.getCurrentMaze();
@@ -53,17 +172,23 @@ public class MCTSPacMan extends Controller<MOVE> {
         boolean died = numberOfLives != game.getPacmanNumberOfLivesRemaining();
         numberOfLives = game.getPacmanNumberOfLivesRemaining();
         if (died) {
+            sparePredictions.addAll(ghostPredictions);
             ghostPredictions.clear();
         }
 
 
         // Populate the list if needed
-        if (ghostPredictions.isEmpty()) {
-            ghostPredictions.add(new GhostPredictionsFast(game.getCurrentMaze()));
+        boolean populated = ghostPredictions.isEmpty();
+        if (populated) {
+            Predictions empty = sparePredictions.poll();
+            if (empty == null) {
+                empty = beliefs.create(game.getCurrentMaze(), particles);
+            } else {
+                empty.reset();
+            }
+            ghostPredictions.add(empty);
             for (int i = 1; i < maxDepth; i++) {
-                GhostPredictionsFast temp = ghostPredictions.get(i - 1).copy();
-                temp.update();
-                ghostPredictions.add(temp);
+                ghostPredictions.add(predictAfter(ghostPredictions.get(i - 1)));
             }
         }
 
@@ -71,11 +196,13 @@ public class MCTSPacMan extends Controller<MOVE> {
         for (int index : game.getPillIndices()) {
             pillModel.observe(index, true);
         }
+        corridors = Game.caches[game.getMazeIndex()].getCorridors();
+        pillModel.countCorridors(corridors);
 
         // With any luck we can keep it
         boolean updated = false;
         // Update the predictions
-        GhostPredictionsFast first = ghostPredictions.get(0);
+        Predictions first = ghostPredictions.get(0);
         for (GHOST ghost : GHOST.values()) {
             int ghostIndex = game.getGhostCurrentNodeIndex(ghost);
             if (ghostIndex != -1) {
@@ -94,274 +221,375 @@ public class MCTSPacMan extends Controller<MOVE> {
 
         if (updated) {
             // Ditch all but the first
+            sparePredictions.addAll(ghostPredictions.subList(1, ghostPredictions.size()));
             ghostPredictions.clear();
             ghostPredictions.add(first);
             // And repopulate the list
             for (int i = 1; i < maxDepth; i++) {
-                GhostPredictionsFast temp = ghostPredictions.get(i - 1).copy();
-                temp.update();
-                ghostPredictions.add(temp);
+                ghostPredictions.add(predictAfter(ghostPredictions.get(i - 1)));
             }
         } else {
             // Otherwise just extend it by one
-            GhostPredictionsFast next = ghostPredictions.get(ghostPredictions.size() - 1).copy();
-            next.update();
-            ghostPredictions.add(new GhostPredictionsFast(game.getCurrentMaze()));
+            ghostPredictions.add(predictAfter(ghostPredictions.get(ghostPredictions.size() - 1)));
         }
+        updateDanger(populated || updated || mapChanged);
 
-        Node root = new Node(this, game.getPacmanCurrentNodeIndex(), game.getPacmanLastMoveMade(), pillModel);
-        while (System.currentTimeMillis() < endTime) {
-            Node current = root.select();
-            double value = current.rollout();
-            current.updateValues(value);
+        if (workers == null) {
+            workers = new Worker[threads];
+            for (int i = 0; i < threads; i++) {
+                workers[i] = new Worker(seeds.split());
+            }
+        }
+        lastReusedVisits = 0;
+        if (transpositions) {
+            if (dags == null) {
+                dags = new SearchDag[threads];
+                for (int i = 0; i < threads; i++) {
+                    dags[i] = new SearchDag(this, Math.max(MIN_TREE_CAPACITY, TREE_CAPACITY / threads));
+                }
+            }
+            for (SearchDag dag : dags) {
+                dag.reset(maze, corridors, pillModel, game.getPacmanCurrentNodeIndex(), game.getPacmanLastMoveMade());
+            }
+        } else {
+            if (trees == null) {
+                trees = new SearchTree[(parallelism == Parallelism.ROOT) ? threads : 1];
+                for (int i = 0; i < trees.length; i++) {
+                    trees[i] = new SearchTree(this, Math.max(MIN_TREE_CAPACITY, TREE_CAPACITY / trees.length));
+                }
+            }
+            for (SearchTree tree : trees) {
+                nextRoot(tree, game, mapChanged || died);
+                lastReusedVisits += tree.getRootVisits();
+            }
         }
-        ghostPredictions.remove(0);
+
+        search(endTime);
+        sparePredictions.add(ghostPredictions.remove(0));
 
         // Always need to throw away the first one at the end of the turn
 //        System.out.println("Completed: " + root.getNumberOfVisits() + " Updated: " + updated);
-        return getBestMove(root);
-    }
-
-    private MOVE getBestMove(Node root) {
-        double bestValue = -Double.MAX_VALUE;
-        int bestIndex = -1;
-        if(root == null || root.children == null) return MOVE.LEFT;
-        for (int i = 0; i < root.children.length; i++) {
-            if (root.children[i] != null) {
-                if (root.children[i].getTotalValue() > bestValue) {
-                    bestIndex = i;
-                    bestValue = root.children[i].getTotalValue();
+        if (transpositions) {
+            return (dags.length > 1) ? getMostVisitedMove(dags) : getBestMove(dags[0]);
+        }
+        return (trees.length > 1) ? getMostVisitedMove(trees) : getBestMove(trees[0]);
+    }
+
+    // The prediction one tick after the given one, in a spare instance if there is one
+    private Predictions predictAfter(Predictions previous) {
+        Predictions next = sparePredictions.poll();
+        if (next == null) {
+            next = previous.copy();
+        } else {
+            next.copyFrom(previous);
+        }
+        next.update();
+        return next;
+    }
+
+    /*
+     * Brings the danger tensor in line with the predictions of this tick. Without a new observation the predictions
+     * have only moved one depth up, and so do the rows of the tensor, rescaled for the discount of their new depth;
+     * only the last row is then calculated afresh.
+     */
+    private void updateDanger(boolean rebuild) {
+        int mazeSize = maze.graph.length;
+        if (danger == null || danger.length != maxDepth || danger[0].length != mazeSize) {
+            danger = new float[maxDepth][mazeSize];
+            dangerSums = new double[mazeSize];
+            rebuild = true;
+        }
+
+        int from = maxDepth - 1;
+        if (rebuild) {
+            from = 0;
+        } else {
+            float[] first = danger[0];
+            System.arraycopy(danger, 1, danger, 0, maxDepth - 1);
+            danger[maxDepth - 1] = first;
+            float rescale = (float) (1 / DISCOUNT_FACTOR);
+            for (int depth = 0; depth < maxDepth - 1; depth++) {
+                float[] row = danger[depth];
+                for (int index = 0; index < mazeSize; index++) {
+                    row[index] *= rescale;
                 }
             }
         }
-        if (bestIndex == -1) return MOVE.LEFT;
-        return root.children[bestIndex].getMoveToThisState();
-    }
 
-    private void printMoves(Node root) {
-        if (root.children == null) return;
-        for (Node child : root.children) {
-            System.out.println("\t Child: " + child.getMoveToThisState() + " Value: " + child.getTotalValue());
+        for (int depth = from; depth < maxDepth; depth++) {
+            ghostPredictions.get(depth).calculate(dangerSums);
+            double discount = Math.pow(DISCOUNT_FACTOR, depth);
+            float[] row = danger[depth];
+            for (int index = 0; index < mazeSize; index++) {
+                row[index] = (float) (discount * Math.min(DEATH_PENALTY, dangerSums[index] * DEATH_PENALTY));
+            }
         }
     }
 
-    public int getMaxDepth() {
-        return maxDepth;
-    }
+    // Runs the workers until the end time, on this thread alone if there is just one
+    private void search(long endTime) {
+        if (threads == 1) {
+            if (transpositions) {
+                workers[0].search(dags[0], endTime);
+            } else {
+                workers[0].search(trees[0], endTime, false);
+            }
+            lastIterations = workers[0].iterations;
+            countNodes();
+            return;
+        }
 
-    public int getTreeLimit() {
-        return treeLimit;
-    }
+        if (pool == null) {
+            pool = new ForkJoinPool(threads);
+        }
+        boolean virtualLoss = parallelism == Parallelism.TREE;
+        List<Callable<Void>> tasks = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            tasks.add(transpositions ? workers[i].task(dags[i], endTime)
+                    : workers[i].task(trees[virtualLoss ? 0 : i], endTime, virtualLoss));
+        }
+        try {
+            for (Future<Void> result : pool.invokeAll(tasks)) {
+                result.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("MCTS worker failed", e.getCause());
+        }
 
-    public Random getRandom() {
-        return random;
+        lastIterations = 0;
+        for (Worker worker : workers) {
+            lastIterations += worker.iterations;
+        }
+        countNodes();
     }
 
-    public Maze getMaze() {
-        return maze;
+    private void countNodes() {
+        lastSize = 0;
+        lastTranspositions = 0;
+        if (transpositions) {
+            for (SearchDag dag : dags) {
+                lastSize += dag.size();
+                lastTranspositions += dag.getTranspositions();
+            }
+        } else {
+            for (SearchTree tree : trees) {
+                lastSize += tree.size();
+            }
+        }
     }
 
-    public double getPredictions(int depth, int index) {
-        return Math.min(DEATH_PENALTY, ghostPredictions.get(depth).calculate(index) * DEATH_PENALTY);
+    /*
+     * Finds where Ms Pac-Man now is among the children of the previous root and makes that child the root,
+     * dropping its siblings. Pac-Man moves one node per tick, so unless she died, the maze changed or the tree is
+     * not reused, she is normally found there. The ghost predictions have already been brought up to date, so the
+     * reused nodes take their ghost penalties from them.
+     */
+    private void nextRoot(SearchTree tree, Game game, boolean reset) {
+        int index = game.getPacmanCurrentNodeIndex();
+        MOVE lastMove = game.getPacmanLastMoveMade();
+        if (treeReuse && !reset && tree.size() > 0) {
+            if (tree.reroot(maze, pillModel, index, lastMove)) {
+                reuseHits++;
+                return;
+            }
+            reuseMisses++;
+        }
+        tree.reset(maze, corridors, pillModel, index, lastMove);
     }
-}
-
-class Node {
-    private static final double EPSILON = 1E-6;
-    private static final double DISCOUNT_FACTOR = 0.95;
-    protected Node[] children;
-    private MCTSPacMan mctsPacMan;
-    private Node parent;
-    private int childrenExpandedSoFar = 0;
-    private double totalValue = 0;
-    private int numberOfVisits = 0;
-    private int currentDepth = 0;
-    private PacManLocation pacManLocation;
-    // This is the score considered to have been obtained by the time we reach this node
-    private double rawScore = 0.0d;
-    private PillModel pillModel;
 
-    public Node(MCTSPacMan mctsPacMan, int index, MOVE moveToThisNode, PillModel pillModel) {
-        this.mctsPacMan = mctsPacMan;
-        pacManLocation = new PacManLocation(index, moveToThisNode, mctsPacMan.getMaze());
-        this.pillModel = pillModel;
+    private MOVE getBestMove(SearchTree tree) {
+        MOVE best = tree.getBestMove();
+        return (best == null) ? MOVE.LEFT : best;
     }
 
-    public Node(Node parent, int index, MOVE moveToThisNode) {
-        this.parent = parent;
-        this.mctsPacMan = parent.mctsPacMan;
-        pacManLocation = new PacManLocation(index, moveToThisNode, mctsPacMan.getMaze());
-        this.pillModel = parent.pillModel.copy();
-        this.pillModel.update(index);
+    private MOVE getBestMove(SearchDag dag) {
+        MOVE best = dag.getBestMove();
+        return (best == null) ? MOVE.LEFT : best;
     }
 
-    public boolean decisionNeeded() {
-        return pacManLocation.possibleMoves().length > 1;
+    // Root-parallel merge: the move with the most visits over all trees, ties going to the higher total value
+    private MOVE getMostVisitedMove(SearchTree[] trees) {
+        long[] visits = new long[MOVE.values().length];
+        double[] values = new double[MOVE.values().length];
+        for (SearchTree tree : trees) {
+            tree.addRootStatistics(visits, values);
+        }
+        return getMostVisitedMove(visits, values);
     }
 
-    public Node select() {
-        Node current = this;
-
-        while (current.currentDepth < mctsPacMan.getTreeLimit()) {
-            if (current.isFullyExpanded()) {
-                current = current.selectBestChild();
-            } else {
-                current = current.expand();
-                return current;
-            }
+    private MOVE getMostVisitedMove(SearchDag[] dags) {
+        long[] visits = new long[MOVE.values().length];
+        double[] values = new double[MOVE.values().length];
+        for (SearchDag dag : dags) {
+            dag.addRootStatistics(visits, values);
         }
-        return current;
+        return getMostVisitedMove(visits, values);
     }
 
-    public Node selectBestChild() {
-        int selected = 0;
-        double bestValue = children[0].calculateChild();
-        for (int child = 1; child < children.length; child++) {
-            double childValue = children[child].calculateChild();
-            if (childValue > bestValue) {
-                bestValue = childValue;
-                selected = child;
+    private MOVE getMostVisitedMove(long[] visits, double[] values) {
+        MOVE[] moves = MOVE.values();
+        int best = -1;
+        for (int i = 0; i < moves.length; i++) {
+            if (visits[i] > 0 && (best == -1 || visits[i] > visits[best] || (visits[i] == visits[best] && values[i] > values[best]))) {
+                best = i;
             }
         }
-        return children[selected];
+        return (best == -1) ? MOVE.LEFT : moves[best];
     }
 
-    public void updateValues(double value) {
-        Node current = this;
-        while (current.parent != null) {
-            current.totalValue += value;
-            current.numberOfVisits++;
-            current = current.parent;
-        }
-        // Root - update visits
-        current.numberOfVisits++;
-    }
-
-    public Node expand() {
-        int bestAction = 0;
-        double bestValue = -Double.MAX_VALUE;
-        if (children == null) children = new Node[pacManLocation.possibleMoves().length];
-        Random random = mctsPacMan.getRandom();
-        for (int i = 0; i < children.length; i++) {
-            double x = random.nextDouble();
-            if (children[i] == null && x > bestValue) {
-                bestAction = i;
-                bestValue = x;
+    private void printMoves(SearchTree tree) {
+        MOVE[] moves = MOVE.values();
+        long[] visits = new long[moves.length];
+        double[] values = new double[moves.length];
+        tree.addRootStatistics(visits, values);
+        for (MOVE move : moves) {
+            if (visits[move.ordinal()] > 0) {
+                System.out.println("\t Child: " + move + " Value: " + values[move.ordinal()]);
             }
         }
-        PacManLocation next = pacManLocation.copy();
-        next.update(pacManLocation.possibleMoves()[bestAction]);
-        children[bestAction] = new Node(this, next.getIndex(), next.getLastMoveMade());
-        children[bestAction].rawScore += (Math.pow(DISCOUNT_FACTOR, currentDepth + 1) * -mctsPacMan.getPredictions(currentDepth + 1, next.getIndex()));
-        childrenExpandedSoFar++;
-        return children[bestAction];
-    }
-
-    public double rollout() {
-        int depth = currentDepth;
-        double score = rawScore;
-        PacManLocation next = pacManLocation.copy();
-        PillModel rolloutPillModel = pillModel.copy();
-        while (depth < mctsPacMan.getMaxDepth()) {
-            int numPossibleMoves = next.possibleMoves().length;
-            next.update(next.possibleMoves()[mctsPacMan.getRandom().nextInt(numPossibleMoves)]);
-            rolloutPillModel.update(next.getIndex());
-            // Penalty for ghosts
-            score -= Math.pow(DISCOUNT_FACTOR, depth) * mctsPacMan.getPredictions(depth, next.getIndex());
-            depth++;
-        }
-        return score + rolloutPillModel.getPillsEaten() * 10;
     }
 
-    private boolean isFullyExpanded() {
-        return children != null && childrenExpandedSoFar == children.length;
+    public int getMaxDepth() {
+        return maxDepth;
     }
 
-    private double calculateChild() {
-        return totalValue / (numberOfVisits + EPSILON) +
-                Math.sqrt(2 * Math.log(parent.numberOfVisits + 1) / (numberOfVisits + EPSILON)) +
-                mctsPacMan.getRandom().nextDouble() * EPSILON;
+    public int getTreeLimit() {
+        return treeLimit;
     }
 
-    public double getTotalValue() {
-        return totalValue;
+    public int getThreads() {
+        return threads;
     }
 
-    public int getNumberOfVisits() {
-        return numberOfVisits;
+    public Parallelism getParallelism() {
+        return parallelism;
     }
 
-    public int getChildrenExpandedSoFar() {
-        return childrenExpandedSoFar;
+    /**
+     * Chooses how the belief about the ghosts is stored; GRID by default. The current belief is dropped.
+     *
+     * @param beliefs The kind of belief
+     */
+    public void setBeliefs(Beliefs beliefs) {
+        this.beliefs = beliefs;
+        ghostPredictions.clear();
+        sparePredictions.clear();
     }
 
-    public MOVE getMoveToThisState() {
-        return pacManLocation.getLastMoveMade();
+    public Beliefs getBeliefs() {
+        return beliefs;
     }
-}
 
-class PacManLocation {
-    private int index;
-    private MOVE lastMoveMade;
-    private Maze maze;
+    /**
+     * Sets the number of particles per ghost of the PARTICLES beliefs; 256 by default. The current belief is
+     * dropped.
+     *
+     * @param particles The number of particles
+     */
+    public void setParticles(int particles) {
+        if (particles < 1) {
+            throw new IllegalArgumentException("At least one particle is needed, not " + particles);
+        }
+        this.particles = particles;
+        ghostPredictions.clear();
+        sparePredictions.clear();
+    }
 
-    public PacManLocation(int index, MOVE lastMoveMade, Maze maze) {
-        this.index = index;
-        this.lastMoveMade = lastMoveMade;
-        this.maze = maze;
+    public int getParticles() {
+        return particles;
     }
 
-    public MOVE[] possibleMoves() {
-        return maze.graph[index].allPossibleMoves.get(lastMoveMade);
+    public Maze getMaze() {
+        return maze;
     }
 
-    public void update(MOVE move) {
-        index = maze.graph[index].neighbourhood.get(move);
-        lastMoveMade = move;
+    // The discounted ghost penalties of this tick, indexed by depth and node; not to be modified
+    float[][] getDanger() {
+        return danger;
     }
 
-    public PacManLocation copy() {
-        return new PacManLocation(this.index, this.lastMoveMade, this.maze);
+    public double getPredictions(int depth, int index) {
+        return Math.min(DEATH_PENALTY, ghostPredictions.get(depth).calculate(index) * DEATH_PENALTY);
     }
 
-    public int getIndex() {
-        return index;
+    /**
+     * Turns reusing the search tree between ticks on or off. It is on by default.
+     *
+     * @param treeReuse Whether to reuse the tree
+     */
+    public void setTreeReuse(boolean treeReuse) {
+        this.treeReuse = treeReuse;
+        if (trees != null) {
+            for (SearchTree tree : trees) {
+                tree.clear();
+            }
+        }
     }
 
-    public MOVE getLastMoveMade() {
-        return lastMoveMade;
+    public boolean isTreeReuse() {
+        return treeReuse;
     }
 
-    public Maze getMaze() {
-        return maze;
+    /**
+     * Turns merging transpositions on or off; off by default. When on, the search is over a DAG in which each state
+     * of Ms Pac-Man, her node, her last move and the depth, is stored once however many paths lead to it. Each
+     * thread then searches a DAG of its own, merged as in root-parallel mode, and the DAG is not reused between
+     * ticks.
+     *
+     * @param transpositions Whether to merge transpositions
+     */
+    public void setTranspositions(boolean transpositions) {
+        this.transpositions = transpositions;
+        trees = null;
+        dags = null;
     }
-}
 
-class PillModel {
-    private BitSet pills;
-    private int pillsEaten;
+    public boolean isTranspositions() {
+        return transpositions;
+    }
+
+    /**
+     * @return The number of nodes in the trees or DAGs at the end of the last tick
+     */
+    public int getLastSize() {
+        return lastSize;
+    }
 
-    public PillModel(int indices) {
-        this.pills = new BitSet(indices);
+    /**
+     * @return The number of times on the last tick a path led to a state already in the DAG, each of which a tree
+     * would have stored again; 0 without transpositions
+     */
+    public int getLastTranspositions() {
+        return lastTranspositions;
     }
 
-    // Pacman visited this index
-    public void update(int index) {
-        if (pills.get(index)) pillsEaten++;
+    /**
+     * @return The number of iterations run on the last tick, over all threads
+     */
+    public int getLastIterations() {
+        return lastIterations;
     }
 
-    // There is a pill here!
-    public void observe(int index, boolean pillThere) {
-        pills.set(index, pillThere);
+    /**
+     * @return The visits the roots of the last tick had already received on earlier ticks
+     */
+    public int getLastReusedVisits() {
+        return lastReusedVisits;
     }
 
-    public int getPillsEaten() {
-        return pillsEaten;
+    /**
+     * @return The number of times a tree of the previous tick could be reused
+     */
+    public long getReuseHits() {
+        return reuseHits;
     }
 
-    public PillModel copy() {
-        PillModel other = new PillModel(this.pills.length());
-        other.pills = (BitSet) this.pills.clone();
-        return other;
+    /**
+     * @return The number of times Ms Pac-Man was not found among the children of a previous root
+     */
+    public long getReuseMisses() {
+        return reuseMisses;
     }
 }
@@ -0,0 +1,122 @@
+package pacman.controllers.examples.po.mcts;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+ * Storage for the nodes of an MCTS tree in parallel primitive arrays, so that growing the tree does not allocate.
+ * A node is an index into the arrays and links to its parent and first child by index. The children of a node
+ * occupy a contiguous block, allocated all at once when the node is first expanded; a child slot is "expanded"
+ * once a worker has claimed it and given it its ghost penalty.
+ *
+ * Fields that several workers update (the child links, the expansion state and the statistics) are atomic
+ * arrays, with doubles stored as their long bits. The others are written once, before the block they belong to
+ * is published through firstChild, and only read afterwards.
+ */
+final class NodeArena {
+    static final int NONE = -1;
+    // firstChild while a worker is allocating and initialising the children
+    static final int PENDING = -2;
+
+    final int[] parent;
+    // Ms Pac-Man's maze node and the move that took her there
+    final int[] location;
+    final byte[] move;
+    final int[] depth;
+    // The discounted ghost penalty for reaching the node
+    final double[] rawScore;
+    final byte[] childCount;
+    final AtomicIntegerArray firstChild;
+    final AtomicIntegerArray expandedChildren;
+    final AtomicIntegerArray expanded;
+    final AtomicIntegerArray visits;
+    private final AtomicLongArray value;
+    // The part of value that is discounted ghost penalties rather than pills
+    private final AtomicLongArray penalty;
+    private final AtomicInteger size = new AtomicInteger();
+
+    NodeArena(int capacity) {
+        parent = new int[capacity];
+        location = new int[capacity];
+        move = new byte[capacity];
+        depth = new int[capacity];
+        rawScore = new double[capacity];
+        childCount = new byte[capacity];
+        firstChild = new AtomicIntegerArray(capacity);
+        expandedChildren = new AtomicIntegerArray(capacity);
+        expanded = new AtomicIntegerArray(capacity);
+        visits = new AtomicIntegerArray(capacity);
+        value = new AtomicLongArray(capacity);
+        penalty = new AtomicLongArray(capacity);
+    }
+
+    int capacity() {
+        return parent.length;
+    }
+
+    int size() {
+        return Math.min(size.get(), capacity());
+    }
+
+    // Frees all nodes; they are reinitialised as they are allocated again
+    void clear() {
+        size.set(0);
+    }
+
+    /*
+     * Allocates a block of consecutive nodes with no children and no statistics. Returns the index of the first,
+     * or NONE if the arena is full.
+     */
+    int allocate(int count) {
+        if (size.get() + count > capacity()) {
+            return NONE;
+        }
+        int first = size.getAndAdd(count);
+        if (first + count > capacity()) {
+            return NONE;
+        }
+        for (int node = first; node < first + count; node++) {
+            childCount[node] = 0;
+            rawScore[node] = 0;
+            firstChild.set(node, NONE);
+            expandedChildren.set(node, 0);
+            expanded.set(node, 0);
+            visits.set(node, 0);
+            value.set(node, 0);
+            penalty.set(node, 0);
+        }
+        return first;
+    }
+
+    double getValue(int node) {
+        return Double.longBitsToDouble(value.get(node));
+    }
+
+    void setValue(int node, double newValue) {
+        value.set(node, Double.doubleToRawLongBits(newValue));
+    }
+
+    void addValue(int node, double delta) {
+        add(value, node, delta);
+    }
+
+    double getPenalty(int node) {
+        return Double.longBitsToDouble(penalty.get(node));
+    }
+
+    void setPenalty(int node, double newPenalty) {
+        penalty.set(node, Double.doubleToRawLongBits(newPenalty));
+    }
+
+    void addPenalty(int node, double delta) {
+        add(penalty, node, delta);
+    }
+
+    private static void add(AtomicLongArray array, int node, double delta) {
+        long current;
+        do {
+            current = array.get(node);
+        } while (!array.compareAndSet(node, current, Double.doubleToRawLongBits(Double.longBitsToDouble(current) + delta)));
+    }
+}
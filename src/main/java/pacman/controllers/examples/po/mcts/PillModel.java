@@ -0,0 +1,43 @@
+package pacman.controllers.examples.po.mcts;
+
+import pacman.game.internal.CorridorTable;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/*
+ * The pills observed on this tick, shared by all nodes and rollouts; what a path has eaten is kept by the worker.
+ * The pills of each corridor are counted once per tick, so that a rollout can take a whole corridor's at once.
+ */
+class PillModel {
+    private BitSet pills;
+    private int[] corridorPills = new int[0];
+
+    public PillModel(int indices) {
+        this.pills = new BitSet(indices);
+    }
+
+    // There is a pill here!
+    public void observe(int index, boolean pillThere) {
+        pills.set(index, pillThere);
+    }
+
+    public boolean hasPill(int index) {
+        return pills.get(index);
+    }
+
+    public void countCorridors(CorridorTable corridors) {
+        if (corridorPills.length != corridors.getNumberOfCorridors()) {
+            corridorPills = new int[corridors.getNumberOfCorridors()];
+        }
+        Arrays.fill(corridorPills, 0);
+        for (int index = pills.nextSetBit(0); index >= 0 && index < corridors.getNumberOfNodes(); index = pills.nextSetBit(index + 1)) {
+            int corridor = corridors.getCorridor(index);
+            if (corridor != CorridorTable.NO_CORRIDOR) corridorPills[corridor]++;
+        }
+    }
+
+    public int getCorridorPills(int corridor) {
+        return corridorPills[corridor];
+    }
+}
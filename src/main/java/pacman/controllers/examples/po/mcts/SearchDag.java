@@ -0,0 +1,306 @@
+package pacman.controllers.examples.po.mcts;
+
+import pacman.game.internal.CorridorTable;
+import pacman.game.internal.Maze;
+import pacman.game.internal.Node;
+
+import java.util.Arrays;
+
+import static pacman.game.Constants.MOVE;
+
+/*
+ * An MCTS search over Ms Pac-Man's moves that merges transpositions. Within a tick, a state of the search is fully
+ * described by Ms Pac-Man's node, the move that took her there and the depth, since the ghost penalties depend on
+ * nothing else; the paths that go back and forth through a corridor and meet again are therefore one node here,
+ * looked up in a hash table keyed on the three, where SearchTree keeps a copy, and a subtree, for each.
+ *
+ * A node's value and visits are shared by all the paths into it. Each edge counts its own visits, and UCT uses
+ * these for exploration, with the parent's visits, while exploiting the mean value of the child over all its
+ * visits. Expanding an edge into a state that is already there links the edge to it, and selection carries on
+ * through it rather than rolling out. The pills a rollout starts without are still those of the path actually
+ * taken, which the search keeps, as a node has no single parent to walk back through.
+ *
+ * Single-threaded: with several threads each worker searches a DAG of its own, as in root-parallel mode. The DAG
+ * is built afresh every tick; moving it one step up would change the key of every node.
+ */
+final class SearchDag {
+    static final int NONE = -1;
+    private static final double EPSILON = 1E-6;
+    private static final MOVE[] MOVES = MOVE.values();
+
+    private final MCTSPacMan mctsPacMan;
+
+    // Nodes
+    private final long[] key;
+    private final int[] location;
+    private final byte[] move;
+    private final int[] depth;
+    // The discounted ghost penalty for reaching the node
+    private final double[] rawScore;
+    private final int[] visits;
+    private final double[] value;
+    private final int[] firstEdge;
+    private final byte[] edgeCount;
+    private final byte[] linkedEdges;
+    private int nodes;
+
+    // Edges, in a block per node: the move, where it leads, the node there once linked, and the visits through it
+    private final byte[] edgeMove;
+    private final int[] edgeLocation;
+    private final int[] target;
+    private final int[] edgeVisits;
+    private int edges;
+
+    // Open addressing from key to node; a slot is in use if stamped with the current generation
+    private final int[] table;
+    private final int[] stamps;
+    private final int mask;
+    private int generation;
+
+    // The nodes of the last selection from the root, and the edges between them
+    private final int[] path;
+    private final int[] pathEdges;
+    private int pathLength;
+
+    private int root = NONE;
+    private Maze maze;
+    private CorridorTable corridors;
+    private PillModel pillModel;
+    private int transpositions;
+
+    SearchDag(MCTSPacMan mctsPacMan, int capacity) {
+        this.mctsPacMan = mctsPacMan;
+        key = new long[capacity];
+        location = new int[capacity];
+        move = new byte[capacity];
+        depth = new int[capacity];
+        rawScore = new double[capacity];
+        visits = new int[capacity];
+        value = new double[capacity];
+        firstEdge = new int[capacity];
+        edgeCount = new byte[capacity];
+        linkedEdges = new byte[capacity];
+
+        int edgeCapacity = capacity * MOVES.length;
+        edgeMove = new byte[edgeCapacity];
+        edgeLocation = new int[edgeCapacity];
+        target = new int[edgeCapacity];
+        edgeVisits = new int[edgeCapacity];
+
+        int slots = Integer.highestOneBit(Math.max(2, capacity)) << 1;
+        table = new int[slots];
+        stamps = new int[slots];
+        mask = slots - 1;
+
+        path = new int[mctsPacMan.getTreeLimit() + 2];
+        pathEdges = new int[mctsPacMan.getTreeLimit() + 2];
+    }
+
+    // Starts a new DAG with Ms Pac-Man at the given node
+    void reset(Maze maze, CorridorTable corridors, PillModel pillModel, int index, MOVE lastMove) {
+        this.maze = maze;
+        this.corridors = corridors;
+        this.pillModel = pillModel;
+        nodes = 0;
+        edges = 0;
+        transpositions = 0;
+        if (++generation == 0) {
+            Arrays.fill(stamps, 0);
+            generation = 1;
+        }
+        root = find(index, lastMove.ordinal(), 0, true);
+    }
+
+    /*
+     * Descends to a node to roll out from: a node just added, or a leaf at the depth limit. Returns the last node
+     * reached if the DAG is full.
+     */
+    int select(Worker worker) {
+        int current = root;
+        path[0] = root;
+        pathLength = 1;
+
+        while (depth[current] < mctsPacMan.getTreeLimit()) {
+            int count = edges(current);
+            // the edge storage is full
+            if (count == 0) return current;
+
+            int edge;
+            if (linkedEdges[current] < count) {
+                edge = expand(current, worker);
+                // the node storage is full
+                if (edge == NONE) return current;
+            } else {
+                edge = selectBestEdge(current, worker);
+            }
+            pathEdges[pathLength - 1] = edge;
+            current = target[edge];
+            path[pathLength++] = current;
+            if (visits[current] == 0) return current;
+        }
+        return current;
+    }
+
+    // Creates the block of edges of a node if it has none yet, and returns their number, or 0 if there is no room
+    private int edges(int node) {
+        if (firstEdge[node] != NONE) return edgeCount[node];
+
+        Node mazeNode = maze.graph[location[node]];
+        MOVE[] moves = mazeNode.allPossibleMoves.get(MOVES[move[node]]);
+        if (edges + moves.length > target.length) return 0;
+        int block = edges;
+        edges += moves.length;
+        for (int k = 0; k < moves.length; k++) {
+            edgeMove[block + k] = (byte) moves[k].ordinal();
+            edgeLocation[block + k] = mazeNode.neighbourhood.get(moves[k]);
+            target[block + k] = NONE;
+            edgeVisits[block + k] = 0;
+        }
+        firstEdge[node] = block;
+        edgeCount[node] = (byte) moves.length;
+        return moves.length;
+    }
+
+    // Links a random unlinked edge of the node to the state it leads to, adding the state if it is new
+    private int expand(int node, Worker worker) {
+        int first = firstEdge[node];
+        int bestEdge = NONE;
+        double bestValue = -Double.MAX_VALUE;
+        for (int edge = first; edge < first + edgeCount[node]; edge++) {
+            double x = worker.random.nextDouble();
+            if (target[edge] == NONE && x > bestValue) {
+                bestEdge = edge;
+                bestValue = x;
+            }
+        }
+
+        int child = find(edgeLocation[bestEdge], edgeMove[bestEdge], depth[node] + 1, false);
+        if (child == NONE) return NONE;
+        target[bestEdge] = child;
+        linkedEdges[node]++;
+        return bestEdge;
+    }
+
+    /*
+     * The node of a state, added if it is not there yet; a state found counts as a transposition unless it is the
+     * root. Returns NONE if it has to be added and there is no room.
+     */
+    private int find(int index, int lastMove, int nodeDepth, boolean isRoot) {
+        long stateKey = ((long) nodeDepth << 35) | ((long) index << 3) | lastMove;
+        int slot = (int) ((stateKey * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+        while (stamps[slot] == generation) {
+            int node = table[slot];
+            if (key[node] == stateKey) {
+                if (!isRoot) transpositions++;
+                return node;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (nodes == key.length) return NONE;
+
+        int node = nodes++;
+        key[node] = stateKey;
+        location[node] = index;
+        move[node] = (byte) lastMove;
+        depth[node] = nodeDepth;
+        rawScore[node] = isRoot ? 0 : -mctsPacMan.getDanger()[nodeDepth][index];
+        visits[node] = 0;
+        value[node] = 0;
+        firstEdge[node] = NONE;
+        edgeCount[node] = 0;
+        linkedEdges[node] = 0;
+        table[slot] = node;
+        stamps[slot] = generation;
+        return node;
+    }
+
+    // UCT over the edges: the child's mean value over all its visits, explored by the visits of the edge
+    private int selectBestEdge(int node, Worker worker) {
+        int first = firstEdge[node];
+        double parentVisits = visits[node];
+        int selected = first;
+        double bestValue = -Double.MAX_VALUE;
+        for (int edge = first; edge < first + edgeCount[node]; edge++) {
+            int child = target[edge];
+            double childValue = value[child] / (visits[child] + EPSILON) +
+                    Math.sqrt(2 * Math.log(parentVisits + 1) / (edgeVisits[edge] + EPSILON)) +
+                    worker.random.nextDouble() * EPSILON;
+            if (childValue > bestValue) {
+                bestValue = childValue;
+                selected = edge;
+            }
+        }
+        return selected;
+    }
+
+    // Rolls out from the end of the last selection, which must be the given node
+    double rollout(int node, Worker worker) {
+        // the pills on the path taken from the root have been eaten
+        worker.beginRollout(corridors);
+        for (int i = 0; i < pathLength; i++) {
+            worker.eat(location[path[i]], corridors.getCorridor(location[path[i]]));
+        }
+        return SearchTree.rollout(mctsPacMan, maze, corridors, pillModel, worker,
+                depth[node], rawScore[node], location[node], MOVES[move[node]]);
+    }
+
+    // Backs the value up the path of the last selection
+    void updateValues(double rolloutValue) {
+        for (int i = 0; i < pathLength; i++) {
+            visits[path[i]]++;
+            value[path[i]] += rolloutValue;
+        }
+        for (int i = 0; i < pathLength - 1; i++) {
+            edgeVisits[pathEdges[i]]++;
+        }
+    }
+
+    int getRootVisits() {
+        return visits[root];
+    }
+
+    /**
+     * @return The number of nodes in the DAG
+     */
+    int size() {
+        return nodes;
+    }
+
+    /**
+     * @return The number of times an edge was linked to a state that was already in the DAG, each of which a
+     * tree would have stored again, with a subtree of its own
+     */
+    int getTranspositions() {
+        return transpositions;
+    }
+
+    /*
+     * Adds the visits and total values of the root's linked children to the arrays, indexed by the ordinal of the
+     * move to the child. Only the root leads to the nodes at depth 1, so their statistics are those of the edges.
+     */
+    void addRootStatistics(long[] visits, double[] values) {
+        int first = firstEdge[root];
+        if (first == NONE) return;
+        for (int edge = first; edge < first + edgeCount[root]; edge++) {
+            if (target[edge] != NONE) {
+                visits[edgeMove[edge]] += this.visits[target[edge]];
+                values[edgeMove[edge]] += value[target[edge]];
+            }
+        }
+    }
+
+    // The move to the linked child of the root with the highest total value, or null if there is none
+    MOVE getBestMove() {
+        int first = firstEdge[root];
+        if (first == NONE) return null;
+        int best = NONE;
+        double bestValue = -Double.MAX_VALUE;
+        for (int edge = first; edge < first + edgeCount[root]; edge++) {
+            if (target[edge] != NONE && value[target[edge]] > bestValue) {
+                best = edge;
+                bestValue = value[target[edge]];
+            }
+        }
+        return (best == NONE) ? null : MOVES[edgeMove[best]];
+    }
+}
@@ -0,0 +1,357 @@
+package pacman.controllers.examples.po.mcts;
+
+import pacman.game.internal.CorridorTable;
+import pacman.game.internal.Maze;
+import pacman.game.internal.Node;
+
+import static pacman.game.Constants.MOVE;
+
+/*
+ * An MCTS tree over Ms Pac-Man's moves, stored in a NodeArena. Selection, expansion, rollouts and backup do not
+ * allocate: pills are read from the shared PillModel of the tick, and the pills already eaten along a path are
+ * the locations of the path's nodes, which a rollout marks in its worker before it starts. Rollouts only make a
+ * decision at junctions and walk the corridors between them from the maze's CorridorTable.
+ *
+ * Several workers may search one tree at once; see NodeArena for what is atomic. When the tree is reused on the
+ * next tick, the subtree of the move made is copied into a second arena, which then takes the place of the first,
+ * so the arena never fills up with the pruned siblings.
+ */
+final class SearchTree {
+    private static final double EPSILON = 1E-6;
+    private static final MOVE[] MOVES = MOVE.values();
+
+    private final MCTSPacMan mctsPacMan;
+    private NodeArena arena;
+    private NodeArena spare;
+    private int root = NodeArena.NONE;
+    private Maze maze;
+    private CorridorTable corridors;
+    private PillModel pillModel;
+
+    SearchTree(MCTSPacMan mctsPacMan, int capacity) {
+        this.mctsPacMan = mctsPacMan;
+        this.arena = new NodeArena(capacity);
+        this.spare = new NodeArena(capacity);
+    }
+
+    // Starts a new tree with Ms Pac-Man at the given node
+    void reset(Maze maze, CorridorTable corridors, PillModel pillModel, int index, MOVE lastMove) {
+        this.maze = maze;
+        this.corridors = corridors;
+        this.pillModel = pillModel;
+        arena.clear();
+        root = arena.allocate(1);
+        arena.parent[root] = NodeArena.NONE;
+        arena.location[root] = index;
+        arena.move[root] = (byte) lastMove.ordinal();
+        arena.depth[root] = 0;
+    }
+
+    /*
+     * Makes the expanded child of the root where Ms Pac-Man now is the root, dropping its siblings. The subtree
+     * moves one step up: depths drop by one, the ghost penalties of the nodes are recomputed from the predictions
+     * of the new tick at their new depths, and the penalties in the accumulated values, discounted from the old
+     * root, are rebased on the new one. The pills eaten are not discounted and stay as they are. Returns false,
+     * leaving the tree as it was, if there is no such child.
+     */
+    boolean reroot(Maze maze, PillModel pillModel, int index, MOVE lastMove) {
+        if (root == NodeArena.NONE || maze != this.maze) {
+            return false;
+        }
+        int child = findChild(root, index, lastMove);
+        if (child == NodeArena.NONE) {
+            return false;
+        }
+
+        this.pillModel = pillModel;
+        spare.clear();
+        int newRoot = spare.allocate(1);
+        copy(child, newRoot, NodeArena.NONE);
+        spare.rawScore[newRoot] = 0;
+
+        NodeArena old = arena;
+        arena = spare;
+        spare = old;
+        root = newRoot;
+        return true;
+    }
+
+    private int findChild(int node, int index, MOVE lastMove) {
+        int first = arena.firstChild.get(node);
+        if (first < 0) {
+            return NodeArena.NONE;
+        }
+        for (int child = first; child < first + arena.childCount[node]; child++) {
+            if (arena.expanded.get(child) == 1 && arena.location[child] == index && arena.move[child] == lastMove.ordinal()) {
+                return child;
+            }
+        }
+        return NodeArena.NONE;
+    }
+
+    // Copies a node and its subtree from the arena into the spare one, one step up
+    private void copy(int from, int to, int parentTo) {
+        NodeArena source = arena;
+        NodeArena target = spare;
+        int depth = source.depth[from] - 1;
+        target.parent[to] = parentTo;
+        target.location[to] = source.location[from];
+        target.move[to] = source.move[from];
+        target.depth[to] = depth;
+        target.rawScore[to] = -mctsPacMan.getDanger()[depth][source.location[from]];
+        double penalty = source.getPenalty(from);
+        target.setValue(to, source.getValue(from) + penalty * (1 / MCTSPacMan.DISCOUNT_FACTOR - 1));
+        target.setPenalty(to, penalty / MCTSPacMan.DISCOUNT_FACTOR);
+        target.visits.set(to, source.visits.get(from));
+
+        int first = source.firstChild.get(from);
+        if (first < 0) {
+            return;
+        }
+        int count = source.childCount[from];
+        // the subtree is smaller than the arena it came from, so this cannot fail
+        int block = target.allocate(count);
+        for (int k = 0; k < count; k++) {
+            if (source.expanded.get(first + k) == 1) {
+                copy(first + k, block + k, to);
+                target.expanded.set(block + k, 1);
+            } else {
+                target.parent[block + k] = to;
+                target.location[block + k] = source.location[first + k];
+                target.move[block + k] = source.move[first + k];
+                target.depth[block + k] = depth + 1;
+            }
+        }
+        target.childCount[to] = (byte) count;
+        target.expandedChildren.set(to, source.expandedChildren.get(from));
+        target.firstChild.set(to, block);
+    }
+
+    /*
+     * Descends to a node to roll out from. With virtual loss every node entered counts as visited and lost
+     * until the rollout is backed up, which steers concurrent workers to other parts of the tree.
+     */
+    int select(Worker worker, boolean virtualLoss) {
+        int current = root;
+
+        while (arena.depth[current] < mctsPacMan.getTreeLimit()) {
+            int count = children(current);
+            // the arena is full or another worker is creating the children
+            if (count == 0) return current;
+
+            if (arena.expandedChildren.get(current) == count) {
+                current = selectBestChild(current, worker);
+                if (virtualLoss) addVirtualLoss(current);
+            } else {
+                int child = expand(current, worker);
+                // another worker expanded the last child first
+                if (child == NodeArena.NONE) continue;
+                if (virtualLoss) addVirtualLoss(child);
+                return child;
+            }
+        }
+        return current;
+    }
+
+    // Creates the block of children of a node if it has none yet, and returns their number, or 0 if there are none
+    private int children(int node) {
+        int first = arena.firstChild.get(node);
+        if (first >= 0) return arena.childCount[node];
+        if (first == NodeArena.PENDING || !arena.firstChild.compareAndSet(node, NodeArena.NONE, NodeArena.PENDING)) {
+            return arena.firstChild.get(node) >= 0 ? arena.childCount[node] : 0;
+        }
+
+        Node mazeNode = maze.graph[arena.location[node]];
+        MOVE[] moves = mazeNode.allPossibleMoves.get(MOVES[arena.move[node]]);
+        int block = arena.allocate(moves.length);
+        if (block == NodeArena.NONE) {
+            arena.firstChild.set(node, NodeArena.NONE);
+            return 0;
+        }
+        for (int k = 0; k < moves.length; k++) {
+            arena.parent[block + k] = node;
+            arena.location[block + k] = mazeNode.neighbourhood.get(moves[k]);
+            arena.move[block + k] = (byte) moves[k].ordinal();
+            arena.depth[block + k] = arena.depth[node] + 1;
+        }
+        arena.childCount[node] = (byte) moves.length;
+        arena.firstChild.set(node, block);
+        return moves.length;
+    }
+
+    // Expands a random unexpanded child; returns NONE if all have been claimed meanwhile
+    private int expand(int node, Worker worker) {
+        int first = arena.firstChild.get(node);
+        int count = arena.childCount[node];
+        while (true) {
+            int bestAction = -1;
+            double bestValue = -Double.MAX_VALUE;
+            for (int i = 0; i < count; i++) {
+                double x = worker.random.nextDouble();
+                if (arena.expanded.get(first + i) == 0 && x > bestValue) {
+                    bestAction = i;
+                    bestValue = x;
+                }
+            }
+            if (bestAction == -1) return NodeArena.NONE;
+
+            int child = first + bestAction;
+            if (arena.expanded.compareAndSet(child, 0, 1)) {
+                arena.rawScore[child] = -mctsPacMan.getDanger()[arena.depth[child]][arena.location[child]];
+                arena.expandedChildren.incrementAndGet(node);
+                return child;
+            }
+        }
+    }
+
+    private int selectBestChild(int node, Worker worker) {
+        int first = arena.firstChild.get(node);
+        int count = arena.childCount[node];
+        double parentVisits = arena.visits.get(node);
+        int selected = first;
+        double bestValue = -Double.MAX_VALUE;
+        for (int child = first; child < first + count; child++) {
+            int visits = arena.visits.get(child);
+            double childValue = arena.getValue(child) / (visits + EPSILON) +
+                    Math.sqrt(2 * Math.log(parentVisits + 1) / (visits + EPSILON)) +
+                    worker.random.nextDouble() * EPSILON;
+            if (childValue > bestValue) {
+                bestValue = childValue;
+                selected = child;
+            }
+        }
+        return selected;
+    }
+
+    private void addVirtualLoss(int node) {
+        arena.visits.incrementAndGet(node);
+        arena.addValue(node, -MCTSPacMan.DEATH_PENALTY);
+    }
+
+    /*
+     * Plays random moves from the node to the maximum depth. A move is drawn at the start and at every junction;
+     * in between, the corridor is followed to the next junction. The ghost penalty still comes node by node, as it
+     * depends on the depth, but the pills of a corridor walked in full and not visited yet are taken in one go.
+     * Leaves the ghost penalty part of the value in the worker.
+     */
+    double rollout(int node, Worker worker) {
+        // the pills on the path from the root have been eaten
+        worker.beginRollout(corridors);
+        for (int n = node; n != NodeArena.NONE; n = arena.parent[n]) {
+            worker.eat(arena.location[n], corridors.getCorridor(arena.location[n]));
+        }
+        return rollout(mctsPacMan, maze, corridors, pillModel, worker,
+                arena.depth[node], arena.rawScore[node], arena.location[node], MOVES[arena.move[node]]);
+    }
+
+    /*
+     * The rollout proper, from Ms Pac-Man's location at the given depth, once the worker has begun the rollout
+     * and eaten the pills of the path to it. Shared with SearchDag.
+     */
+    static double rollout(MCTSPacMan mctsPacMan, Maze maze, CorridorTable corridors, PillModel pillModel, Worker worker,
+                          int depth, double score, int location, MOVE lastMove) {
+        int[] segmentNodes = corridors.getSegmentNodes();
+        float[][] danger = mctsPacMan.getDanger();
+        int maxDepth = mctsPacMan.getMaxDepth();
+        int pillsEaten = 0;
+        while (depth < maxDepth) {
+            MOVE[] moves = maze.graph[location].allPossibleMoves.get(lastMove);
+            int segment = corridors.getSegment(location, moves[worker.random.nextInt(moves.length)]);
+            int offset = corridors.getSegmentOffset(segment);
+            int length = corridors.getSegmentLength(segment);
+            int steps = Math.min(length, maxDepth - depth);
+
+            // A whole corridor, entered at one junction and left at the other
+            int corridor = (steps == length && corridors.isJunction(location))
+                    ? corridors.getCorridor(segmentNodes[offset]) : CorridorTable.NO_CORRIDOR;
+            boolean inBulk = false;
+            if (corridor != CorridorTable.NO_CORRIDOR) {
+                if (worker.isUntouched(corridor)) {
+                    pillsEaten += pillModel.getCorridorPills(corridor);
+                    inBulk = true;
+                } else {
+                    inBulk = worker.isCleared(corridor);
+                }
+            }
+
+            for (int k = 0; k < steps; k++) {
+                location = segmentNodes[offset + k];
+                if ((!inBulk || k == length - 1) && pillModel.hasPill(location)
+                        && worker.eat(location, corridors.getCorridor(location))) {
+                    pillsEaten++;
+                }
+                // Penalty for ghosts
+                score -= danger[depth][location];
+                depth++;
+            }
+            if (corridor != CorridorTable.NO_CORRIDOR) worker.clear(corridor);
+            lastMove = corridors.getSegmentLastMove(segment);
+        }
+        worker.rolloutPenalty = score;
+        return score + pillsEaten * 10;
+    }
+
+    void updateValues(int node, double value, double penalty, boolean virtualLoss) {
+        int current = node;
+        while (arena.parent[current] != NodeArena.NONE) {
+            if (virtualLoss) {
+                // the visit was counted on the way down, together with the loss that is now taken back
+                arena.addValue(current, value + MCTSPacMan.DEATH_PENALTY);
+            } else {
+                arena.addValue(current, value);
+                arena.visits.incrementAndGet(current);
+            }
+            arena.addPenalty(current, penalty);
+            current = arena.parent[current];
+        }
+        // Root - update visits
+        arena.visits.incrementAndGet(current);
+    }
+
+    // Drops the tree, so that the next tick starts a new one
+    void clear() {
+        arena.clear();
+        root = NodeArena.NONE;
+    }
+
+    int getRootVisits() {
+        return arena.visits.get(root);
+    }
+
+    /**
+     * @return The number of nodes in the tree, expanded or not
+     */
+    int size() {
+        return arena.size();
+    }
+
+    /*
+     * Adds the visits and total values of the root's expanded children to the arrays, indexed by the ordinal of
+     * the move to the child.
+     */
+    void addRootStatistics(long[] visits, double[] values) {
+        int first = arena.firstChild.get(root);
+        if (first < 0) return;
+        for (int child = first; child < first + arena.childCount[root]; child++) {
+            if (arena.expanded.get(child) == 1) {
+                visits[arena.move[child]] += arena.visits.get(child);
+                values[arena.move[child]] += arena.getValue(child);
+            }
+        }
+    }
+
+    // The move to the expanded child of the root with the highest total value, or null if there is none
+    MOVE getBestMove() {
+        int first = arena.firstChild.get(root);
+        if (first < 0) return null;
+        int best = NodeArena.NONE;
+        double bestValue = -Double.MAX_VALUE;
+        for (int child = first; child < first + arena.childCount[root]; child++) {
+            if (arena.expanded.get(child) == 1 && arena.getValue(child) > bestValue) {
+                best = child;
+                bestValue = arena.getValue(child);
+            }
+        }
+        return (best == NodeArena.NONE) ? null : MOVES[arena.move[best]];
+    }
+}
@@ -0,0 +1,105 @@
+package pacman.controllers.examples.po.mcts;
+
+import pacman.game.internal.CorridorTable;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+
+/*
+ * The state of one search thread: its random number generator, the result of its last rollout and the pills eaten
+ * during it. A pill counts as eaten when its node is stamped with the current rollout's number, so starting a
+ * rollout takes no clearing. Corridors are stamped too: as touched when one of their nodes is eaten, and as cleared
+ * when they have been walked from end to end.
+ */
+class Worker {
+    final SplittableRandom random;
+    double rolloutPenalty;
+    int iterations;
+    private int[] eaten = new int[0];
+    private int[] touched = new int[0];
+    private int[] cleared = new int[0];
+    private int rollout;
+
+    Worker(SplittableRandom random) {
+        this.random = random;
+    }
+
+    void search(SearchTree tree, long endTime, boolean virtualLoss) {
+        iterations = 0;
+        while (System.currentTimeMillis() < endTime) {
+            int current = tree.select(this, virtualLoss);
+            double value = tree.rollout(current, this);
+            tree.updateValues(current, value, rolloutPenalty, virtualLoss);
+            iterations++;
+        }
+    }
+
+    Callable<Void> task(final SearchTree tree, final long endTime, final boolean virtualLoss) {
+        return new Callable<Void>() {
+            @Override
+            public Void call() {
+                search(tree, endTime, virtualLoss);
+                return null;
+            }
+        };
+    }
+
+    void search(SearchDag dag, long endTime) {
+        iterations = 0;
+        while (System.currentTimeMillis() < endTime) {
+            int current = dag.select(this);
+            double value = dag.rollout(current, this);
+            dag.updateValues(value);
+            iterations++;
+        }
+    }
+
+    Callable<Void> task(final SearchDag dag, final long endTime) {
+        return new Callable<Void>() {
+            @Override
+            public Void call() {
+                search(dag, endTime);
+                return null;
+            }
+        };
+    }
+
+    void beginRollout(CorridorTable corridors) {
+        if (eaten.length < corridors.getNumberOfNodes() || touched.length < corridors.getNumberOfCorridors()) {
+            eaten = new int[corridors.getNumberOfNodes()];
+            touched = new int[corridors.getNumberOfCorridors()];
+            cleared = new int[corridors.getNumberOfCorridors()];
+            rollout = 0;
+        }
+        if (++rollout == 0) {
+            Arrays.fill(eaten, 0);
+            Arrays.fill(touched, 0);
+            Arrays.fill(cleared, 0);
+            rollout = 1;
+        }
+    }
+
+    // Returns whether the node had not been visited yet in this rollout
+    boolean eat(int index, int corridor) {
+        if (eaten[index] == rollout) return false;
+        eaten[index] = rollout;
+        if (corridor == CorridorTable.NO_CORRIDOR) return true;
+        if (cleared[corridor] == rollout) return false;
+        touched[corridor] = rollout;
+        return true;
+    }
+
+    // Whether none of the corridor's nodes has been visited yet in this rollout
+    boolean isUntouched(int corridor) {
+        return touched[corridor] != rollout && cleared[corridor] != rollout;
+    }
+
+    boolean isCleared(int corridor) {
+        return cleared[corridor] == rollout;
+    }
+
+    void clear(int corridor) {
+        cleared[corridor] = rollout;
+    }
+}
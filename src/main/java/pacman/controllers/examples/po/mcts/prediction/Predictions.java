@@ -0,0 +1,66 @@
+package pacman.controllers.examples.po.mcts.prediction;
+
+import java.util.EnumMap;
+import java.util.List;
+
+import static pacman.game.Constants.GHOST;
+import static pacman.game.Constants.MOVE;
+
+/**
+ * A belief about where the ghosts are, as MCTSPacMan keeps one per tick of its lookahead. Implementations differ
+ * in how they store it; a prediction can only be copied from one of its own kind made for the same maze.
+ */
+public interface Predictions {
+
+    /**
+     * The ghost has been seen at the node.
+     */
+    void observe(GHOST ghost, int index, MOVE lastMoveMade);
+
+    /**
+     * The node is visible and the ghost is not there.
+     */
+    void observeNotPresent(GHOST ghost, int index);
+
+    /**
+     * Moves the belief one tick on.
+     */
+    void update();
+
+    /**
+     * Forgets everything about the ghosts, as in a new prediction.
+     */
+    void reset();
+
+    /**
+     * @param index The node
+     * @return The sum over the ghosts of the probability that the ghost is at the node
+     */
+    double calculate(int index);
+
+    /**
+     * Calculates the probability of a ghost at every node at once, as calculate(index) would one by one.
+     *
+     * @param sums Receives the sum of the ghosts' probabilities at each node; at least as long as the maze
+     */
+    void calculate(double[] sums);
+
+    /**
+     * @return Where the ghost may be, with the probabilities
+     */
+    List<GhostLocation> getGhostLocations(GHOST ghost);
+
+    /**
+     * @return A location for each ghost, drawn from the belief
+     */
+    EnumMap<GHOST, GhostLocation> sampleLocations();
+
+    Predictions copy();
+
+    /**
+     * Makes this a copy of another prediction, reusing this one's storage.
+     *
+     * @param other A prediction of the same kind, for the same maze
+     */
+    void copyFrom(Predictions other);
+}
@@ -0,0 +1,94 @@
+package pacman.controllers.examples.po.mcts.prediction.fast;
+
+import pacman.game.internal.Maze;
+import pacman.game.internal.Node;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import static pacman.game.Constants.MOVE;
+
+/*
+ * The graph of a maze in flat primitive arrays, for propagating beliefs without EnumMap lookups or boxing. Each
+ * node has DEGREE slots, in MOVE order, for the nodes it leads to, and DEGREE slots for the edges that lead into
+ * it, sorted by source node and then by move, the order in which GhostPredictionsFast.update() visits them. Moves
+ * are given by their ordinals. Unused slots hold -1. Built once per maze and shared.
+ */
+final class BeliefAdjacency {
+    static final int DEGREE = 4;
+
+    private static final Map<Maze, BeliefAdjacency> CACHE = new IdentityHashMap<>();
+    private static final MOVE[] MOVES = MOVE.values();
+
+    final int mazeSize;
+    // Slot node * DEGREE + move ordinal: the neighbour in that direction
+    final int[] neighbours;
+    // The number of moves from a node that do not reverse, which share its probability
+    final double[] branches;
+    // Slot node * DEGREE + k: the k-th edge into the node, its source, its move and the reverse of the move
+    final int[] inSource;
+    final int[] inMove;
+    final int[] inReverse;
+    // The same edges laid out by k, so that slot k * mazeSize + node holds the k-th edge into the node and
+    // consecutive nodes can be loaded as a vector, with the branches of the source (1 in unused slots)
+    final int[] inSourceByEdge;
+    final int[] inMoveByEdge;
+    final int[] inReverseByEdge;
+    final double[] inBranchesByEdge;
+
+    static synchronized BeliefAdjacency of(Maze maze) {
+        BeliefAdjacency adjacency = CACHE.get(maze);
+        if (adjacency == null) {
+            adjacency = new BeliefAdjacency(maze);
+            CACHE.put(maze, adjacency);
+        }
+        return adjacency;
+    }
+
+    private BeliefAdjacency(Maze maze) {
+        mazeSize = maze.graph.length;
+        neighbours = new int[mazeSize * DEGREE];
+        branches = new double[mazeSize];
+        inSource = new int[mazeSize * DEGREE];
+        inMove = new int[mazeSize * DEGREE];
+        inReverse = new int[mazeSize * DEGREE];
+        Arrays.fill(neighbours, -1);
+        Arrays.fill(inSource, -1);
+        Arrays.fill(inMove, -1);
+        Arrays.fill(inReverse, -1);
+
+        int[] inCount = new int[mazeSize];
+        // Sources in increasing order, and each source's moves in MOVE order, so the edges come out sorted
+        for (int source = 0; source < mazeSize; source++) {
+            Node node = maze.graph[source];
+            branches[source] = node.numNeighbouringNodes - 1;
+            for (int m = 0; m < DEGREE; m++) {
+                Integer target = node.neighbourhood.get(MOVES[m]);
+                if (target == null) continue;
+                neighbours[source * DEGREE + m] = target;
+                if (inCount[target] == DEGREE) {
+                    throw new IllegalStateException("Node " + target + " has more than " + DEGREE + " edges into it");
+                }
+                int slot = target * DEGREE + inCount[target]++;
+                inSource[slot] = source;
+                inMove[slot] = m;
+                inReverse[slot] = MOVES[m].opposite().ordinal();
+            }
+        }
+
+        inSourceByEdge = new int[mazeSize * DEGREE];
+        inMoveByEdge = new int[mazeSize * DEGREE];
+        inReverseByEdge = new int[mazeSize * DEGREE];
+        inBranchesByEdge = new double[mazeSize * DEGREE];
+        for (int node = 0; node < mazeSize; node++) {
+            for (int k = 0; k < DEGREE; k++) {
+                int slot = node * DEGREE + k;
+                inSourceByEdge[k * mazeSize + node] = inSource[slot];
+                inMoveByEdge[k * mazeSize + node] = inMove[slot];
+                inReverseByEdge[k * mazeSize + node] = inReverse[slot];
+                inBranchesByEdge[k * mazeSize + node] = (inSource[slot] == -1) ? 1 : branches[inSource[slot]];
+            }
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package pacman.controllers.examples.po.mcts.prediction.fast;
+
+/*
+ * How GhostPredictionsFast walks the whole of a ghost's slice of the belief: the pull propagation of update() and
+ * the danger sum of calculate(double[]). A slice is mazeSize consecutive entries of the probability and move
+ * arrays from start, and words consecutive words of the active bits from startWord. Moves are ordinals, NO_MOVE
+ * where the ghost cannot be. Every kernel gives exactly the results of ScalarDenseKernel.
+ */
+interface DenseKernel {
+    int NO_MOVE = -1;
+
+    /*
+     * Writes the ghost's belief one node on into the back arrays, whose slice must be empty: every probability 0
+     * and every move NO_MOVE.
+     */
+    void propagate(BeliefAdjacency adjacency, double[] probabilities, int[] moves, double scale,
+                   double[] backProbabilities, int[] backMoves, long[] backActive, int start, int startWord);
+
+    // Adds the ghost's probabilities, times the scale, to the sums of their nodes
+    void accumulate(double[] sums, double[] probabilities, int start, int mazeSize, double scale);
+}
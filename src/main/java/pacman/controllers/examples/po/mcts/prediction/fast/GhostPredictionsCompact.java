@@ -0,0 +1,230 @@
+package pacman.controllers.examples.po.mcts.prediction.fast;
+
+import pacman.controllers.examples.po.mcts.prediction.GhostLocation;
+import pacman.controllers.examples.po.mcts.prediction.Predictions;
+import pacman.game.internal.Maze;
+import pacman.game.internal.Node;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+
+import static pacman.game.Constants.GHOST;
+import static pacman.game.Constants.MOVE;
+
+/**
+ * The belief of GhostPredictionsFast in a third of the memory: probabilities are floats and moves are stored as
+ * their ordinals in bytes, 5 bytes per node and ghost instead of 12 to 16, which is also what copyFrom has to
+ * move. Arithmetic is still done in doubles, so the predictions match GhostPredictionsFast to float precision.
+ * <p>
+ * A move is only meaningful where the ghost's probability is not zero, so clearing a node leaves its move as it
+ * was.
+ */
+public class GhostPredictionsCompact implements Predictions {
+    private static final int numGhosts = GHOST.values().length;
+    private static final MOVE[] MOVES = MOVE.values();
+
+    // First mazeSize indices are for ghost ordinal 0 etc, as in GhostPredictionsFast
+    private float[] probabilities;
+    private float[] backProbabilities;
+    private byte[] moves;
+    private byte[] backMoves;
+    // The nodes each ghost may be at, one bit per node; the words of a ghost start at ordinal * words
+    private long[] active;
+    private long[] backActive;
+    // Pending renormalisation of each ghost's probabilities, applied on reading and folded in by update
+    private final double[] scale = new double[numGhosts];
+
+    private final Maze maze;
+    private final int mazeSize;
+    private final int words;
+
+    public GhostPredictionsCompact(Maze maze) {
+        this.maze = maze;
+        mazeSize = maze.graph.length;
+        words = (mazeSize + 63) >>> 6;
+        probabilities = new float[mazeSize * numGhosts];
+        backProbabilities = new float[mazeSize * numGhosts];
+        moves = new byte[mazeSize * numGhosts];
+        backMoves = new byte[mazeSize * numGhosts];
+        active = new long[words * numGhosts];
+        backActive = new long[words * numGhosts];
+        Arrays.fill(scale, 1.0d);
+    }
+
+    @Override
+    public void observe(GHOST ghost, int index, MOVE lastMoveMade) {
+        int arrayIndex = ghost.ordinal() * mazeSize + index;
+        clear(ghost.ordinal());
+        probabilities[arrayIndex] = 1.0f;
+        moves[arrayIndex] = (byte) lastMoveMade.ordinal();
+        active[ghost.ordinal() * words + (index >>> 6)] |= 1L << index;
+        scale[ghost.ordinal()] = 1.0d;
+    }
+
+    @Override
+    public void observeNotPresent(GHOST ghost, int index) {
+        int arrayIndex = ghost.ordinal() * mazeSize + index;
+        double probabilityAdjustment = 1 - probabilities[arrayIndex] * scale[ghost.ordinal()];
+        probabilities[arrayIndex] = 0;
+        active[ghost.ordinal() * words + (index >>> 6)] &= ~(1L << index);
+        // Nothing is left to renormalise if the ghost could only have been here
+        if (probabilityAdjustment > 0) {
+            scale[ghost.ordinal()] /= probabilityAdjustment;
+        }
+    }
+
+    // The same propagation as GhostPredictionsFast.update()
+    @Override
+    public void update() {
+        for (int ghost = 0; ghost < numGhosts; ghost++) {
+            int startIndex = mazeSize * ghost;
+            int startWord = words * ghost;
+            double ghostScale = scale[ghost];
+            for (int word = 0; word < words; word++) {
+                for (long bits = active[startWord + word]; bits != 0; bits &= bits - 1) {
+                    int node = (word << 6) + Long.numberOfTrailingZeros(bits);
+                    int i = startIndex + node;
+                    Node currentNode = maze.graph[node];
+                    float probability = (float) (probabilities[i] * ghostScale / (currentNode.numNeighbouringNodes - 1));
+                    MOVE back = MOVES[moves[i]].opposite();
+                    for (MOVE move : MOVES) {
+                        if (move == back) continue;
+                        Integer neighbour = currentNode.neighbourhood.get(move);
+                        if (neighbour != null) {
+                            int index = neighbour;
+                            // If we haven't already written to there or what we wrote was less probable
+                            if (backProbabilities[startIndex + index] <= probabilities[startIndex + index] * ghostScale) {
+                                backProbabilities[startIndex + index] = probability;
+                                backMoves[startIndex + index] = (byte) move.ordinal();
+                                backActive[startWord + (index >>> 6)] |= 1L << index;
+                            }
+                        }
+                    }
+                }
+            }
+            clear(ghost);
+            scale[ghost] = 1.0d;
+        }
+
+        float[] probabilitiesSwap = probabilities;
+        probabilities = backProbabilities;
+        backProbabilities = probabilitiesSwap;
+
+        byte[] movesSwap = moves;
+        moves = backMoves;
+        backMoves = movesSwap;
+
+        long[] activeSwap = active;
+        active = backActive;
+        backActive = activeSwap;
+    }
+
+    @Override
+    public void reset() {
+        for (int ghost = 0; ghost < numGhosts; ghost++) {
+            clear(ghost);
+            scale[ghost] = 1.0d;
+        }
+    }
+
+    private void clear(int ghost) {
+        int startIndex = mazeSize * ghost;
+        int startWord = words * ghost;
+        for (int word = 0; word < words; word++) {
+            for (long bits = active[startWord + word]; bits != 0; bits &= bits - 1) {
+                probabilities[startIndex + (word << 6) + Long.numberOfTrailingZeros(bits)] = 0;
+            }
+            active[startWord + word] = 0;
+        }
+    }
+
+    @Override
+    public double calculate(int index) {
+        // as in GhostPredictionsFast, an index past the maze would read another ghost's probabilities
+        if (index < 0 || index >= mazeSize) {
+            throw new IndexOutOfBoundsException("Index " + index + " is not in a maze of " + mazeSize + " nodes");
+        }
+        double sum = 0.0d;
+        for (int ghost = 0; ghost < numGhosts; ghost++) {
+            sum += probabilities[(mazeSize * ghost) + index] * scale[ghost];
+        }
+        return sum;
+    }
+
+    @Override
+    public void calculate(double[] sums) {
+        Arrays.fill(sums, 0, mazeSize, 0.0d);
+        for (int ghost = 0; ghost < numGhosts; ghost++) {
+            int startIndex = mazeSize * ghost;
+            int startWord = words * ghost;
+            for (int word = 0; word < words; word++) {
+                for (long bits = active[startWord + word]; bits != 0; bits &= bits - 1) {
+                    int node = (word << 6) + Long.numberOfTrailingZeros(bits);
+                    sums[node] += probabilities[startIndex + node] * scale[ghost];
+                }
+            }
+        }
+    }
+
+    @Override
+    public List<GhostLocation> getGhostLocations(GHOST ghost) {
+        ArrayList<GhostLocation> locations = new ArrayList<>();
+        int ordinal = ghost.ordinal();
+        for (int word = 0; word < words; word++) {
+            for (long bits = active[words * ordinal + word]; bits != 0; bits &= bits - 1) {
+                int node = (word << 6) + Long.numberOfTrailingZeros(bits);
+                int i = mazeSize * ordinal + node;
+                locations.add(new GhostLocation(node, MOVES[moves[i]], probabilities[i] * scale[ordinal]));
+            }
+        }
+        return locations;
+    }
+
+    @Override
+    public EnumMap<GHOST, GhostLocation> sampleLocations() {
+        EnumMap<GHOST, GhostLocation> results = new EnumMap<GHOST, GhostLocation>(GHOST.class);
+        for (GHOST ghost : GHOST.values()) {
+            double x = Math.random();
+            double sum = 0.0d;
+            for (GhostLocation location : getGhostLocations(ghost)) {
+                sum += location.getProbability();
+                if (sum >= x) {
+                    results.put(ghost, location);
+                    break;
+                }
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public GhostPredictionsCompact copy() {
+        GhostPredictionsCompact other = new GhostPredictionsCompact(maze);
+        other.copyFrom(this);
+        return other;
+    }
+
+    @Override
+    public void copyFrom(Predictions predictions) {
+        if (!(predictions instanceof GhostPredictionsCompact) || ((GhostPredictionsCompact) predictions).maze != maze) {
+            throw new IllegalArgumentException("Predictions are of another kind or for another maze");
+        }
+        GhostPredictionsCompact other = (GhostPredictionsCompact) predictions;
+        for (int ghost = 0; ghost < numGhosts; ghost++) {
+            clear(ghost);
+            int startIndex = mazeSize * ghost;
+            int startWord = words * ghost;
+            for (int word = 0; word < words; word++) {
+                for (long bits = other.active[startWord + word]; bits != 0; bits &= bits - 1) {
+                    int i = startIndex + (word << 6) + Long.numberOfTrailingZeros(bits);
+                    probabilities[i] = other.probabilities[i];
+                    moves[i] = other.moves[i];
+                }
+            }
+            System.arraycopy(other.active, startWord, active, startWord, words);
+            scale[ghost] = other.scale[ghost];
+        }
+    }
+}
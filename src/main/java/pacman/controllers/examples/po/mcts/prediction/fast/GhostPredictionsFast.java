@@ -1,8 +1,8 @@
 package pacman.controllers.examples.po.mcts.prediction.fast;
 
 import pacman.controllers.examples.po.mcts.prediction.GhostLocation;
+import pacman.controllers.examples.po.mcts.prediction.Predictions;
 import pacman.game.internal.Maze;
-import pacman.game.internal.Node;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -15,98 +15,268 @@ import static pacman.game.Constants.MOVE;
 /**
  * Created by Piers on 16/05/2016.
  */
-public class GhostPredictionsFast {
+public class GhostPredictionsFast implements Predictions {
+    /**
+     * How update() and calculate(double[]) walk the belief. All kernels give the same results.
+     */
+    public enum Kernel {
+        /**
+         * Pushes the probability of each node the ghost may be at to its neighbours: time in proportion to the
+         * support of the belief.
+         */
+        SPARSE,
+        /**
+         * Pulls into every node of the maze from the edges leading into it, in straight loops over flat arrays:
+         * time in proportion to the maze, with no bit scanning or scattered writes.
+         */
+        DENSE,
+        /**
+         * DENSE with the Vector API: several consecutive nodes at once, gathering the sources of their edges and
+         * choosing between them with lane masks. The kernel is only built on JDK 16 and later, and needs the
+         * jdk.incubator.vector module at run time (--add-modules jdk.incubator.vector); without it this is DENSE.
+         *
+         * @see #isVectorAvailable()
+         */
+        VECTOR,
+        /**
+         * VECTOR, or DENSE where it is not available, for a ghost that may be at more than one node in
+         * DENSE_FRACTION, SPARSE otherwise; the default.
+         */
+        AUTO
+    }
+
+    // AUTO walks a ghost densely once its support is above this fraction of the maze
+    private static final int DENSE_FRACTION = 8;
+    // The Vector API kernel, or null if it was not built or the module is missing
+    private static final DenseKernel VECTOR_KERNEL = loadVectorKernel();
+
     // First mazeSize indices are for ghost Ordinal 0 etc ...
     private double[] probabilities;
     private double[] backProbabilities;
-    private MOVE[] moves;
-    private MOVE[] backMoves;
+    // The ordinal of the last move at each node, DenseKernel.NO_MOVE where the ghost cannot be
+    private int[] moves;
+    private int[] backMoves;
+    // The nodes each ghost may be at, one bit per node; the words of a ghost start at ordinal * words. Everything
+    // is proportional to the number of these rather than to the size of the maze
+    private long[] active;
+    private long[] backActive;
+    // Pending renormalisation of each ghost's probabilities after observeNotPresent, applied on reading and
+    // folded in by update
+    private final double[] scale = new double[numGhosts];
 
     private Maze maze;
     private int mazeSize;
+    private final int words;
+    private final BeliefAdjacency adjacency;
+    private Kernel kernel = Kernel.AUTO;
     private static final int numGhosts = GHOST.values().length;
+    private static final MOVE[] MOVES = MOVE.values();
 
     public GhostPredictionsFast(Maze maze) {
         this.maze = maze;
         mazeSize = maze.graph.length;
+        words = (mazeSize + 63) >>> 6;
         probabilities = new double[mazeSize * numGhosts];
         backProbabilities = new double[mazeSize *numGhosts];
-        moves = new MOVE[mazeSize * numGhosts];
-        backMoves = new MOVE[mazeSize * numGhosts];
+        moves = new int[mazeSize * numGhosts];
+        backMoves = new int[mazeSize * numGhosts];
+        Arrays.fill(moves, DenseKernel.NO_MOVE);
+        Arrays.fill(backMoves, DenseKernel.NO_MOVE);
+        active = new long[words * numGhosts];
+        backActive = new long[words * numGhosts];
+        Arrays.fill(scale, 1.0d);
+        adjacency = BeliefAdjacency.of(maze);
+    }
+
+    public Kernel getKernel() {
+        return kernel;
+    }
+
+    public void setKernel(Kernel kernel) {
+        this.kernel = kernel;
+    }
+
+    /**
+     * @return Whether the VECTOR kernel can be used, rather than falling back on DENSE
+     */
+    public static boolean isVectorAvailable() {
+        return VECTOR_KERNEL != null;
+    }
+
+    // The kernel is compiled by the jdk16 profile only, and can only be loaded if the module has been added
+    private static DenseKernel loadVectorKernel() {
+        if (!ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) return null;
+        try {
+            Class<?> type = Class.forName(GhostPredictionsFast.class.getPackage().getName() + ".VectorDenseKernel");
+            return (DenseKernel) type.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
     }
 
     public void observe(GHOST ghost, int index, MOVE lastMoveMade) {
         int startIndex = (ghost.ordinal() * mazeSize);
         int arrayIndex = startIndex + index;
-        Arrays.fill(probabilities, startIndex, startIndex + mazeSize, 0);
-        Arrays.fill(moves, startIndex, startIndex + mazeSize, null);
+        clear(ghost.ordinal());
         probabilities[arrayIndex] = 1.0d;
-        moves[arrayIndex] = lastMoveMade;
+        moves[arrayIndex] = lastMoveMade.ordinal();
+        active[ghost.ordinal() * words + (index >>> 6)] |= 1L << index;
+        scale[ghost.ordinal()] = 1.0d;
     }
 
     public void observeNotPresent(GHOST ghost, int index) {
         int startIndex = (ghost.ordinal() * mazeSize);
         int arrayIndex = startIndex + index;
-        double probabilityAdjustment = (1 - probabilities[arrayIndex]);
+        double probabilityAdjustment = (1 - probabilities[arrayIndex] * scale[ghost.ordinal()]);
         probabilities[arrayIndex] = 0;
-        moves[arrayIndex] = null;
-        for (int i = startIndex; i < startIndex + mazeSize; i++) {
-            probabilities[i] /= probabilityAdjustment;
+        moves[arrayIndex] = DenseKernel.NO_MOVE;
+        active[ghost.ordinal() * words + (index >>> 6)] &= ~(1L << index);
+        // Nothing is left to renormalise if the ghost could only have been here
+        if (probabilityAdjustment > 0) {
+            scale[ghost.ordinal()] /= probabilityAdjustment;
         }
     }
 
+    /*
+     * Moves every ghost one node on, spreading each node's probability evenly over the moves that do not reverse.
+     * Nodes are visited in index order, as where two of them lead to the same node the outcome depends on it.
+     */
     public void update() {
-        for(int ghost = 0; ghost < numGhosts; ghost++) {
-            for (int i = (mazeSize * ghost); i < (mazeSize * (ghost + 1)); i++) {
-                if (probabilities[i] > 0) {
-                    Node currentNode = maze.graph[i % mazeSize];
-                    int numberNodes = currentNode.numNeighbouringNodes;
-                    double probability = probabilities[i] / (numberNodes - 1);
-                    MOVE back = moves[i].opposite();
-                    for (MOVE move : MOVE.values()) {
-                        if (move == back) continue;
-                        if (currentNode.neighbourhood.containsKey(move)) {
-                            int index = currentNode.neighbourhood.get(move);
-                            // If we haven't already written to there or what we wrote was less probable
-                            if (backProbabilities[(mazeSize * ghost) + index] <= probabilities[(mazeSize * ghost) + index]) {
-                                backProbabilities[(mazeSize * ghost) + index] = probability;
-                                backMoves[(mazeSize * ghost) + index] = move;
-                            }
-                        }
+        for (int ghost = 0; ghost < numGhosts; ghost++) {
+            if (isDense(support(ghost))) {
+                denseKernel().propagate(adjacency, probabilities, moves, scale[ghost], backProbabilities, backMoves,
+                        backActive, mazeSize * ghost, words * ghost);
+            } else {
+                propagateSparse(ghost);
+            }
+            clear(ghost);
+            scale[ghost] = 1.0d;
+        }
+
+        double[] probabilitiesSwap = probabilities;
+        probabilities = backProbabilities;
+        backProbabilities = probabilitiesSwap;
+
+        int[] movesSwap = moves;
+        moves = backMoves;
+        backMoves = movesSwap;
+
+        long[] activeSwap = active;
+        active = backActive;
+        backActive = activeSwap;
+    }
+
+    private void propagateSparse(int ghost) {
+        int startIndex = mazeSize * ghost;
+        int startWord = words * ghost;
+        double ghostScale = scale[ghost];
+        int[] neighbours = adjacency.neighbours;
+        for (int word = 0; word < words; word++) {
+            for (long bits = active[startWord + word]; bits != 0; bits &= bits - 1) {
+                int node = (word << 6) + Long.numberOfTrailingZeros(bits);
+                int i = startIndex + node;
+                double probability = probabilities[i] * ghostScale / adjacency.branches[node];
+                int back = MOVES[moves[i]].opposite().ordinal();
+                for (int m = 0; m < BeliefAdjacency.DEGREE; m++) {
+                    int index = neighbours[node * BeliefAdjacency.DEGREE + m];
+                    if (index == -1 || m == back) continue;
+                    // If we haven't already written to there or what we wrote was less probable
+                    if (backProbabilities[startIndex + index] <= probabilities[startIndex + index] * ghostScale) {
+                        backProbabilities[startIndex + index] = probability;
+                        backMoves[startIndex + index] = m;
+                        backActive[startWord + (index >>> 6)] |= 1L << index;
                     }
                 }
             }
         }
+    }
+
+    // The number of nodes the ghost may be at
+    private int support(int ghost) {
+        int count = 0;
+        for (int word = words * ghost; word < words * (ghost + 1); word++) {
+            count += Long.bitCount(active[word]);
+        }
+        return count;
+    }
+
+    private boolean isDense(int support) {
+        return kernel == Kernel.DENSE || kernel == Kernel.VECTOR
+                || (kernel == Kernel.AUTO && support * DENSE_FRACTION > mazeSize);
+    }
+
+    private DenseKernel denseKernel() {
+        return (kernel == Kernel.DENSE || VECTOR_KERNEL == null) ? ScalarDenseKernel.INSTANCE : VECTOR_KERNEL;
+    }
 
-        System.arraycopy(backProbabilities, 0, probabilities, 0, probabilities.length);
-        Arrays.fill(backProbabilities, 0.0d);
+    @Override
+    public void reset() {
+        for (int ghost = 0; ghost < numGhosts; ghost++) {
+            clear(ghost);
+            scale[ghost] = 1.0d;
+        }
+    }
 
-        System.arraycopy(backMoves, 0, moves, 0, moves.length);
-        Arrays.fill(backMoves, null);
+    // Zeroes the probabilities of a ghost, touching only the nodes it may be at
+    private void clear(int ghost) {
+        int startIndex = mazeSize * ghost;
+        int startWord = words * ghost;
+        for (int word = 0; word < words; word++) {
+            for (long bits = active[startWord + word]; bits != 0; bits &= bits - 1) {
+                int i = startIndex + (word << 6) + Long.numberOfTrailingZeros(bits);
+                probabilities[i] = 0;
+                moves[i] = DenseKernel.NO_MOVE;
+            }
+            active[startWord + word] = 0;
+        }
     }
 
     public final double calculate(int index) {
-        if(index >= mazeSize) System.out.println("Index was too large: " + index);
+        // the probabilities of all ghosts share one array, so an index past the maze would read another ghost's
+        if (index < 0 || index >= mazeSize) {
+            throw new IndexOutOfBoundsException("Index " + index + " is not in a maze of " + mazeSize + " nodes");
+        }
         double sum = 0.0d;
         for(int ghost = 0; ghost < numGhosts; ghost++){
-            sum += probabilities[(mazeSize * ghost) + index];
+            sum += probabilities[(mazeSize * ghost) + index] * scale[ghost];
         }
         return sum;
     }
 
+    @Override
+    public void calculate(double[] sums) {
+        Arrays.fill(sums, 0, mazeSize, 0.0d);
+        for (int ghost = 0; ghost < numGhosts; ghost++) {
+            int startIndex = mazeSize * ghost;
+            int startWord = words * ghost;
+            if (isDense(support(ghost))) {
+                denseKernel().accumulate(sums, probabilities, startIndex, mazeSize, scale[ghost]);
+                continue;
+            }
+            for (int word = 0; word < words; word++) {
+                for (long bits = active[startWord + word]; bits != 0; bits &= bits - 1) {
+                    int node = (word << 6) + Long.numberOfTrailingZeros(bits);
+                    sums[node] += probabilities[startIndex + node] * scale[ghost];
+                }
+            }
+        }
+    }
+
     public EnumMap<GHOST, GhostLocation> sampleLocations() {
         EnumMap<GHOST, GhostLocation> results = new EnumMap<GHOST, GhostLocation>(GHOST.class);
 
         for(int ghost = 0; ghost < numGhosts; ghost++){
             double x = Math.random();
             double sum = 0.0d;
-            for(int i = (mazeSize * ghost); i < (mazeSize * (ghost + 1)); i++){
-                sum += probabilities[i];
-                if(sum >= x){
-                    results.put(GHOST.values()[ghost], new GhostLocation(i % mazeSize, moves[i], probabilities[i]));
-                    break;
+            for (int word = 0; word < words && !results.containsKey(GHOST.values()[ghost]); word++) {
+                for (long bits = active[words * ghost + word]; bits != 0; bits &= bits - 1) {
+                    int i = (mazeSize * ghost) + (word << 6) + Long.numberOfTrailingZeros(bits);
+                    sum += probabilities[i] * scale[ghost];
+                    if(sum >= x){
+                        results.put(GHOST.values()[ghost], new GhostLocation(i % mazeSize, MOVES[moves[i]], probabilities[i] * scale[ghost]));
+                        break;
+                    }
                 }
-
             }
         }
         return results;
@@ -114,33 +284,59 @@ public class GhostPredictionsFast {
 
     public GhostPredictionsFast copy() {
         GhostPredictionsFast other = new GhostPredictionsFast(this.maze);
-        System.arraycopy(this.probabilities, 0, other.probabilities, 0, probabilities.length);
-        System.arraycopy(this.backProbabilities, 0, other.backProbabilities, 0, backProbabilities.length);
-        System.arraycopy(this.moves, 0, other.moves, 0, moves.length);
-        System.arraycopy(this.backMoves, 0, other.backMoves, 0, backMoves.length);
+        other.kernel = kernel;
+        other.copyFrom(this);
         return other;
     }
 
-    public List<GhostLocation> getGhostLocations(GHOST ghost){
-        ArrayList<GhostLocation> locations = new ArrayList<>();
-        for(int i = ghost.ordinal() * mazeSize; i < (ghost.ordinal() + 1) * mazeSize; i++){
-            if(probabilities[i] > 0){
-                locations.add(new GhostLocation(i % mazeSize, moves[i], probabilities[i]));
+    /*
+     * Costs time in proportion to the nodes the ghosts may be at in either prediction, not to the size of the maze.
+     */
+    @Override
+    public void copyFrom(Predictions predictions) {
+        if (!(predictions instanceof GhostPredictionsFast) || ((GhostPredictionsFast) predictions).maze != maze) {
+            throw new IllegalArgumentException("Predictions are of another kind or for another maze");
+        }
+        GhostPredictionsFast other = (GhostPredictionsFast) predictions;
+        for (int ghost = 0; ghost < numGhosts; ghost++) {
+            clear(ghost);
+            int startIndex = mazeSize * ghost;
+            int startWord = words * ghost;
+            for (int word = 0; word < words; word++) {
+                for (long bits = other.active[startWord + word]; bits != 0; bits &= bits - 1) {
+                    int i = startIndex + (word << 6) + Long.numberOfTrailingZeros(bits);
+                    probabilities[i] = other.probabilities[i];
+                    moves[i] = other.moves[i];
+                }
             }
+            System.arraycopy(other.active, startWord, active, startWord, words);
+            scale[ghost] = other.scale[ghost];
         }
+    }
+
+    public List<GhostLocation> getGhostLocations(GHOST ghost){
+        ArrayList<GhostLocation> locations = new ArrayList<>();
+        addGhostLocations(ghost.ordinal(), locations);
         return locations;
     }
 
     public List<GhostLocation> getGhostLocations(){
         ArrayList<GhostLocation> locations = new ArrayList<>();
-        for(int i = 0; i < probabilities.length; i++){
-            if(probabilities[i] > 0){
-                locations.add(new GhostLocation(i % mazeSize, moves[i], probabilities[i]));
-            }
+        for(int ghost = 0; ghost < numGhosts; ghost++){
+            addGhostLocations(ghost, locations);
         }
         return locations;
     }
 
+    private void addGhostLocations(int ghost, List<GhostLocation> locations) {
+        for (int word = 0; word < words; word++) {
+            for (long bits = active[words * ghost + word]; bits != 0; bits &= bits - 1) {
+                int i = (mazeSize * ghost) + (word << 6) + Long.numberOfTrailingZeros(bits);
+                locations.add(new GhostLocation(i % mazeSize, MOVES[moves[i]], probabilities[i] * scale[ghost]));
+            }
+        }
+    }
+
     public String getGhostInfo(GHOST ghost){
         List<GhostLocation> ghostLocations = getGhostLocations(ghost);
         return "IndividualLocations{" +
@@ -0,0 +1,58 @@
+package pacman.controllers.examples.po.mcts.prediction.fast;
+
+/*
+ * The dense kernel in plain loops over flat arrays, with no bit scanning or scattered writes. Propagation is that
+ * of the sparse kernel seen from the receiving nodes: each takes the edges into it in the order the sparse kernel
+ * would write them, and keeps the write that kernel would have kept last.
+ */
+final class ScalarDenseKernel implements DenseKernel {
+    static final ScalarDenseKernel INSTANCE = new ScalarDenseKernel();
+
+    private ScalarDenseKernel() {
+    }
+
+    @Override
+    public void propagate(BeliefAdjacency adjacency, double[] probabilities, int[] moves, double scale,
+                          double[] backProbabilities, int[] backMoves, long[] backActive, int start, int startWord) {
+        propagate(adjacency, probabilities, moves, scale, backProbabilities, backMoves, backActive, start, startWord,
+                0, adjacency.mazeSize);
+    }
+
+    // Propagation into the nodes from from to to, exclusive; the vector kernel finishes off with it
+    static void propagate(BeliefAdjacency adjacency, double[] probabilities, int[] moves, double scale,
+                          double[] backProbabilities, int[] backMoves, long[] backActive, int start, int startWord,
+                          int from, int to) {
+        int[] inSource = adjacency.inSource;
+        for (int node = from; node < to; node++) {
+            double threshold = probabilities[start + node] * scale;
+            double written = 0;
+            int writtenMove = NO_MOVE;
+            for (int k = node * BeliefAdjacency.DEGREE; k < (node + 1) * BeliefAdjacency.DEGREE; k++) {
+                int source = inSource[k];
+                if (source == -1) break;
+                double p = probabilities[start + source];
+                if (p > 0 && moves[start + source] != adjacency.inReverse[k] && written <= threshold) {
+                    written = p * scale / adjacency.branches[source];
+                    writtenMove = adjacency.inMove[k];
+                }
+            }
+            if (writtenMove != NO_MOVE) {
+                backProbabilities[start + node] = written;
+                backMoves[start + node] = writtenMove;
+                backActive[startWord + (node >>> 6)] |= 1L << node;
+            }
+        }
+    }
+
+    @Override
+    public void accumulate(double[] sums, double[] probabilities, int start, int mazeSize, double scale) {
+        accumulate(sums, probabilities, start, scale, 0, mazeSize);
+    }
+
+    // A straight multiply-add over the nodes from from to to, exclusive, which the JIT can vectorise
+    static void accumulate(double[] sums, double[] probabilities, int start, double scale, int from, int to) {
+        for (int node = from; node < to; node++) {
+            sums[node] += probabilities[start + node] * scale;
+        }
+    }
+}
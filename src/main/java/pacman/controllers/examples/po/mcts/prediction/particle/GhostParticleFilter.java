@@ -0,0 +1,270 @@
+package pacman.controllers.examples.po.mcts.prediction.particle;
+
+import pacman.controllers.examples.po.mcts.prediction.GhostLocation;
+import pacman.controllers.examples.po.mcts.prediction.Predictions;
+import pacman.game.internal.Maze;
+import pacman.game.internal.Node;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static pacman.game.Constants.GHOST;
+import static pacman.game.Constants.MOVE;
+
+/**
+ * Tracks each ghost with a fixed number of weighted particles, each a node and the last move made, instead of a
+ * probability for every node of the maze. A particle moves like a random ghost: to one of the moves that do not
+ * reverse, from Node.allPossibleMoves, chosen uniformly. Seeing a node without the ghost zeroes the weight of the
+ * particles there; the particles are resampled in proportion to their weights as soon as the effective number of
+ * particles drops below half. As observations only ever rule nodes out, a weight is either 1 or 0, and the effective
+ * number is the number of particles left.
+ * <p>
+ * Until a ghost has been seen it has no particles, and so no probability anywhere, like an unobserved ghost in
+ * GhostPredictionsFast. It loses them again if every particle is ruled out.
+ * <p>
+ * update costs time in proportion to the number of particles, whatever the uncertainty, and drawing a location
+ * for a ghost takes constant time.
+ */
+public class GhostParticleFilter implements Predictions {
+    private static final int numGhosts = GHOST.values().length;
+    private static final MOVE[] MOVES = MOVE.values();
+
+    private final Maze maze;
+    private final int mazeSize;
+    private final int particles;
+    private final SplittableRandom random;
+
+    // Particle k of ghost g is at index g * particles + k
+    private int[] nodes;
+    private byte[] moves;
+    private double[] weights;
+    private int[] backNodes;
+    private byte[] backMoves;
+    // Per ghost: the sum of the weights, or 0 if the ghost has no particles
+    private final double[] totalWeight = new double[numGhosts];
+    // Per ghost: the sum of the squared weights, for the effective number of particles
+    private final double[] totalSquaredWeight = new double[numGhosts];
+    // Per node, for getGhostLocations: the mass and first particle there, zero again between calls
+    private double[] locationMass;
+    private int[] locationFirst;
+
+    public GhostParticleFilter(Maze maze, int particles) {
+        this(maze, particles, new SplittableRandom());
+    }
+
+    public GhostParticleFilter(Maze maze, int particles, SplittableRandom random) {
+        if (particles < 1) {
+            throw new IllegalArgumentException("At least one particle is needed, not " + particles);
+        }
+        this.maze = maze;
+        this.mazeSize = maze.graph.length;
+        this.particles = particles;
+        this.random = random;
+        nodes = new int[particles * numGhosts];
+        moves = new byte[particles * numGhosts];
+        weights = new double[particles * numGhosts];
+        backNodes = new int[particles * numGhosts];
+        backMoves = new byte[particles * numGhosts];
+    }
+
+    public int getParticles() {
+        return particles;
+    }
+
+    @Override
+    public void observe(GHOST ghost, int index, MOVE lastMoveMade) {
+        int start = ghost.ordinal() * particles;
+        Arrays.fill(nodes, start, start + particles, index);
+        Arrays.fill(moves, start, start + particles, (byte) lastMoveMade.ordinal());
+        Arrays.fill(weights, start, start + particles, 1.0d);
+        totalWeight[ghost.ordinal()] = particles;
+        totalSquaredWeight[ghost.ordinal()] = particles;
+    }
+
+    @Override
+    public void observeNotPresent(GHOST ghost, int index) {
+        int g = ghost.ordinal();
+        if (totalWeight[g] == 0) return;
+        int start = g * particles;
+        for (int k = start; k < start + particles; k++) {
+            if (nodes[k] == index && weights[k] > 0) {
+                totalWeight[g] -= weights[k];
+                totalSquaredWeight[g] -= weights[k] * weights[k];
+                weights[k] = 0;
+            }
+        }
+        // Every particle has been ruled out
+        if (totalWeight[g] <= 0) {
+            totalWeight[g] = 0;
+            totalSquaredWeight[g] = 0;
+            return;
+        }
+        double effective = totalWeight[g] * totalWeight[g] / totalSquaredWeight[g];
+        if (effective < particles / 2.0) {
+            resample(g);
+        }
+    }
+
+    @Override
+    public void update() {
+        for (int g = 0; g < numGhosts; g++) {
+            if (totalWeight[g] == 0) continue;
+            for (int k = g * particles; k < (g + 1) * particles; k++) {
+                if (weights[k] == 0) continue;
+                Node node = maze.graph[nodes[k]];
+                MOVE[] possible = node.allPossibleMoves.get(MOVES[moves[k]]);
+                if (possible == null || possible.length == 0) continue;
+                MOVE move = possible[random.nextInt(possible.length)];
+                nodes[k] = node.neighbourhood.get(move);
+                moves[k] = (byte) move.ordinal();
+            }
+        }
+    }
+
+    // Systematic resampling: particles are copied in proportion to their weight, which then becomes 1 for all
+    private void resample(int g) {
+        int start = g * particles;
+        double step = totalWeight[g] / particles;
+        double target = random.nextDouble() * step;
+        double cumulative = 0;
+        int source = start - 1;
+        for (int k = start; k < start + particles; k++) {
+            while (cumulative <= target && source < start + particles - 1) {
+                cumulative += weights[++source];
+            }
+            backNodes[k] = nodes[source];
+            backMoves[k] = moves[source];
+            target += step;
+        }
+        System.arraycopy(backNodes, start, nodes, start, particles);
+        System.arraycopy(backMoves, start, moves, start, particles);
+
+        Arrays.fill(weights, start, start + particles, 1.0d);
+        totalWeight[g] = particles;
+        totalSquaredWeight[g] = particles;
+    }
+
+    @Override
+    public void reset() {
+        Arrays.fill(weights, 0);
+        Arrays.fill(totalWeight, 0);
+        Arrays.fill(totalSquaredWeight, 0);
+    }
+
+    @Override
+    public double calculate(int index) {
+        double sum = 0.0d;
+        for (int g = 0; g < numGhosts; g++) {
+            if (totalWeight[g] == 0) continue;
+            double mass = 0;
+            for (int k = g * particles; k < (g + 1) * particles; k++) {
+                if (nodes[k] == index) mass += weights[k];
+            }
+            sum += mass / totalWeight[g];
+        }
+        return sum;
+    }
+
+    @Override
+    public void calculate(double[] sums) {
+        Arrays.fill(sums, 0, mazeSize, 0.0d);
+        for (int g = 0; g < numGhosts; g++) {
+            if (totalWeight[g] == 0) continue;
+            double normaliser = 1 / totalWeight[g];
+            for (int k = g * particles; k < (g + 1) * particles; k++) {
+                sums[nodes[k]] += weights[k] * normaliser;
+            }
+        }
+    }
+
+    /*
+     * One location per node, the last move of the first particle found there, in the order of those particles.
+     * Only the nodes of the particles are visited, so this takes time in proportion to their number, not the maze's.
+     */
+    @Override
+    public List<GhostLocation> getGhostLocations(GHOST ghost) {
+        ArrayList<GhostLocation> locations = new ArrayList<>();
+        int g = ghost.ordinal();
+        if (totalWeight[g] == 0) return locations;
+        if (locationMass == null) {
+            locationMass = new double[mazeSize];
+            locationFirst = new int[mazeSize];
+        }
+        int start = g * particles;
+        for (int k = start; k < start + particles; k++) {
+            if (weights[k] == 0) continue;
+            if (locationMass[nodes[k]] == 0) locationFirst[nodes[k]] = k;
+            locationMass[nodes[k]] += weights[k];
+        }
+        for (int k = start; k < start + particles; k++) {
+            if (weights[k] > 0 && locationFirst[nodes[k]] == k) {
+                locations.add(new GhostLocation(nodes[k], MOVES[moves[k]], locationMass[nodes[k]] / totalWeight[g]));
+            }
+        }
+        for (int k = start; k < start + particles; k++) {
+            locationMass[nodes[k]] = 0;
+        }
+        return locations;
+    }
+
+    @Override
+    public EnumMap<GHOST, GhostLocation> sampleLocations() {
+        EnumMap<GHOST, GhostLocation> results = new EnumMap<GHOST, GhostLocation>(GHOST.class);
+        for (GHOST ghost : GHOST.values()) {
+            int k = sample(ghost);
+            if (k != -1) {
+                results.put(ghost, new GhostLocation(nodes[k], MOVES[moves[k]], weights[k] / totalWeight[ghost.ordinal()]));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Draws a particle of the ghost, by drawing particles until one has not been ruled out. This takes constant
+     * expected time, at most two draws, as observeNotPresent resamples whenever fewer than half of them are left.
+     *
+     * @param ghost The ghost
+     * @return The index of the particle, whose node and move getNode and getMove give, or -1 if the ghost has none
+     */
+    public int sample(GHOST ghost) {
+        int g = ghost.ordinal();
+        if (totalWeight[g] == 0) return -1;
+        int start = g * particles;
+        while (true) {
+            int k = start + random.nextInt(particles);
+            if (weights[k] > 0) return k;
+        }
+    }
+
+    public int getNode(int particle) {
+        return nodes[particle];
+    }
+
+    public MOVE getMove(int particle) {
+        return MOVES[moves[particle]];
+    }
+
+    @Override
+    public GhostParticleFilter copy() {
+        GhostParticleFilter other = new GhostParticleFilter(maze, particles, random.split());
+        other.copyFrom(this);
+        return other;
+    }
+
+    @Override
+    public void copyFrom(Predictions predictions) {
+        if (!(predictions instanceof GhostParticleFilter) || ((GhostParticleFilter) predictions).maze != maze
+                || ((GhostParticleFilter) predictions).particles != particles) {
+            throw new IllegalArgumentException("Predictions are of another kind or for another maze");
+        }
+        GhostParticleFilter other = (GhostParticleFilter) predictions;
+        System.arraycopy(other.nodes, 0, nodes, 0, nodes.length);
+        System.arraycopy(other.moves, 0, moves, 0, moves.length);
+        System.arraycopy(other.weights, 0, weights, 0, weights.length);
+        System.arraycopy(other.totalWeight, 0, totalWeight, 0, numGhosts);
+        System.arraycopy(other.totalSquaredWeight, 0, totalSquaredWeight, 0, numGhosts);
+    }
+}
@@ -4,6 +4,7 @@ import pacman.game.Constants.*;
 import pacman.game.comms.Messenger;
 import pacman.game.info.GameInfo;
 import pacman.game.internal.*;
+import pacman.game.util.jfr.GameTickEvent;
 
 import java.util.BitSet;
 import java.util.EnumMap;
@@ -56,8 +57,29 @@ public final class Game {
 		}
 	}
 
+	//random keys for the pills in the state hash, shared by all mazes
+	private static long[] pillKeys, powerPillKeys;
+
+	static {
+		int maxPills = 0, maxPowerPills = 0;
+		for (Maze maze : mazes) {
+			maxPills = Math.max(maxPills, maze.pillIndices.length);
+			maxPowerPills = Math.max(maxPowerPills, maze.powerPillIndices.length);
+		}
+
+		Random keys = new Random(0x5EED);
+		pillKeys = new long[maxPills];
+		for (int i = 0; i < pillKeys.length; i++)
+			pillKeys[i] = keys.nextLong();
+		powerPillKeys = new long[maxPowerPills];
+		for (int i = 0; i < powerPillKeys.length; i++)
+			powerPillKeys[i] = keys.nextLong();
+	}
+
 	//pills stored as bitsets for efficient copying
 	private BitSet pills, powerPills;
+	//xor of the keys of the remaining pills, kept up to date as they are eaten
+	private long pillHash;
 	//all the game's variables
 	private int mazeIndex, levelCount, currentLevelTime, totalTime, score, ghostEatMultiplier, timeOfLastGlobalReversal;
 	private boolean gameOver, pacmanWasEaten, pillWasEaten, powerPillWasEaten;
@@ -76,6 +98,8 @@ public final class Game {
 	private long seed;
 	// Messenger - null if not available
 	private Messenger messenger;
+	// Flight Recorder event for the tick in progress - null unless a recording is running
+	private GameTickEvent tickEvent;
 
 	/**
 	 * Instantiates a new game. The seed is used to initialise the pseudo-random
@@ -211,6 +235,18 @@ public final class Game {
 		pills.set(0, currentMaze.pillIndices.length);
 		powerPills = new BitSet(currentMaze.powerPillIndices.length);
 		powerPills.set(0, currentMaze.powerPillIndices.length);
+		_computePillHash();
+	}
+
+	/**
+	 * _compute pill hash from scratch.
+	 */
+	private void _computePillHash() {
+		pillHash = 0;
+		for (int i = pills.nextSetBit(0); i >= 0; i = pills.nextSetBit(i + 1))
+			pillHash ^= pillKeys[i];
+		for (int i = powerPills.nextSetBit(0); i >= 0; i = powerPills.nextSetBit(i + 1))
+			pillHash ^= powerPillKeys[i];
 	}
 
 	/**
@@ -273,6 +309,48 @@ public final class Game {
 		return sb.toString();
 	}
 
+	/**
+	 * Gets a 64-bit hash of the game state, for use as the key of a transposition table. It covers everything that
+	 * affects how the game continues - the maze, pills, score, times, lives and the positions, directions, edible and
+	 * lair times of all characters - but not the messenger or the random seed. Equal states always have equal hashes
+	 * and different states collide with a probability of about 2^-64. The pills are hashed incrementally as they
+	 * are eaten, so this takes constant time.
+	 *
+	 * @return The hash of the game state
+	 */
+	public long getStateHash() {
+		long h = pillHash;
+		h = _mix(h, mazeIndex | (long) levelCount << 8 | (long) currentLevelTime << 16 | (long) totalTime << 32);
+		h = _mix(h, score | (long) ghostEatMultiplier << 32);
+		h = _mix(h, pacman.currentNodeIndex | (long) _ordinal(pacman.lastMoveMade) << 16
+				| (long) pacman.numberOfLivesRemaining << 24 | (pacman.hasReceivedExtraLife ? 1L << 40 : 0)
+				| (gameOver ? 1L << 41 : 0) | (pacmanWasEaten ? 1L << 42 : 0) | (powerPillWasEaten ? 1L << 43 : 0)
+				| (pillWasEaten ? 1L << 44 : 0));
+
+		for (Ghost ghost : ghosts.values())
+			h = _mix(h, ghost.currentNodeIndex | (long) _ordinal(ghost.lastMoveMade) << 16
+					| (long) ghost.edibleTime << 24 | (long) ghost.lairTime << 40);
+
+		return h;
+	}
+
+	/**
+	 * _ordinal of a move that may be unknown (null) in games built from a GameInfo.
+	 */
+	private static int _ordinal(MOVE move) {
+		return (move == null) ? MOVE.values().length : move.ordinal();
+	}
+
+	/**
+	 * _mix a value into a hash, using the finaliser of SplitMix64.
+	 */
+	private static long _mix(long h, long value) {
+		long z = h * 0x9E3779B97F4A7C15L + value;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
 	/**
 	 * Sets the game state from a string: the inverse of getGameState(). It reconstructs
 	 * all the game's variables from the string.
@@ -315,6 +393,8 @@ public final class Game {
 			else
 				powerPills.clear(i);
 
+		_computePillHash();
+
 		timeOfLastGlobalReversal = Integer.parseInt(values[++index]);
 		pacmanWasEaten = Boolean.parseBoolean(values[++index]);
 
@@ -342,12 +422,28 @@ public final class Game {
 	 */
 	public Game copy(boolean copyMessenger) {
 		Game copy = new Game();
+		_copyInto(copy);
+		if (hasMessaging()) {
+			copy.messenger = (copyMessenger) ? messenger.copy() : this.messenger;
+		}
 
+		return copy;
+	}
+
+	/*
+	 * Copies the state of this game, but for the messenger, into another game. Pills, agents and maps the other
+	 * game already has are overwritten rather than replaced, so that a game can be reused for many copies.
+	 */
+	private void _copyInto(Game copy) {
 		copy.seed = seed;
-		copy.rnd = new Random(seed);
+		if (copy.rnd == null)
+			copy.rnd = new Random(seed);
+		else
+			copy.rnd.setSeed(seed);
 		copy.currentMaze = currentMaze;
-		copy.pills = (BitSet) pills.clone();
-		copy.powerPills = (BitSet) powerPills.clone();
+		copy.pills = _copyBits(pills, copy.pills);
+		copy.powerPills = _copyBits(powerPills, copy.powerPills);
+		copy.pillHash = pillHash;
 		copy.mazeIndex = mazeIndex;
 		copy.levelCount = levelCount;
 		copy.currentLevelTime = currentLevelTime;
@@ -359,29 +455,70 @@ public final class Game {
 		copy.pacmanWasEaten = pacmanWasEaten;
 		copy.pillWasEaten = pillWasEaten;
 		copy.powerPillWasEaten = powerPillWasEaten;
-		copy.pacman = pacman.copy();
+		copy.pacman = _copyPacMan(pacman, copy.pacman);
 
-		copy.ghostsEaten = new EnumMap<GHOST, Boolean>(GHOST.class);
-		copy.ghosts = new EnumMap<GHOST, Ghost>(GHOST.class);
+		if (copy.ghosts == null) {
+			copy.ghostsEaten = new EnumMap<GHOST, Boolean>(GHOST.class);
+			copy.ghosts = new EnumMap<GHOST, Ghost>(GHOST.class);
+		}
 
 		for (GHOST ghostType : GHOST.values()) {
-			copy.ghosts.put(ghostType, ghosts.get(ghostType).copy());
+			copy.ghosts.put(ghostType, _copyGhost(ghosts.get(ghostType), copy.ghosts.get(ghostType)));
 			copy.ghostsEaten.put(ghostType, ghostsEaten.get(ghostType));
 		}
 
 		copy.po = this.po;
 		copy.agent = this.agent;
-		if (hasMessaging()) {
-			copy.messenger = (copyMessenger) ? messenger.copy() : this.messenger;
-		}
+	}
 
-		return copy;
+	private static BitSet _copyBits(BitSet from, BitSet to) {
+		if (to == null)
+			return (BitSet) from.clone();
+		to.clear();
+		to.or(from);
+		return to;
+	}
+
+	private static PacMan _copyPacMan(PacMan from, PacMan to) {
+		if (to == null)
+			return from.copy();
+		to.currentNodeIndex = from.currentNodeIndex;
+		to.lastMoveMade = from.lastMoveMade;
+		to.numberOfLivesRemaining = from.numberOfLivesRemaining;
+		to.hasReceivedExtraLife = from.hasReceivedExtraLife;
+		return to;
+	}
+
+	private static Ghost _copyGhost(Ghost from, Ghost to) {
+		if (to == null)
+			return from.copy();
+		to.type = from.type;
+		to.currentNodeIndex = from.currentNodeIndex;
+		to.edibleTime = from.edibleTime;
+		to.lairTime = from.lairTime;
+		to.lastMoveMade = from.lastMoveMade;
+		return to;
 	}
 
 	public Game copy() {
 		return copy(false);
 	}
 
+	/**
+	 * Copies the game as copy() does, but into a game made by an earlier copy, overwriting its pills, agents and
+	 * maps instead of allocating new ones, so that a search can play out many copies without allocating.
+	 *
+	 * @param target A game from an earlier copy, or null for a new one
+	 * @return The copy, which is target unless that was null
+	 */
+	public Game copyInto(Game target) {
+		Game copy = (target == null) ? new Game() : target;
+		_copyInto(copy);
+		copy.messenger = hasMessaging() ? messenger : null;
+		copy.beenBlanked = false;
+		return copy;
+	}
+
 	public Game copy(GHOST ghost) {
 		return copy(ghost, false);
 	}
@@ -427,35 +564,73 @@ public final class Game {
 	 */
 	public void advanceGame(MOVE pacManMove, EnumMap<GHOST, MOVE> ghostMoves) {
 		if(!canBeForwarded()) return;
+		GameTickEvent event = _beginTick();
 		updatePacMan(pacManMove);
+		if (event != null) event.updatePacMan = event.lap();
 		updateGhosts(ghostMoves);
+		if (event != null) event.updateGhosts = event.lap();
 		updateGame();
+		_endTick(event);
 	}
 
 	public void advanceGameWithoutReverse(MOVE pacManMove, EnumMap<GHOST, MOVE> ghostMoves) {
 		if(!canBeForwarded()) return;
+		GameTickEvent event = _beginTick();
 		updatePacMan(pacManMove);
+		if (event != null) event.updatePacMan = event.lap();
 		updateGhostsWithoutReverse(ghostMoves);
+		if (event != null) event.updateGhosts = event.lap();
 		updateGame();
+		_endTick(event);
 	}
 
 	public void advanceGameWithForcedReverse(MOVE pacManMove, EnumMap<GHOST, MOVE> ghostMoves) {
 		if(!canBeForwarded()) return;
+		GameTickEvent event = _beginTick();
 		updatePacMan(pacManMove);
+		if (event != null) event.updatePacMan = event.lap();
 		updateGhostsWithForcedReverse(ghostMoves);
+		if (event != null) event.updateGhosts = event.lap();
 		updateGame();
+		_endTick(event);
 	}
 
 	public void advanceGameWithPowerPillReverseOnly(MOVE pacManMove, EnumMap<GHOST, MOVE> ghostMoves) {
 		if(!canBeForwarded()) return;
+		GameTickEvent event = _beginTick();
 		updatePacMan(pacManMove);
+		if (event != null) event.updatePacMan = event.lap();
 
 		if (powerPillWasEaten)
 			updateGhostsWithForcedReverse(ghostMoves);
 		else
 			updateGhostsWithoutReverse(ghostMoves);
+		if (event != null) event.updateGhosts = event.lap();
 
 		updateGame();
+		_endTick(event);
+	}
+
+	/**
+	 * Starts a Flight Recorder event for the current tick. This is a single check of the event type when no
+	 * recording is running, so the forward models used by the controllers are not slowed down.
+	 *
+	 * @return The started event or null if the event is not enabled
+	 */
+	private GameTickEvent _beginTick() {
+		if (!GameTickEvent.isRecording()) return null;
+		GameTickEvent event = new GameTickEvent();
+		event.start();
+		tickEvent = event;
+		return event;
+	}
+
+	private void _endTick(GameTickEvent event) {
+		if (event == null) return;
+		tickEvent = null;
+		event.tick = totalTime;
+		event.maze = mazeIndex;
+		event.commit();
 	}
 
 	/**
@@ -479,7 +654,7 @@ public final class Game {
 		if(!canBeForwarded()) return;
 		ghostMoves = _completeGhostMoves(ghostMoves);
 
-		if (!_reverseGhosts(ghostMoves, false))
+		if (!_reverseGhosts(false))
 			_updateGhosts(ghostMoves);
 	}
 
@@ -492,7 +667,29 @@ public final class Game {
 	public void updateGhostsWithForcedReverse(EnumMap<GHOST, MOVE> ghostMoves) {
 		if(!canBeForwarded()) return;
 		ghostMoves = _completeGhostMoves(ghostMoves);
-		_reverseGhosts(ghostMoves, true);
+		_reverseGhosts(true);
+	}
+
+	/**
+	 * Updates the states of the ghosts given their moves packed into an int, as enumerated by
+	 * GhostMoveEnumerator. Behaves as updateGhosts(EnumMap) without creating or changing a map.
+	 *
+	 * @param packedGhostMoves The packed moves, see GhostMoveEnumerator.pack
+	 */
+	public void updateGhosts(int packedGhostMoves) {
+		if(!canBeForwarded()) return;
+		if (!_reverseGhosts(false))
+			_updateGhosts(packedGhostMoves);
+	}
+
+	public void updateGhostsWithoutReverse(int packedGhostMoves) {
+		if(!canBeForwarded()) return;
+		_updateGhosts(packedGhostMoves);
+	}
+
+	public void updateGhostsWithForcedReverse(int packedGhostMoves) {
+		if(!canBeForwarded()) return;
+		_reverseGhosts(true);
 	}
 
 	/**
@@ -502,7 +699,10 @@ public final class Game {
 	 */
 	public void updateGame() {
 		if(!canBeForwarded()) return;
+		GameTickEvent event = tickEvent;
+		if (event != null) event.lap();
 		_feast();                                    //ghosts eat pac-man or vice versa
+		if (event != null) event.feast = event.lap();
 		_updateLairTimes();
 		_updatePacManExtraLife();
 
@@ -510,7 +710,9 @@ public final class Game {
 		currentLevelTime++;
 
 		_checkLevelState();                            //check if level/game is over
+		if (event != null) event.checkLevelState = event.lap();
 		if (messenger != null) messenger.update();
+		if (event != null) event.messengerUpdate = event.lap();
 	}
 
 	/**
@@ -611,6 +813,17 @@ public final class Game {
 		}
 	}
 
+	private void _updateGhosts(int packedMoves) {
+		for (Ghost ghost : ghosts.values()) {
+			if (ghost.lairTime == 0) {
+				if (ghost.edibleTime == 0 || ghost.edibleTime % GHOST_SPEED_REDUCTION != 0) {
+					ghost.lastMoveMade = _checkGhostDir(ghost, GhostMoveEnumerator.moveOf(packedMoves, ghost.type));
+					ghost.currentNodeIndex = currentMaze.graph[ghost.currentNodeIndex].neighbourhood.get(ghost.lastMoveMade);
+				}
+			}
+		}
+	}
+
 	private EnumMap<GHOST, MOVE> _completeGhostMoves(EnumMap<GHOST, MOVE> moves) {
 		if (moves == null) {
 			moves = new EnumMap<GHOST, MOVE>(GHOST.class);
@@ -666,6 +879,7 @@ public final class Game {
 		if (pillIndex >= 0 && pills.get(pillIndex)) {
 			score += PILL;
 			pills.clear(pillIndex);
+			pillHash ^= pillKeys[pillIndex];
 			pillWasEaten = true;
 		}
 	}
@@ -682,6 +896,7 @@ public final class Game {
 			score += 1;
 			ghostEatMultiplier = 1;
 			powerPills.clear(powerPillIndex);
+			pillHash ^= powerPillKeys[powerPillIndex];
 
 			int newEdibleTime = (int) (EDIBLE_TIME * (Math.pow(EDIBLE_TIME_REDUCTION, levelCount % LEVEL_RESET_REDUCTION)));
 
@@ -695,15 +910,14 @@ public final class Game {
 		}
 	}
 
-	private boolean _reverseGhosts(EnumMap<GHOST, MOVE> moves, boolean force) {
+	private boolean _reverseGhosts(boolean force) {
 		boolean reversed = false;
 		boolean globalReverse = false;
 
 		if (Math.random() < GHOST_REVERSAL)
 			globalReverse = true;
 
-		for (Entry<GHOST, MOVE> entry : moves.entrySet()) {
-			Ghost ghost = ghosts.get(entry.getKey());
+		for (Ghost ghost : ghosts.values()) {
 
 			if (currentLevelTime > 1 && ghost.lairTime == 0 && ghost.lastMoveMade != MOVE.NEUTRAL) {
 				if (force || (powerPillWasEaten || globalReverse)) {
@@ -1240,6 +1454,28 @@ public final class Game {
 		return indices;
 	}
 
+	/**
+	 * Returns the shortest path distance from a node to the nearest active pill or power pill, considering the
+	 * same pills as getActivePillsIndices() and getActivePowerPillsIndices() but without creating arrays.
+	 *
+	 * @param fromNodeIndex The node index
+	 * @return The distance, or -1 if there are no such pills
+	 */
+	public int getShortestPathDistanceToNearestActivePill(int fromNodeIndex) {
+		int nearest = _nearestActivePill(fromNodeIndex, pills, currentMaze.pillIndices, Integer.MAX_VALUE);
+		nearest = _nearestActivePill(fromNodeIndex, powerPills, currentMaze.powerPillIndices, nearest);
+		return nearest == Integer.MAX_VALUE ? -1 : nearest;
+	}
+
+	private int _nearestActivePill(int fromNodeIndex, BitSet active, int[] nodeIndices, int nearest) {
+		for (int i = active.nextSetBit(0); i >= 0 && nearest > 0; i = active.nextSetBit(i + 1)) {
+			if (!po || isNodeObservable(nodeIndices[i])) {
+				nearest = Math.min(nearest, getShortestPathDistance(fromNodeIndex, nodeIndices[i]));
+			}
+		}
+		return nearest;
+	}
+
 	/**s
 	 * If in lair (getLairTime(-) &gt; 0) or if not at junction.
 	 *
@@ -1765,6 +2001,7 @@ public final class Game {
 		game.messenger = null;
 		game.pills = info.getPills();
 		game.powerPills = info.getPowerPills();
+		game._computePillHash();
 		// Etc
 		game.pacman = info.getPacman();
 
@@ -1776,6 +2013,39 @@ public final class Game {
 		return game;
 	}
 
+	/**
+	 * Populates a game with the data contained within info, as getGameFromInfo(info) does, but overwrites a game
+	 * made by an earlier call instead of allocating a new one, and copies the data out of info instead of keeping
+	 * it. One info can so be filled in and turned into many games in turn, and a pool of games reused tick after
+	 * tick, as when drawing many determinisations of a partially observed game.
+	 *
+	 * @param info The data you wish the game to be supplied with
+	 * @param target A game from an earlier call to this method, or null for a new one
+	 * @return The resultant game, which is target unless that was null
+	 */
+	public Game getGameFromInfo(GameInfo info, Game target) {
+		Game game = (target == null) ? new Game() : target;
+		_copyInto(game);
+		game.messenger = null;
+		game.pills = _copyBits(info.getPills(), game.pills);
+		game.powerPills = _copyBits(info.getPowerPills(), game.powerPills);
+		game._computePillHash();
+		game.pacman = (info.getPacman() == null) ? null : _copyPacMan(info.getPacman(), game.pacman);
+
+		for (GHOST ghostType : GHOST.values()) {
+			Ghost ghost = info.getGhosts().get(ghostType);
+			if (ghost == null)
+				game.ghosts.remove(ghostType);
+			else
+				game.ghosts.put(ghostType, _copyGhost(ghost, game.ghosts.get(ghostType)));
+		}
+
+		game.beenBlanked = true;
+		game.po = false;
+
+		return game;
+	}
+
 	/**
 	 * Is this game Partially Observable?
 	 * @return The boolean answer to the question
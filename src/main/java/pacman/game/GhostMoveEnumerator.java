@@ -0,0 +1,148 @@
+package pacman.game;
+
+import static pacman.game.Constants.GHOST;
+import static pacman.game.Constants.GHOST_SPEED_REDUCTION;
+import static pacman.game.Constants.MOVE;
+
+/**
+ * Enumerates the joint moves of the four ghosts in a game state without allocating, for search algorithms that
+ * branch on every combination of ghost moves.
+ * <p>
+ * Only ghosts that have a decision to make contribute more than one move: a ghost in the lair or stationary on
+ * this tick (edible ghosts skip every GHOST_SPEED_REDUCTION-th tick) gets NEUTRAL, as the engine ignores its
+ * move, and a ghost in a corridor gets the single move that does not reverse. The others get the moves of
+ * Game.getPossibleMoves(node, lastMoveMade).
+ * <p>
+ * A joint move is packed into an int with 3 bits per ghost holding the move's ordinal, BLINKY in the lowest
+ * bits, and can be applied with Game.updateGhosts(int) and its variants. Combinations are numbered so that
+ * BLINKY's moves vary slowest and SUE's fastest, each in the order of that ghost's moves.
+ * <p>
+ * An enumerator can be reset to other states and reused; it is not thread-safe.
+ */
+public final class GhostMoveEnumerator {
+	private static final GHOST[] GHOSTS = GHOST.values();
+	private static final MOVE[] MOVES = MOVE.values();
+	private static final MOVE[] NEUTRAL_ONLY = {MOVE.NEUTRAL};
+	private static final int BITS_PER_GHOST = 3;
+
+	private final MOVE[][] moves = new MOVE[GHOSTS.length][MOVES.length];
+	private final int[] counts = new int[GHOSTS.length];
+	// Number of combinations covered by one step of each ghost's move
+	private final int[] strides = new int[GHOSTS.length];
+	private int size;
+
+	/**
+	 * Collects the moves of every ghost in the given state, in the order of Game.getPossibleMoves.
+	 *
+	 * @param game The game state
+	 * @return This enumerator
+	 */
+	public GhostMoveEnumerator reset(Game game) {
+		for (int i = 0; i < GHOSTS.length; i++) {
+			MOVE[] options = optionsOf(game, GHOSTS[i]);
+			System.arraycopy(options, 0, moves[i], 0, options.length);
+			counts[i] = options.length;
+		}
+		updateStrides();
+		return this;
+	}
+
+	/**
+	 * Reorders the moves of a ghost by descending key, keeping the current order between equal keys. Used to
+	 * search the most promising combinations first.
+	 *
+	 * @param ghost The ghost
+	 * @param keys  One key per move, in the current order of the ghost's moves; reordered along with them
+	 */
+	public void orderMoves(GHOST ghost, int[] keys) {
+		MOVE[] ghostMoves = moves[ghost.ordinal()];
+		for (int i = 1; i < counts[ghost.ordinal()]; i++) {
+			MOVE move = ghostMoves[i];
+			int key = keys[i];
+			int j = i - 1;
+			while (j >= 0 && keys[j] < key) {
+				ghostMoves[j + 1] = ghostMoves[j];
+				keys[j + 1] = keys[j];
+				j--;
+			}
+			ghostMoves[j + 1] = move;
+			keys[j + 1] = key;
+		}
+	}
+
+	/**
+	 * @return The number of joint moves
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @param ghost The ghost
+	 * @return The number of moves the ghost has to choose from, 1 if it has no decision to make
+	 */
+	public int getMoveCount(GHOST ghost) {
+		return counts[ghost.ordinal()];
+	}
+
+	/**
+	 * @param ghost The ghost
+	 * @param index The index of the move, below getMoveCount(ghost)
+	 * @return The move
+	 */
+	public MOVE getMove(GHOST ghost, int index) {
+		return moves[ghost.ordinal()][index];
+	}
+
+	/**
+	 * Gets a joint move.
+	 *
+	 * @param index The index of the combination, below size()
+	 * @return The packed joint move
+	 */
+	public int get(int index) {
+		int packed = 0;
+		for (int i = 0; i < GHOSTS.length; i++) {
+			packed |= moves[i][(index / strides[i]) % counts[i]].ordinal() << (BITS_PER_GHOST * i);
+		}
+		return packed;
+	}
+
+	/**
+	 * Packs one move per ghost.
+	 *
+	 * @return The packed joint move
+	 */
+	public static int pack(MOVE blinkyMove, MOVE inkyMove, MOVE pinkyMove, MOVE sueMove) {
+		return blinkyMove.ordinal() | inkyMove.ordinal() << BITS_PER_GHOST | pinkyMove.ordinal() << (2 * BITS_PER_GHOST)
+				| sueMove.ordinal() << (3 * BITS_PER_GHOST);
+	}
+
+	/**
+	 * Unpacks the move of one ghost.
+	 *
+	 * @param packed The packed joint move
+	 * @param ghost  The ghost
+	 * @return The ghost's move
+	 */
+	public static MOVE moveOf(int packed, GHOST ghost) {
+		return MOVES[(packed >>> (BITS_PER_GHOST * ghost.ordinal())) & ((1 << BITS_PER_GHOST) - 1)];
+	}
+
+	private static MOVE[] optionsOf(Game game, GHOST ghost) {
+		int edibleTime = game.getGhostEdibleTime(ghost);
+		if (game.getGhostLairTime(ghost) > 0 || (edibleTime > 0 && edibleTime % GHOST_SPEED_REDUCTION == 0)) {
+			return NEUTRAL_ONLY;
+		}
+		MOVE[] possible = game.getPossibleMoves(game.getGhostCurrentNodeIndex(ghost), game.getGhostLastMoveMade(ghost));
+		return (possible == null || possible.length == 0) ? NEUTRAL_ONLY : possible;
+	}
+
+	private void updateStrides() {
+		size = 1;
+		for (int i = GHOSTS.length - 1; i >= 0; i--) {
+			strides[i] = size;
+			size *= counts[i];
+		}
+	}
+}
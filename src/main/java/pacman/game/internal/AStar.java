@@ -7,6 +7,7 @@ import java.util.PriorityQueue;
 
 import pacman.game.Game;
 import pacman.game.Constants.MOVE;
+import pacman.game.util.jfr.PathSearchEvent;
 
 /*
  * This class is used to compute the shortest path for the ghosts: as these may not reverse, one cannot use
@@ -36,6 +37,7 @@ public class AStar {
     }
 
     public synchronized int[] computePathsAStar(int s, int t, MOVE lastMoveMade, Game game) {
+        PathSearchEvent event = PathSearchEvent.isRecording() ? PathSearchEvent.start("AStar", s, t) : null;
         N start = graph[s];
         N target = graph[t];
 
@@ -86,7 +88,9 @@ public class AStar {
             }
         }
 
-        return extractPath(target);
+        int[] path = extractPath(target);
+        if (event != null) event.end(closed.size(), path.length);
+        return path;
     }
 
     public synchronized int[] computePathsAStar(int s, int t, Game game) {
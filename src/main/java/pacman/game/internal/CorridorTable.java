@@ -0,0 +1,189 @@
+package pacman.game.internal;
+
+import java.util.Arrays;
+
+import pacman.game.Constants.MOVE;
+
+/*
+ * The corridors of a maze, flattened from the junction paths of its PathsCache for code that walks the maze many
+ * times, such as rollouts. A segment is what follows from taking a move at a node: the nodes passed, up to and
+ * including the next junction, all of which are forced since Ms Pac-Man cannot reverse. Every corridor node also
+ * belongs to one undirected corridor, the nodes strictly between two junctions, so that callers can keep one count
+ * per corridor, e.g. of the pills in it. Junctions belong to no corridor, nor do the nodes of a loop without any.
+ */
+public final class CorridorTable {
+    public static final int NO_CORRIDOR = -1;
+
+    private static final MOVE[] MOVES = MOVE.values();
+
+    private final boolean[] junction;
+    // Index of the segment of each node and move, or -1 where the move is not possible
+    private final int[] segmentOf;
+    private final int[] segmentOffset;
+    private final int[] segmentLength;
+    private final MOVE[] segmentLastMove;
+    private final int[] segmentNodes;
+    private final int[] corridorOf;
+    private final int[] corridorLength;
+
+    CorridorTable(PathsCache cache) {
+        Maze maze = cache.game.getCurrentMaze();
+        int numNodes = maze.graph.length;
+
+        junction = new boolean[numNodes];
+        for (int i = 0; i < numNodes; i++)
+            junction[i] = cache.nodes[i].isJunction;
+
+        segmentOf = new int[numNodes * MOVES.length];
+        Arrays.fill(segmentOf, -1);
+
+        int segments = 0;
+        int totalLength = 0;
+        for (int i = 0; i < numNodes; i++)
+            for (MOVE move : maze.graph[i].allPossibleMoves.get(MOVE.NEUTRAL)) {
+                segments++;
+                JunctionData data = dataOf(cache, maze, i, move);
+                totalLength += (data == null ? 0 : data.path.length) + (junction[i] ? 1 : 0);
+            }
+
+        segmentOffset = new int[segments];
+        segmentLength = new int[segments];
+        segmentLastMove = new MOVE[segments];
+        segmentNodes = new int[totalLength];
+
+        int segment = 0;
+        int offset = 0;
+        for (int i = 0; i < numNodes; i++)
+            for (MOVE move : maze.graph[i].allPossibleMoves.get(MOVE.NEUTRAL)) {
+                segmentOf[i * MOVES.length + move.ordinal()] = segment;
+                segmentOffset[segment] = offset;
+
+                int neighbour = maze.graph[i].neighbourhood.get(move);
+                if (junction[i])
+                    segmentNodes[offset++] = neighbour;
+
+                JunctionData data = dataOf(cache, maze, i, move);
+                if (data == null) {
+                    segmentLastMove[segment] = move;
+                } else {
+                    System.arraycopy(data.path, 0, segmentNodes, offset, data.path.length);
+                    offset += data.path.length;
+                    segmentLastMove[segment] = data.lastMove;
+                }
+                segmentLength[segment] = offset - segmentOffset[segment];
+                segment++;
+            }
+
+        // every corridor is entered from one of its junctions, in full
+        corridorOf = new int[numNodes];
+        Arrays.fill(corridorOf, NO_CORRIDOR);
+        int[] lengths = new int[numNodes];
+        int corridors = 0;
+        for (int i = 0; i < numNodes; i++) {
+            if (!junction[i])
+                continue;
+            for (MOVE move : maze.graph[i].allPossibleMoves.get(MOVE.NEUTRAL)) {
+                int s = getSegment(i, move);
+                int first = segmentNodes[segmentOffset[s]];
+                if (junction[first] || corridorOf[first] != NO_CORRIDOR)
+                    continue;
+
+                for (int k = segmentOffset[s]; k < segmentOffset[s] + segmentLength[s] - 1; k++) {
+                    corridorOf[segmentNodes[k]] = corridors;
+                    lengths[corridors]++;
+                }
+                corridors++;
+            }
+        }
+        corridorLength = Arrays.copyOf(lengths, corridors);
+    }
+
+    /*
+     * The path cached for the move at a corridor node, or, at a junction, the one cached for its neighbour in the
+     * direction of the move, which then starts one node later. Null if that neighbour is itself a junction.
+     */
+    private static JunctionData dataOf(PathsCache cache, Maze maze, int i, MOVE move) {
+        DNode node = cache.nodes[i];
+        if (!node.isJunction) {
+            for (JunctionData data : node.closestJunctions)
+                if (data.firstMove == move)
+                    return data;
+            return null;
+        }
+
+        DNode neighbour = cache.nodes[maze.graph[i].neighbourhood.get(move)];
+        if (neighbour.isJunction)
+            return null;
+        for (JunctionData data : neighbour.closestJunctions)
+            if (data.firstMove != move.opposite())
+                return data;
+        return null;
+    }
+
+    /**
+     * @return The number of nodes of the maze
+     */
+    public int getNumberOfNodes() {
+        return corridorOf.length;
+    }
+
+    /**
+     * @return The number of corridors
+     */
+    public int getNumberOfCorridors() {
+        return corridorLength.length;
+    }
+
+    public boolean isJunction(int nodeIndex) {
+        return junction[nodeIndex];
+    }
+
+    /**
+     * @param nodeIndex The node
+     * @return The corridor of the node, or NO_CORRIDOR for a junction
+     */
+    public int getCorridor(int nodeIndex) {
+        return corridorOf[nodeIndex];
+    }
+
+    public int getCorridorLength(int corridor) {
+        return corridorLength[corridor];
+    }
+
+    /**
+     * @param nodeIndex The node
+     * @param move      A move possible at the node
+     * @return The segment followed by taking the move at the node
+     */
+    public int getSegment(int nodeIndex, MOVE move) {
+        return segmentOf[nodeIndex * MOVES.length + move.ordinal()];
+    }
+
+    /**
+     * @return The offset of the segment's first node in getSegmentNodes()
+     */
+    public int getSegmentOffset(int segment) {
+        return segmentOffset[segment];
+    }
+
+    /**
+     * @return The number of nodes of the segment, the junction it ends at included
+     */
+    public int getSegmentLength(int segment) {
+        return segmentLength[segment];
+    }
+
+    /**
+     * @return The move made to enter the junction at the end of the segment
+     */
+    public MOVE getSegmentLastMove(int segment) {
+        return segmentLastMove[segment];
+    }
+
+    /**
+     * The nodes of all segments, one after the other. Shared, not to be modified.
+     */
+    public int[] getSegmentNodes() {
+        return segmentNodes;
+    }
+}
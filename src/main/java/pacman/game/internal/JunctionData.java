@@ -0,0 +1,39 @@
+package pacman.game.internal;
+
+import java.util.Arrays;
+
+import pacman.game.Constants.MOVE;
+
+class JunctionData {
+    public int nodeID, nodeStartedFrom;
+    public MOVE firstMove, lastMove;
+    public int[] path, reversePath;
+
+    public JunctionData(int nodeID, MOVE firstMove, int nodeStartedFrom, int[] path, MOVE lastMove) {
+        this.nodeID = nodeID;
+        this.nodeStartedFrom = nodeStartedFrom;
+        this.firstMove = firstMove;
+        this.path = path;
+        this.lastMove = lastMove;
+
+        if (path.length > 0)
+            this.reversePath = getReversePath(path);
+        else
+            reversePath = new int[]{};
+    }
+
+    public int[] getReversePath(int[] path) {
+        int[] reversePath = new int[path.length];
+
+        for (int i = 1; i < reversePath.length; i++)
+            reversePath[i - 1] = path[path.length - 1 - i];
+
+        reversePath[reversePath.length - 1] = nodeStartedFrom;
+
+        return reversePath;
+    }
+
+    public String toString() {
+        return nodeID + "\t" + firstMove.toString() + "\t" + Arrays.toString(path);
+    }
+}
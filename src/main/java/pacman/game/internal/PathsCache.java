@@ -8,6 +8,7 @@ import java.util.Set;
 
 import pacman.game.Constants.MOVE;
 import pacman.game.Game;
+import pacman.game.util.jfr.PathSearchEvent;
 
 /*
  * Pre-computes paths for more efficient execution of the game. It is a tradeoff between loading times, execution speed,
@@ -28,6 +29,7 @@ public class PathsCache {
     public DNode[] nodes;
     public Junction[] junctions;
     public Game game;
+    private CorridorTable corridors;
 
     public PathsCache(int mazeIndex) {
         junctionIndexConverter = new HashMap<Integer, Integer>();
@@ -47,8 +49,25 @@ public class PathsCache {
             junctions[i].computeShortestPaths();
     }
 
+    // The corridors of the maze, built on first use
+    public synchronized CorridorTable getCorridors() {
+        if (corridors == null)
+            corridors = new CorridorTable(this);
+        return corridors;
+    }
+
     //for Ms Pac-Man
     public int[] getPathFromA2B(int a, int b) {
+        if (!PathSearchEvent.isRecording())
+            return _getPathFromA2B(a, b);
+
+        PathSearchEvent event = PathSearchEvent.start("PathsCache", a, b);
+        int[] path = _getPathFromA2B(a, b);
+        event.end(nodes[a].closestJunctions.size() * nodes[b].closestJunctions.size(), path.length);
+        return path;
+    }
+
+    private int[] _getPathFromA2B(int a, int b) {
         //not going anywhere
         if (a == b)
             return new int[]{};
@@ -101,6 +120,16 @@ public class PathsCache {
     }
 
     public int[] getPathFromA2B(int a, int b, MOVE lastMoveMade) {
+        if (!PathSearchEvent.isRecording())
+            return _getPathFromA2B(a, b, lastMoveMade);
+
+        PathSearchEvent event = PathSearchEvent.start("PathsCache", a, b);
+        int[] path = _getPathFromA2B(a, b, lastMoveMade);
+        event.end(nodes[b].closestJunctions.size(), path.length);
+        return path;
+    }
+
+    private int[] _getPathFromA2B(int a, int b, MOVE lastMoveMade) {
         //not going anywhere
         if (a == b)
             return new int[]{};
@@ -262,98 +291,6 @@ public class PathsCache {
     }
 }
 
-class JunctionData {
-    public int nodeID, nodeStartedFrom;
-    public MOVE firstMove, lastMove;
-    public int[] path, reversePath;
-
-    public JunctionData(int nodeID, MOVE firstMove, int nodeStartedFrom, int[] path, MOVE lastMove) {
-        this.nodeID = nodeID;
-        this.nodeStartedFrom = nodeStartedFrom;
-        this.firstMove = firstMove;
-        this.path = path;
-        this.lastMove = lastMove;
-
-        if (path.length > 0)
-            this.reversePath = getReversePath(path);
-        else
-            reversePath = new int[]{};
-    }
-
-    public int[] getReversePath(int[] path) {
-        int[] reversePath = new int[path.length];
-
-        for (int i = 1; i < reversePath.length; i++)
-            reversePath[i - 1] = path[path.length - 1 - i];
-
-        reversePath[reversePath.length - 1] = nodeStartedFrom;
-
-        return reversePath;
-    }
-
-    public String toString() {
-        return nodeID + "\t" + firstMove.toString() + "\t" + Arrays.toString(path);
-    }
-}
-
-class DNode {
-    public int nodeID;
-    public ArrayList<JunctionData> closestJunctions;
-    public boolean isJunction;
-
-    public DNode(int nodeID, boolean isJunction) {
-        this.nodeID = nodeID;
-        this.isJunction = isJunction;
-
-        this.closestJunctions = new ArrayList<JunctionData>();
-
-        if (isJunction)
-            closestJunctions.add(new JunctionData(nodeID, MOVE.NEUTRAL, nodeID, new int[]{}, MOVE.NEUTRAL));
-    }
-
-    public int[] getPathToJunction(MOVE lastMoveMade) {
-        if (isJunction)
-            return new int[]{};
-
-        for (int i = 0; i < closestJunctions.size(); i++)
-            if (!closestJunctions.get(i).firstMove.equals(lastMoveMade.opposite()))
-                return closestJunctions.get(i).path;
-
-        return null;
-    }
-
-    public JunctionData getNearestJunction(MOVE lastMoveMade) {
-        if (isJunction)
-            return closestJunctions.get(0);
-
-        int minDist = Integer.MAX_VALUE;
-        int bestIndex = -1;
-
-        for (int i = 0; i < closestJunctions.size(); i++)
-            if (!closestJunctions.get(i).firstMove.equals(lastMoveMade.opposite())) {
-                int newDist = closestJunctions.get(i).path.length;
-
-                if (newDist < minDist) {
-                    minDist = newDist;
-                    bestIndex = i;
-                }
-            }
-
-        if (bestIndex != -1)
-            return closestJunctions.get(bestIndex);
-        else
-            return null;
-    }
-
-    public void addPath(int junctionID, MOVE firstMove, int nodeStartedFrom, int[] path, MOVE lastMove) {
-        closestJunctions.add(new JunctionData(junctionID, firstMove, nodeStartedFrom, path, lastMove));
-    }
-
-    public String toString() {
-        return "" + nodeID + "\t" + isJunction;
-    }
-}
-
 // for each junction, stores paths to all other junctions for all directions
 class Junction {
     public int jctId, nodeId;
@@ -0,0 +1,75 @@
+package pacman.game.util;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+/**
+ * Adds up the bytes allocated by the helper threads of a controller - the workers of its own thread pool, or a
+ * thread that ponders between moves - which the per-thread counter read around getMove does not see. A thread is
+ * registered when it is created and calls finished as the last thing it does, which keeps what it allocated after
+ * its counter has gone with it. Threads that were never registered are not counted.
+ * <p>
+ * Controllers return getAllocatedBytes from Controller.getHelperAllocatedBytes so that MemoryStats charges their
+ * helpers' allocation to them.
+ */
+public class AllocationTracker {
+
+    private final Set<Thread> threads = new HashSet<Thread>();
+    private long finishedBytes;
+
+    /**
+     * Counts the allocation of a thread from now on, and what it allocated before if it has already started.
+     *
+     * @param thread The thread, which must call finished when it is done
+     */
+    public synchronized void register(Thread thread) {
+        threads.add(thread);
+    }
+
+    /**
+     * Called by a registered thread as the last thing it does, to keep what it allocated.
+     */
+    public synchronized void finished() {
+        if (threads.remove(Thread.currentThread())) {
+            finishedBytes += MemoryStats.threadAllocatedBytes();
+        }
+    }
+
+    /**
+     * Gets the bytes allocated so far by the registered threads, those that have finished included.
+     *
+     * @return The allocated bytes, or 0 if the JVM cannot measure them
+     */
+    public synchronized long getAllocatedBytes() {
+        long bytes = finishedBytes;
+        for (Thread thread : threads) {
+            bytes += MemoryStats.threadAllocatedBytes(thread);
+        }
+        return bytes;
+    }
+
+    /**
+     * Creates a factory for the worker threads of a ForkJoinPool that registers every worker it creates, and has
+     * it report when it terminates, as idle workers do after a while.
+     *
+     * @return The factory
+     */
+    public ForkJoinPool.ForkJoinWorkerThreadFactory workerThreadFactory() {
+        return new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+            @Override
+            public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+                ForkJoinWorkerThread thread = new ForkJoinWorkerThread(pool) {
+                    @Override
+                    protected void onTermination(Throwable exception) {
+                        finished();
+                        super.onTermination(exception);
+                    }
+                };
+                register(thread);
+                return thread;
+            }
+        };
+    }
+}
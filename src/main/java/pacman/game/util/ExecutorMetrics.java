@@ -0,0 +1,239 @@
+package pacman.game.util;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+
+/**
+ * Live counters and gauges of an Executor, published as a standard MBean so that long experiments can be
+ * monitored without scraping their output. The Executor records every tick and every finished game; the
+ * latency figures are read from the {@link TimingStats} of the run in progress.
+ * <p>
+ * Updates come from the thread running the games while reads come from the JMX connector threads, so all
+ * methods are synchronised. Recording a tick is a counter increment and a call to System.nanoTime.
+ */
+public class ExecutorMetrics implements ExecutorMetricsMBean {
+
+    public static final String DOMAIN = "pacman";
+    public static final int ROLLING_WINDOW = 100;
+
+    private static final MemoryMXBean MEMORY = ManagementFactory.getMemoryMXBean();
+    private static final long RATE_WINDOW_NANOS = 1000000000L;
+
+    private String description = "";
+    private TimingStats[] timingStats;
+
+    private long gamesCompleted;
+    private long ticks;
+    private long firstTickNanos;
+    private long lastTickNanos;
+    private long windowStartNanos;
+    private long windowTicks;
+    private double ticksPerSecond;
+
+    private long scoreSum;
+    private final int[] recentScores = new int[ROLLING_WINDOW];
+    private int recentIndex;
+    private int lastScore;
+
+    /**
+     * Registers the metrics with the platform MBean server under pacman:type=Executor,name=&lt;name&gt;,
+     * replacing any MBean previously registered under the same name.
+     *
+     * @param name The name to register under
+     * @return The object name, or null if registration failed
+     */
+    public ObjectName register(String name) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(DOMAIN + ":type=Executor,name=" + ObjectName.quote(name));
+            if (server.isRegistered(objectName)) server.unregisterMBean(objectName);
+            server.registerMBean(this, objectName);
+            return objectName;
+        } catch (JMException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Starts a new run of the Executor. The counters and scores keep accumulating over all runs until
+     * {@link #reset()} is called, while the latency figures are those of the run in progress.
+     *
+     * @param description The description of the run
+     * @param timingStats Ms Pac-Man's latency statistics in index 0 and the ghosts' in index 1
+     */
+    public synchronized void startRun(String description, TimingStats[] timingStats) {
+        this.description = description;
+        this.timingStats = timingStats;
+    }
+
+    public synchronized void recordTick() {
+        long now = System.nanoTime();
+        if (ticks == 0) {
+            firstTickNanos = now;
+            windowStartNanos = now;
+        }
+        ticks++;
+        windowTicks++;
+        lastTickNanos = now;
+
+        long window = now - windowStartNanos;
+        if (window >= RATE_WINDOW_NANOS) {
+            ticksPerSecond = windowTicks * 1e9 / window;
+            windowStartNanos = now;
+            windowTicks = 0;
+        }
+    }
+
+    public synchronized void recordGame(int score) {
+        gamesCompleted++;
+        scoreSum += score;
+        recentScores[recentIndex] = score;
+        recentIndex = (recentIndex + 1) % ROLLING_WINDOW;
+        lastScore = score;
+    }
+
+    @Override
+    public synchronized void reset() {
+        gamesCompleted = 0;
+        ticks = 0;
+        windowTicks = 0;
+        ticksPerSecond = 0;
+        scoreSum = 0;
+        recentIndex = 0;
+        lastScore = 0;
+    }
+
+    @Override
+    public synchronized String getDescription() {
+        return description;
+    }
+
+    @Override
+    public synchronized long getGamesCompleted() {
+        return gamesCompleted;
+    }
+
+    @Override
+    public synchronized long getTicks() {
+        return ticks;
+    }
+
+    @Override
+    public synchronized double getTicksPerSecond() {
+        // The window is only closed by the next tick, so report zero once the games have stopped advancing
+        if (ticks == 0 || System.nanoTime() - lastTickNanos > RATE_WINDOW_NANOS) return 0;
+        return ticksPerSecond;
+    }
+
+    @Override
+    public synchronized double getAverageTicksPerSecond() {
+        if (ticks < 2 || lastTickNanos == firstTickNanos) return 0;
+        return (ticks - 1) * 1e9 / (lastTickNanos - firstTickNanos);
+    }
+
+    @Override
+    public synchronized double getSecondsSinceLastTick() {
+        if (ticks == 0) return 0;
+        return (System.nanoTime() - lastTickNanos) / 1e9;
+    }
+
+    @Override
+    public synchronized double getMeanScore() {
+        return (gamesCompleted == 0) ? 0 : (double) scoreSum / gamesCompleted;
+    }
+
+    @Override
+    public synchronized double getRollingScore() {
+        int n = (int) Math.min(gamesCompleted, ROLLING_WINDOW);
+        if (n == 0) return 0;
+        long sum = 0;
+        for (int i = 0; i < n; i++) {
+            sum += recentScores[i];
+        }
+        return (double) sum / n;
+    }
+
+    @Override
+    public synchronized int getLastScore() {
+        return lastScore;
+    }
+
+    @Override
+    public double getPacManMeanLatencyMs() {
+        TimingStats stats = getTimingStats(0);
+        return (stats == null) ? 0 : stats.getMeanMs();
+    }
+
+    @Override
+    public double getPacManP99LatencyMs() {
+        TimingStats stats = getTimingStats(0);
+        return (stats == null) ? 0 : stats.getPercentileMs(99);
+    }
+
+    @Override
+    public long getPacManDeadlineMisses() {
+        TimingStats stats = getTimingStats(0);
+        return (stats == null) ? 0 : stats.getDeadlineMisses();
+    }
+
+    @Override
+    public long getPacManStaleTicks() {
+        TimingStats stats = getTimingStats(0);
+        return (stats == null) ? 0 : stats.getStaleTicks();
+    }
+
+    @Override
+    public double getGhostsMeanLatencyMs() {
+        TimingStats stats = getTimingStats(1);
+        return (stats == null) ? 0 : stats.getMeanMs();
+    }
+
+    @Override
+    public double getGhostsP99LatencyMs() {
+        TimingStats stats = getTimingStats(1);
+        return (stats == null) ? 0 : stats.getPercentileMs(99);
+    }
+
+    @Override
+    public long getGhostsDeadlineMisses() {
+        TimingStats stats = getTimingStats(1);
+        return (stats == null) ? 0 : stats.getDeadlineMisses();
+    }
+
+    @Override
+    public long getGhostsStaleTicks() {
+        TimingStats stats = getTimingStats(1);
+        return (stats == null) ? 0 : stats.getStaleTicks();
+    }
+
+    @Override
+    public long getHeapUsedBytes() {
+        return MEMORY.getHeapMemoryUsage().getUsed();
+    }
+
+    @Override
+    public long getHeapRetainedBytes() {
+        return MemoryStats.heapRetainedBytes();
+    }
+
+    // The TimingStats synchronise themselves, so they are read outside of this object's lock
+    private synchronized TimingStats getTimingStats(int index) {
+        return (timingStats == null) ? null : timingStats[index];
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ExecutorMetrics{" +
+                "Desc=" + description +
+                ", games=" + gamesCompleted +
+                ", ticks=" + ticks +
+                ", ticksPerSecond=" + String.format("%.1f", getAverageTicksPerSecond()) +
+                ", meanScore=" + String.format("%.1f", getMeanScore()) +
+                ", rollingScore=" + String.format("%.1f", getRollingScore()) +
+                '}';
+    }
+}
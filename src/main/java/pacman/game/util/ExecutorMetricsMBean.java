@@ -0,0 +1,57 @@
+package pacman.game.util;
+
+/**
+ * Management interface of {@link ExecutorMetrics}. Every getter becomes a read-only attribute of the MBean, so
+ * the values can be watched live with JConsole, VisualVM or any other JMX client while an experiment runs.
+ */
+public interface ExecutorMetricsMBean {
+
+    String getDescription();
+
+    long getGamesCompleted();
+
+    long getTicks();
+
+    /**
+     * @return Ticks advanced per second, measured over the most recent window of about a second
+     */
+    double getTicksPerSecond();
+
+    double getAverageTicksPerSecond();
+
+    /**
+     * @return Seconds since the game was last advanced; a large value while a run is in progress means a stall
+     */
+    double getSecondsSinceLastTick();
+
+    double getMeanScore();
+
+    /**
+     * @return The mean score of the most recent games, up to the size of the rolling window
+     */
+    double getRollingScore();
+
+    int getLastScore();
+
+    double getPacManMeanLatencyMs();
+
+    double getPacManP99LatencyMs();
+
+    long getPacManDeadlineMisses();
+
+    long getPacManStaleTicks();
+
+    double getGhostsMeanLatencyMs();
+
+    double getGhostsP99LatencyMs();
+
+    long getGhostsDeadlineMisses();
+
+    long getGhostsStaleTicks();
+
+    long getHeapUsedBytes();
+
+    long getHeapRetainedBytes();
+
+    void reset();
+}
@@ -0,0 +1,202 @@
+package pacman.game.util;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
+import static pacman.game.Constants.MEMORY_LIMIT;
+
+/**
+ * Memory statistics for a single controller. Allocation is attributed per decision using the per-thread
+ * allocated bytes counter of the HotSpot ThreadMXBean, so what the controller allocates while inside getMove is
+ * counted, plus what its helper threads have allocated since its previous decision if it reports them through
+ * Controller.getHelperAllocatedBytes (see AllocationTracker). Retained memory cannot be split between controllers, so the heap still in use after the
+ * last garbage collection is sampled once per tick and shared by both controllers (and the game) of a run,
+ * which is also how Constants.MEMORY_LIMIT is defined.
+ * <p>
+ * Updates may come from the controller's own thread in the asynchronous modes, so all methods are synchronised.
+ */
+public class MemoryStats {
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final boolean ALLOCATION_SUPPORTED = allocationSupported();
+    private static final List<MemoryPoolMXBean> HEAP_POOLS = heapPools();
+    private static final long BYTES_PER_MB = 1024L * 1024L;
+
+    private final String description;
+    private final Stats bytesPerDecision;
+    private final Stats allocationRate;
+    private long allocatedBytes;
+    private long peakRetainedBytes;
+    private boolean limitExceeded;
+
+    private long gameStartBytes;
+    private long gameStartNanos;
+    private double lastAllocationRate;
+
+    public MemoryStats(String description) {
+        this.description = description;
+        this.bytesPerDecision = new Stats(description + " Bytes/Decision");
+        this.allocationRate = new Stats(description + " MB/s");
+    }
+
+    /**
+     * Gets the number of bytes allocated so far by the calling thread.
+     *
+     * @return The allocated bytes, or 0 if the JVM cannot measure them
+     */
+    public static long threadAllocatedBytes() {
+        if (!ALLOCATION_SUPPORTED) return 0;
+        return ((com.sun.management.ThreadMXBean) THREADS).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Gets the number of bytes allocated so far by a thread.
+     *
+     * @param thread The thread
+     * @return The allocated bytes, or 0 if the thread is not alive or the JVM cannot measure them
+     */
+    public static long threadAllocatedBytes(Thread thread) {
+        if (!ALLOCATION_SUPPORTED) return 0;
+        return Math.max(0, ((com.sun.management.ThreadMXBean) THREADS).getThreadAllocatedBytes(thread.getId()));
+    }
+
+    /**
+     * Gets the heap still in use after the most recent garbage collection of each heap pool. This does not force
+     * a collection and is cheap enough to be called once per tick.
+     *
+     * @return The retained heap in bytes
+     */
+    public static long heapRetainedBytes() {
+        long used = 0;
+        for (MemoryPoolMXBean pool : HEAP_POOLS) {
+            MemoryUsage usage = pool.getCollectionUsage();
+            if (usage != null) used += usage.getUsed();
+        }
+        return used;
+    }
+
+    public static boolean isAllocationSupported() {
+        return ALLOCATION_SUPPORTED;
+    }
+
+    public static long getMemoryLimitBytes() {
+        return MEMORY_LIMIT * BYTES_PER_MB;
+    }
+
+    /**
+     * Records the bytes allocated by a single call to getMove.
+     *
+     * @param bytes The difference in {@link #threadAllocatedBytes()} around the call, plus
+     *              Controller.takeHelperAllocatedBytes() after it
+     */
+    public synchronized void recordDecision(long bytes) {
+        if (!ALLOCATION_SUPPORTED) return;
+        bytesPerDecision.add(bytes);
+        allocatedBytes += bytes;
+    }
+
+    public synchronized void recordRetained(long bytes) {
+        if (bytes > peakRetainedBytes) peakRetainedBytes = bytes;
+    }
+
+    public synchronized void startGame() {
+        gameStartBytes = allocatedBytes;
+        gameStartNanos = System.nanoTime();
+    }
+
+    /**
+     * Closes the current game and adds its allocation rate, in MB per second of game time, to the statistics.
+     */
+    public synchronized void endGame() {
+        double seconds = (System.nanoTime() - gameStartNanos) / 1e9;
+        if (ALLOCATION_SUPPORTED && seconds > 0) {
+            lastAllocationRate = (allocatedBytes - gameStartBytes) / (double) BYTES_PER_MB / seconds;
+            allocationRate.add(lastAllocationRate);
+        }
+    }
+
+    public synchronized long getGameAllocatedBytes() {
+        return allocatedBytes - gameStartBytes;
+    }
+
+    public synchronized double getLastAllocationRate() {
+        return lastAllocationRate;
+    }
+
+    public synchronized void setLimitExceeded() {
+        limitExceeded = true;
+    }
+
+    public synchronized boolean isLimitExceeded() {
+        return limitExceeded;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public synchronized long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    public synchronized long getPeakRetainedBytes() {
+        return peakRetainedBytes;
+    }
+
+    public synchronized Stats getBytesPerDecision() {
+        return bytesPerDecision;
+    }
+
+    public synchronized Stats getAllocationRate() {
+        return allocationRate;
+    }
+
+    @Override
+    public synchronized String toString() {
+        if (!ALLOCATION_SUPPORTED) {
+            return "MemoryStats{" +
+                    "Desc=" + description +
+                    ", allocation tracking unsupported" +
+                    ", peakRetainedMB=" + peakRetainedBytes / BYTES_PER_MB +
+                    ", limitExceeded=" + limitExceeded +
+                    '}';
+        }
+        return "MemoryStats{" +
+                "Desc=" + description +
+                ", allocatedMB=" + allocatedBytes / BYTES_PER_MB +
+                ", bytesPerDecision=" + String.format("%.0f", bytesPerDecision.getAverage()) +
+                ", maxBytesPerDecision=" + String.format("%.0f", bytesPerDecision.getMax()) +
+                ", MBPerSecond=" + String.format("%.2f", allocationRate.getAverage()) +
+                ", peakRetainedMB=" + peakRetainedBytes / BYTES_PER_MB +
+                ", limitExceeded=" + limitExceeded +
+                '}';
+    }
+
+    private static boolean allocationSupported() {
+        if (!(THREADS instanceof com.sun.management.ThreadMXBean)) return false;
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) THREADS;
+        try {
+            if (threads.isThreadAllocatedMemorySupported() && !threads.isThreadAllocatedMemoryEnabled()) {
+                threads.setThreadAllocatedMemoryEnabled(true);
+            }
+            return threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled();
+        } catch (UnsupportedOperationException e) {
+            return false;
+        }
+    }
+
+    private static List<MemoryPoolMXBean> heapPools() {
+        List<MemoryPoolMXBean> pools = new ArrayList<MemoryPoolMXBean>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pools.add(pool);
+            }
+        }
+        return pools;
+    }
+}
@@ -0,0 +1,108 @@
+package pacman.game.util;
+
+/**
+ * Decision latency statistics for a single controller: a histogram of the time spent in getMove, the number
+ * of decisions that were returned after their deadline and the number of ticks on which the game was advanced
+ * with a stale move because the controller had not computed a new one in time.
+ * <p>
+ * Updates may come from the controller's own thread in the asynchronous modes, so all methods are synchronised.
+ * Instances can be merged with {@link #add(TimingStats)} in the same way as {@link Stats}.
+ */
+public class TimingStats {
+
+    private final String description;
+    private final Histogram latencies = new Histogram();
+    private long deadlineMisses;
+    private long staleTicks;
+
+    public TimingStats(String description) {
+        this.description = description;
+    }
+
+    /**
+     * Records a completed call to getMove.
+     *
+     * @param nanos  The time spent in getMove, in nanoseconds
+     * @param missed Whether the move was returned after the time it was due
+     */
+    public synchronized void recordDecision(long nanos, boolean missed) {
+        latencies.record(nanos);
+        if (missed) deadlineMisses++;
+    }
+
+    /**
+     * Records a tick on which the game advanced without a move computed for that tick.
+     */
+    public synchronized void recordStaleTick() {
+        staleTicks++;
+    }
+
+    public synchronized void add(TimingStats other) {
+        synchronized (other) {
+            latencies.add(other.latencies);
+            deadlineMisses += other.deadlineMisses;
+            staleTicks += other.staleTicks;
+        }
+    }
+
+    public synchronized void reset() {
+        latencies.reset();
+        deadlineMisses = 0;
+        staleTicks = 0;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public synchronized long getDecisions() {
+        return latencies.getCount();
+    }
+
+    public synchronized long getDeadlineMisses() {
+        return deadlineMisses;
+    }
+
+    public synchronized long getStaleTicks() {
+        return staleTicks;
+    }
+
+    public synchronized double getMeanMs() {
+        return latencies.getMean() / 1e6;
+    }
+
+    public synchronized double getPercentileMs(double percentile) {
+        return latencies.getValueAtPercentile(percentile) / 1e6;
+    }
+
+    public synchronized double getMaxMs() {
+        return latencies.getMax() / 1e6;
+    }
+
+    /**
+     * Gets a copy of the latency histogram, in nanoseconds.
+     *
+     * @return The copy
+     */
+    public synchronized Histogram getLatencies() {
+        Histogram copy = new Histogram();
+        copy.add(latencies);
+        return copy;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "TimingStats{" +
+                "Desc=" + description +
+                ", n=" + latencies.getCount() +
+                ", meanMs=" + String.format("%.3f", latencies.getMean() / 1e6) +
+                ", p50Ms=" + String.format("%.3f", latencies.getValueAtPercentile(50) / 1e6) +
+                ", p90Ms=" + String.format("%.3f", latencies.getValueAtPercentile(90) / 1e6) +
+                ", p99Ms=" + String.format("%.3f", latencies.getValueAtPercentile(99) / 1e6) +
+                ", p99.9Ms=" + String.format("%.3f", latencies.getValueAtPercentile(99.9) / 1e6) +
+                ", maxMs=" + String.format("%.3f", latencies.getMax() / 1e6) +
+                ", deadlineMisses=" + deadlineMisses +
+                ", staleTicks=" + staleTicks +
+                '}';
+    }
+}
@@ -0,0 +1,183 @@
+package pacman.game.util;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-size transposition table for game tree searches, keyed by a 64-bit state hash such as
+ * Game.getStateHash(). Each entry holds the remaining search depth, the type of bound, the value and the best
+ * move (as a search-specific int code) of a searched position.
+ * <p>
+ * The table is lock-free: entries live in two parallel long arrays and the key is stored xor-ed with the data,
+ * so a reader that sees half of a concurrent write finds a key mismatch and treats it as a miss. Several search
+ * threads may therefore share one table without synchronisation. The statistics are plain counters and may
+ * lose increments when the table is shared, which is acceptable for reporting.
+ * <p>
+ * Entries are grouped in buckets of two. The first slot keeps the deepest entry of the bucket unless it belongs
+ * to an earlier search, and the second slot always takes the newest entry, so that deep results survive while
+ * the many shallow ones still get cached.
+ */
+public class TranspositionTable {
+
+    public static final int EXACT = 0;
+    public static final int LOWER_BOUND = 1;
+    public static final int UPPER_BOUND = 2;
+    public static final int NO_MOVE = -1;
+
+    private static final int MOVE_BITS = 12;
+    private static final int MOVE_MASK = (1 << MOVE_BITS) - 1;
+    private static final long VALID = 1L << 63;
+
+    private final long[] keys;
+    private final long[] entries;
+    private final int bucketMask;
+    private int generation;
+
+    private long probes;
+    private long hits;
+    private long stores;
+    private long overwrites;
+
+    /**
+     * Creates a table with the given number of entries, rounded down to a power of two. Each entry takes 16
+     * bytes.
+     *
+     * @param size The number of entries, at least 2
+     */
+    public TranspositionTable(int size) {
+        int entries = Integer.highestOneBit(Math.max(size, 2));
+        this.keys = new long[entries];
+        this.entries = new long[entries];
+        this.bucketMask = entries / 2 - 1;
+    }
+
+    /**
+     * Starts a new search. Entries of earlier searches remain usable but are the first to be replaced.
+     */
+    public void newSearch() {
+        generation = (generation + 1) & 0xFF;
+    }
+
+    /**
+     * Looks up a position.
+     *
+     * @param key The state hash
+     * @return The packed entry, to be read with {@link #value(long)}, {@link #depth(long)}, {@link #bound(long)}
+     * and {@link #move(long)}, or 0 if the position is not in the table
+     */
+    public long probe(long key) {
+        probes++;
+        int slot = (int) (key & bucketMask) << 1;
+        for (int i = slot; i < slot + 2; i++) {
+            long entry = entries[i];
+            if (entry != 0 && (keys[i] ^ entry) == key) {
+                hits++;
+                return entry;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Stores the result of searching a position.
+     *
+     * @param key   The state hash
+     * @param depth The remaining depth that was searched, 0 to 255
+     * @param bound EXACT, LOWER_BOUND or UPPER_BOUND
+     * @param value The value found
+     * @param move  The best move found, as a code of at most 12 bits, or NO_MOVE
+     */
+    public void store(long key, int depth, int bound, int value, int move) {
+        long entry = VALID | (long) generation << 54 | (long) (move & MOVE_MASK) << 42 | (long) bound << 40
+                | (long) depth << 32 | (value & 0xFFFFFFFFL);
+        int slot = (int) (key & bucketMask) << 1;
+
+        long deep = entries[slot];
+        boolean sameKey = deep != 0 && (keys[slot] ^ deep) == key;
+        if (deep == 0 || sameKey || generationOf(deep) != generation || depth >= depth(deep)) {
+            write(slot, key, entry, deep != 0 && !sameKey);
+        } else {
+            long recent = entries[slot + 1];
+            write(slot + 1, key, entry, recent != 0 && (keys[slot + 1] ^ recent) != key);
+        }
+    }
+
+    private void write(int slot, long key, long entry, boolean overwrite) {
+        stores++;
+        if (overwrite) overwrites++;
+        entries[slot] = entry;
+        keys[slot] = key ^ entry;
+    }
+
+    public static int value(long entry) {
+        return (int) entry;
+    }
+
+    public static int depth(long entry) {
+        return (int) (entry >>> 32) & 0xFF;
+    }
+
+    public static int bound(long entry) {
+        return (int) (entry >>> 40) & 0x3;
+    }
+
+    public static int move(long entry) {
+        int move = (int) (entry >>> 42) & MOVE_MASK;
+        return (move == MOVE_MASK) ? NO_MOVE : move;
+    }
+
+    private static int generationOf(long entry) {
+        return (int) (entry >>> 54) & 0xFF;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, 0);
+        Arrays.fill(entries, 0);
+        resetStats();
+    }
+
+    public void resetStats() {
+        probes = 0;
+        hits = 0;
+        stores = 0;
+        overwrites = 0;
+    }
+
+    public int getSize() {
+        return entries.length;
+    }
+
+    public long getProbes() {
+        return probes;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public double getHitRate() {
+        return (probes == 0) ? 0 : (double) hits / probes;
+    }
+
+    public long getStores() {
+        return stores;
+    }
+
+    /**
+     * @return The number of stores that replaced the entry of a different position
+     */
+    public long getOverwrites() {
+        return overwrites;
+    }
+
+    @Override
+    public String toString() {
+        return "TranspositionTable{" +
+                "size=" + entries.length +
+                ", probes=" + probes +
+                ", hits=" + hits +
+                ", hitRate=" + String.format("%.3f", getHitRate()) +
+                ", stores=" + stores +
+                ", overwrites=" + overwrites +
+                '}';
+    }
+}
@@ -0,0 +1,26 @@
+package pacman.game.util.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event spanning a controller's call to getMove.
+ */
+@Name("pacman.ControllerDecision")
+@Label("Controller Decision")
+@Category({"Pac-Man", "Executor"})
+@Description("A call to Controller.getMove")
+@StackTrace(false)
+public class ControllerDecisionEvent extends Event {
+
+    @Label("Controller")
+    public String controller;
+
+    @Label("Deadline Missed")
+    @Description("The move was returned after the time it was due")
+    public boolean deadlineMissed;
+}
@@ -0,0 +1,31 @@
+package pacman.game.util.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event spanning one tick of the Executor, from asking the controllers for their moves to
+ * advancing the game.
+ */
+@Name("pacman.ExecutorTick")
+@Label("Executor Tick")
+@Category({"Pac-Man", "Executor"})
+@Description("One tick of a game run by the Executor")
+@StackTrace(false)
+public class ExecutorTickEvent extends Event {
+
+    @Label("Tick")
+    public int tick;
+
+    @Label("Pac-Man Stale")
+    @Description("Ms Pac-Man had not computed a move for this tick")
+    public boolean pacManStale;
+
+    @Label("Ghosts Stale")
+    @Description("The ghosts had not computed a move for this tick")
+    public boolean ghostsStale;
+}
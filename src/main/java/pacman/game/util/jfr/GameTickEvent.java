@@ -0,0 +1,85 @@
+package pacman.game.util.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight Recorder event for a single call to Game.advanceGame, split into the phases of the engine. Forward
+ * models advance the game very often, so only ticks slower than the threshold are recorded by default and the
+ * engine checks {@link #isRecording()} before taking any timestamps.
+ */
+@Name("pacman.GameTick")
+@Label("Game Tick")
+@Category({"Pac-Man", "Engine"})
+@Description("A call to Game.advanceGame with the time spent in each phase")
+@Threshold("1 ms")
+@StackTrace(false)
+public class GameTickEvent extends Event {
+
+    @Label("Tick")
+    public int tick;
+
+    @Label("Maze")
+    public int maze;
+
+    @Label("Update Pac-Man")
+    @Timespan(Timespan.NANOSECONDS)
+    public long updatePacMan;
+
+    @Label("Update Ghosts")
+    @Timespan(Timespan.NANOSECONDS)
+    public long updateGhosts;
+
+    @Label("Feast")
+    @Timespan(Timespan.NANOSECONDS)
+    public long feast;
+
+    @Label("Check Level State")
+    @Description("Lair times, extra life and the level/game over checks")
+    @Timespan(Timespan.NANOSECONDS)
+    public long checkLevelState;
+
+    @Label("Messenger Update")
+    @Timespan(Timespan.NANOSECONDS)
+    public long messengerUpdate;
+
+    private transient long mark;
+
+    private static final class Type {
+        static final EventType TYPE = EventType.getEventType(GameTickEvent.class);
+    }
+
+    /**
+     * Whether a recording is running with this event enabled. This is a field read, so it is cheap enough to
+     * guard the hot paths of the engine.
+     *
+     * @return true if events should be created
+     */
+    public static boolean isRecording() {
+        return Type.TYPE.isEnabled();
+    }
+
+    public void start() {
+        begin();
+        mark = System.nanoTime();
+    }
+
+    /**
+     * Gets the time since the previous call (or since {@link #start()}) and restarts the clock.
+     *
+     * @return The elapsed time in nanoseconds
+     */
+    public long lap() {
+        long now = System.nanoTime();
+        long elapsed = now - mark;
+        mark = now;
+        return elapsed;
+    }
+}
@@ -0,0 +1,62 @@
+package pacman.game.util.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Flight Recorder event for a path query answered by the PathsCache or computed by AStar. Only searches slower
+ * than the threshold are recorded by default.
+ */
+@Name("pacman.PathSearch")
+@Label("Path Search")
+@Category({"Pac-Man", "Engine"})
+@Description("A path query and the number of nodes or junction paths it had to consider")
+@Threshold("100 us")
+@StackTrace(false)
+public class PathSearchEvent extends Event {
+
+    @Label("Algorithm")
+    public String algorithm;
+
+    @Label("From")
+    public int from;
+
+    @Label("To")
+    public int to;
+
+    @Label("Expansions")
+    @Description("Nodes closed by A*, or candidate junction-to-junction paths for the PathsCache")
+    public int expansions;
+
+    @Label("Path Length")
+    public int pathLength;
+
+    private static final class Type {
+        static final EventType TYPE = EventType.getEventType(PathSearchEvent.class);
+    }
+
+    public static boolean isRecording() {
+        return Type.TYPE.isEnabled();
+    }
+
+    public static PathSearchEvent start(String algorithm, int from, int to) {
+        PathSearchEvent event = new PathSearchEvent();
+        event.algorithm = algorithm;
+        event.from = from;
+        event.to = to;
+        event.begin();
+        return event;
+    }
+
+    public void end(int expansions, int pathLength) {
+        this.expansions = expansions;
+        this.pathLength = pathLength;
+        commit();
+    }
+}
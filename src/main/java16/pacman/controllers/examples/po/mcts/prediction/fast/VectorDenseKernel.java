@@ -0,0 +1,89 @@
+package pacman.controllers.examples.po.mcts.prediction.fast;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+import static jdk.incubator.vector.VectorOperators.GE;
+import static jdk.incubator.vector.VectorOperators.GT;
+import static jdk.incubator.vector.VectorOperators.LE;
+import static jdk.incubator.vector.VectorOperators.NE;
+
+/*
+ * The dense kernel with the Vector API. Built by the jdk16 profile only, and loaded by GhostPredictionsFast when
+ * the jdk.incubator.vector module is present.
+ *
+ * Propagation pulls into a vector of consecutive nodes at once. For each of the DEGREE edges into them in turn, the
+ * probabilities and moves of the sources are gathered, and a lane takes the edge under the same conditions and
+ * with the same arithmetic as in ScalarDenseKernel, so the results are identical. The sums are a multiply and an
+ * add rather than a fused multiply-add for the same reason. The nodes past the last whole vector go through
+ * ScalarDenseKernel.
+ */
+final class VectorDenseKernel implements DenseKernel {
+    private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+    // As many ints as doubles, so that masks convert between the two
+    private static final VectorSpecies<Integer> INTS =
+            VectorSpecies.of(int.class, VectorShape.forBitSize(DOUBLES.vectorBitSize() / 2));
+
+    VectorDenseKernel() {
+        // The active bits of a vector of nodes are set with one shift, which needs them within one word
+        if (64 % DOUBLES.length() != 0) {
+            throw new IllegalStateException("Vectors of " + DOUBLES.length() + " doubles do not divide a word");
+        }
+    }
+
+    @Override
+    public void propagate(BeliefAdjacency adjacency, double[] probabilities, int[] moves, double scale,
+                          double[] backProbabilities, int[] backMoves, long[] backActive, int start, int startWord) {
+        int mazeSize = adjacency.mazeSize;
+        int bound = DOUBLES.loopBound(mazeSize);
+        DoubleVector zero = DoubleVector.zero(DOUBLES);
+        IntVector noMove = IntVector.broadcast(INTS, NO_MOVE);
+        for (int node = 0; node < bound; node += DOUBLES.length()) {
+            DoubleVector threshold = DoubleVector.fromArray(DOUBLES, probabilities, start + node).mul(scale);
+            DoubleVector written = zero;
+            IntVector writtenMove = noMove;
+            for (int k = 0; k < BeliefAdjacency.DEGREE; k++) {
+                int slot = k * mazeSize + node;
+                IntVector source = IntVector.fromArray(INTS, adjacency.inSourceByEdge, slot);
+                VectorMask<Integer> edge = source.compare(GE, 0);
+                // The edges into a node fill its first slots
+                if (!edge.anyTrue()) break;
+
+                DoubleVector p = DoubleVector.fromArray(DOUBLES, probabilities, start,
+                        adjacency.inSourceByEdge, slot, edge.cast(DOUBLES));
+                IntVector sourceMove = IntVector.fromArray(INTS, moves, start, adjacency.inSourceByEdge, slot, edge);
+                VectorMask<Integer> forward =
+                        edge.and(sourceMove.compare(NE, IntVector.fromArray(INTS, adjacency.inReverseByEdge, slot)));
+                VectorMask<Double> take = forward.cast(DOUBLES).and(p.compare(GT, 0)).and(written.compare(LE, threshold));
+
+                DoubleVector branches = DoubleVector.fromArray(DOUBLES, adjacency.inBranchesByEdge, slot);
+                written = written.blend(p.mul(scale).div(branches), take);
+                writtenMove = writtenMove.blend(IntVector.fromArray(INTS, adjacency.inMoveByEdge, slot), take.cast(INTS));
+            }
+
+            VectorMask<Integer> reached = writtenMove.compare(NE, NO_MOVE);
+            if (reached.anyTrue()) {
+                // The lanes not reached write the 0 and NO_MOVE that are already there
+                written.intoArray(backProbabilities, start + node);
+                writtenMove.intoArray(backMoves, start + node);
+                backActive[startWord + (node >>> 6)] |= reached.toLong() << (node & 63);
+            }
+        }
+        ScalarDenseKernel.propagate(adjacency, probabilities, moves, scale, backProbabilities, backMoves, backActive,
+                start, startWord, bound, mazeSize);
+    }
+
+    @Override
+    public void accumulate(double[] sums, double[] probabilities, int start, int mazeSize, double scale) {
+        int bound = DOUBLES.loopBound(mazeSize);
+        for (int node = 0; node < bound; node += DOUBLES.length()) {
+            DoubleVector.fromArray(DOUBLES, probabilities, start + node).mul(scale)
+                    .add(DoubleVector.fromArray(DOUBLES, sums, node))
+                    .intoArray(sums, node);
+        }
+        ScalarDenseKernel.accumulate(sums, probabilities, start, scale, bound, mazeSize);
+    }
+}